@@ -49,11 +49,10 @@ public class ADC_V1 extends DroneSensor {
 
                 if (returnByte != null) {
                     // Parse data
-                    int MSB = 0x000000ff & ((int) returnByte[1]);
-                    int LSB = 0x000000ff & ((int) returnByte[0]);
-                    int ADC = LSB + (MSB << 8);
+                    int ADC = RegisterCodec.uint16LE(returnByte, 0);
                     myDrone.externalADC = ADC;
-                    myDrone.externalADC_Volts = (float) (((float) ADC / 4095.0) * 3.0);
+                    myDrone.externalADC_Volts = volts(ADC);
+                    myDrone.recordRawSample(CoreDrone.QS_TYPE_ADC, new int[]{ADC});
                     // Notify the listener
                     myDrone.notifyDroneEventHandler(measured);
                     myDrone.notifyDroneEventListener(measured);
@@ -153,4 +152,13 @@ public class ADC_V1 extends DroneSensor {
     public ADC_V1(CoreDrone drone) {
         super(drone, "ADC_V1");
     }
+
+    /**
+     * Convert a raw external ADC value to Volts
+     * @param ADC
+     * @return
+     */
+    public static float volts(int ADC) {
+        return (float) (((float) ADC / 4095.0) * 3.0);
+    }
 }
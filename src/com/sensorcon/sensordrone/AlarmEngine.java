@@ -0,0 +1,212 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+/**
+ * Checks AlarmRules on every measurement of a Drone, right where it's parsed (on the communication
+ * thread, before any listener), so how soon an alarm goes off doesn't depend on the listeners.
+ *
+ * <pre>
+ * AlarmEngine alarms = new AlarmEngine();
+ * alarms.addRule(AlarmRule.above(CoreDrone.QS_TYPE_PRECISION_GAS, 35, 30));
+ * alarms.addListener(myAlarmListener);
+ * alarms.setEscalation(supervisor, 1000);
+ * myDrone.setAlarmEngine(alarms);
+ * </pre>
+ *
+ * While any rule on a sensor is raised, that sensor is escalated: quickMeasure() puts its measurements
+ * ahead of everything else waiting for the Sensordrone, and (with setEscalation()) the DroneSupervisor
+ * measures it at the faster rate. It goes back to normal when the last of its alarms clears.
+ * A measurement that raises or clears an alarm is always passed on to the listeners, even inside a Deadband.
+ *
+ * Use one AlarmEngine per Drone (the rules keep state).
+ */
+public class AlarmEngine {
+
+    private static final String TAG = "AlarmEngine";
+
+    // Replaced (not changed) when one is added or removed, so checking doesn't lock
+    private volatile AlarmRule[] rules = new AlarmRule[0];
+    private volatile AlarmListener[] listeners = new AlarmListener[0];
+    private volatile DroneSupervisor supervisor;
+    private volatile long escalatedPeriod;
+    // The Drone it's checking (see CoreDrone.setAlarmEngine())
+    private volatile CoreDrone drone;
+
+    /**
+     * Add a rule
+     * @param rule
+     */
+    public synchronized void addRule(AlarmRule rule) {
+        AlarmRule[] bigger = new AlarmRule[rules.length + 1];
+        System.arraycopy(rules, 0, bigger, 0, rules.length);
+        bigger[rules.length] = rule;
+        rules = bigger;
+    }
+
+    /**
+     * Remove a rule. If it was raised, and it was the last alarm on its sensor, the sensor goes back to normal.
+     * @param rule
+     */
+    public synchronized void removeRule(AlarmRule rule) {
+        rules = without(rules, rule, new AlarmRule[Math.max(0, rules.length - 1)]);
+        CoreDrone current = drone;
+        if (current != null && rule.isActive()) {
+            escalate(current, rule.getQsType(), isAlarmed(rule.getQsType()));
+        }
+    }
+
+    /**
+     * The rules, in the order they're checked
+     * @return
+     */
+    public AlarmRule[] getRules() {
+        AlarmRule[] current = rules;
+        AlarmRule[] copy = new AlarmRule[current.length];
+        System.arraycopy(current, 0, copy, 0, current.length);
+        return copy;
+    }
+
+    /**
+     * Add a listener
+     * @param listener
+     */
+    public synchronized void addListener(AlarmListener listener) {
+        AlarmListener[] bigger = new AlarmListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, bigger, 0, listeners.length);
+        bigger[listeners.length] = listener;
+        listeners = bigger;
+    }
+
+    /**
+     * Remove a listener
+     * @param listener
+     */
+    public synchronized void removeListener(AlarmListener listener) {
+        listeners = without(listeners, listener, new AlarmListener[Math.max(0, listeners.length - 1)]);
+    }
+
+    private static <T> T[] without(T[] array, T item, T[] smaller) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == item) {
+                System.arraycopy(array, 0, smaller, 0, i);
+                System.arraycopy(array, i + 1, smaller, i, array.length - i - 1);
+                return smaller;
+            }
+        }
+        return array;
+    }
+
+    /**
+     * Measure a sensor faster while it has an alarm raised
+     * @param supervisor The DroneSupervisor measuring the Drone on a schedule, or null to not change the rate
+     * @param periodMillis Time between measurements while it's raised
+     */
+    public void setEscalation(DroneSupervisor supervisor, long periodMillis) {
+        if (supervisor != null && periodMillis <= 0) {
+            throw new IllegalArgumentException("periodMillis must be > 0");
+        }
+        this.escalatedPeriod = periodMillis;
+        this.supervisor = supervisor;
+    }
+
+    /**
+     * Check if any rule on a sensor is raised
+     * @param QS_TYPE
+     * @return
+     */
+    public boolean isAlarmed(int QS_TYPE) {
+        for (AlarmRule rule : rules) {
+            if (rule.getQsType() == QS_TYPE && rule.isActive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check a measurement against the rules (on the Drone's communication thread)
+     * @return true if an alarm was raised or cleared
+     */
+    boolean check(CoreDrone drone, int QS_TYPE, long time, float value) {
+        boolean changed = false;
+        for (AlarmRule rule : rules) {
+            if (rule.getQsType() != QS_TYPE) {
+                continue;
+            }
+            int result = rule.check(time, value);
+            if (result == 0) {
+                continue;
+            }
+            changed = true;
+            drone.logger.info(TAG, (result > 0 ? "Alarm raised: " : "Alarm cleared: ") + rule.getName()
+                    + " at " + rule.getLevel());
+            for (AlarmListener listener : listeners) {
+                try {
+                    if (result > 0) {
+                        listener.alarmRaised(drone, rule, rule.getLevel(), time);
+                    } else {
+                        listener.alarmCleared(drone, rule, rule.getLevel(), time);
+                    }
+                } catch (RuntimeException e) {
+                    drone.logger.info(TAG, "AlarmListener failed: " + e);
+                }
+            }
+        }
+        if (changed) {
+            escalate(drone, QS_TYPE, isAlarmed(QS_TYPE));
+        }
+        return changed;
+    }
+
+    /**
+     * Start checking a Drone's measurements (from CoreDrone.setAlarmEngine())
+     * @param drone
+     */
+    synchronized void attach(CoreDrone drone) {
+        this.drone = drone;
+    }
+
+    /**
+     * Stop checking a Drone's measurements, and put every escalated sensor back to normal
+     * (from CoreDrone.setAlarmEngine())
+     * @param drone
+     */
+    synchronized void detach(CoreDrone drone) {
+        if (this.drone == drone) {
+            this.drone = null;
+        }
+        for (int QS_TYPE = 0; QS_TYPE <= CoreDrone.QS_TYPE_ADC; QS_TYPE++) {
+            escalate(drone, QS_TYPE, false);
+        }
+    }
+
+    private synchronized void escalate(CoreDrone drone, int QS_TYPE, boolean on) {
+        if (drone.isUrgent(QS_TYPE) == on) {
+            return;
+        }
+        drone.setUrgent(QS_TYPE, on);
+        DroneSupervisor current = supervisor;
+        if (current != null) {
+            if (on) {
+                current.escalate(QS_TYPE, escalatedPeriod);
+            } else {
+                current.deescalate(QS_TYPE);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+/**
+ * Told when an AlarmEngine's rules raise or clear an alarm. It's called on the Drone's communication
+ * thread, right after the measurement is parsed (before any DroneEventHandler or DroneEventListener),
+ * so return quickly.
+ */
+public interface AlarmListener {
+
+    /**
+     * @param drone
+     * @param rule
+     * @param level What the rule compared (see AlarmRule.getLevel())
+     * @param time When the measurement was made
+     */
+    void alarmRaised(CoreDrone drone, AlarmRule rule, float level, long time);
+
+    /**
+     * @param drone
+     * @param rule
+     * @param level
+     * @param time
+     */
+    void alarmCleared(CoreDrone drone, AlarmRule rule, float level, long time);
+
+}
@@ -0,0 +1,317 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+/**
+ * One alarm condition on one sensor, checked on every measurement by an AlarmEngine:
+ *
+ * <pre>
+ * // CO: alarm at 35 ppm (clears below 30), rising faster than 10 ppm a minute, or 8 hour TWA over 25 ppm
+ * engine.addRule(AlarmRule.above(CoreDrone.QS_TYPE_PRECISION_GAS, 35, 30).named("CO high"));
+ * engine.addRule(AlarmRule.risingFaster(CoreDrone.QS_TYPE_PRECISION_GAS, 10, 5, 60000).named("CO rising"));
+ * engine.addRule(AlarmRule.twaAbove(CoreDrone.QS_TYPE_PRECISION_GAS, 25, 22, AlarmRule.EIGHT_HOURS).named("CO TWA"));
+ * </pre>
+ *
+ * Every rule has a level that raises the alarm and a lower (or, for below(), higher) level that
+ * clears it again, so a measurement sitting right at the limit doesn't keep raising and clearing it.
+ *
+ * Rules keep their own state (in fixed arrays, so checking one doesn't allocate); use a separate one for
+ * each Sensordrone. Values are in the units listed in RawSampleProcessor, after any SignalFilter.
+ */
+public final class AlarmRule {
+
+    /**
+     * 8 hours, in ms (the usual window for a time-weighted average exposure limit)
+     */
+    public static final long EIGHT_HOURS = 8 * 60 * 60 * 1000L;
+
+    static final int KIND_ABOVE = 0;
+    static final int KIND_BELOW = 1;
+    static final int KIND_RISING = 2;
+    static final int KIND_TWA = 3;
+
+    // How many points rate-of-change and TWA rules keep over their window
+    private static final int RATE_POINTS = 64;
+    private static final int TWA_BUCKETS = 96;
+
+    private final int kind;
+    private final int qsType;
+    private final float raiseAt;
+    private final float clearAt;
+    private final long windowMillis;
+    private String name;
+
+    // Read by AlarmEngine.removeRule() on the app's thread
+    private volatile boolean active = false;
+    private float level = Float.NaN;
+
+    // Rate of change: measurements spread over the window (oldest at rateTail)
+    private long[] rateTimes;
+    private float[] rateValues;
+    private int rateTail = 0;
+    private int rateCount = 0;
+
+    // TWA: the sum of value * ms for each bucket of the window, in a ring
+    private double[] twaBuckets;
+    private long bucketMillis;
+    private long currentBucket;
+    private double twaTotal;
+    private long lastTime;
+    private float lastValue;
+    private boolean started = false;
+
+    private AlarmRule(int kind, int qsType, float raiseAt, float clearAt, long windowMillis) {
+        if (qsType < 0 || qsType > CoreDrone.QS_TYPE_ADC) {
+            throw new IllegalArgumentException("Unknown QS_TYPE " + qsType);
+        }
+        if (Float.isNaN(raiseAt) || Float.isNaN(clearAt)
+                || (kind == KIND_BELOW ? clearAt < raiseAt : clearAt > raiseAt)) {
+            throw new IllegalArgumentException("The clear level has to be on the safe side of the alarm level");
+        }
+        this.kind = kind;
+        this.qsType = qsType;
+        this.raiseAt = raiseAt;
+        this.clearAt = clearAt;
+        this.windowMillis = windowMillis;
+        if (kind == KIND_RISING) {
+            rateTimes = new long[RATE_POINTS];
+            rateValues = new float[RATE_POINTS];
+        } else if (kind == KIND_TWA) {
+            twaBuckets = new double[TWA_BUCKETS];
+            bucketMillis = Math.max(1, windowMillis / TWA_BUCKETS);
+        }
+    }
+
+    /**
+     * Alarm when a measurement reaches a level
+     * @param QS_TYPE
+     * @param raiseAt
+     * @param clearBelow The alarm clears when a measurement is below this
+     * @return
+     */
+    public static AlarmRule above(int QS_TYPE, float raiseAt, float clearBelow) {
+        return new AlarmRule(KIND_ABOVE, QS_TYPE, raiseAt, clearBelow, 0);
+    }
+
+    /**
+     * Alarm when a measurement drops to a level (e.g. oxygen)
+     * @param QS_TYPE
+     * @param raiseAt
+     * @param clearAbove The alarm clears when a measurement is above this
+     * @return
+     */
+    public static AlarmRule below(int QS_TYPE, float raiseAt, float clearAbove) {
+        return new AlarmRule(KIND_BELOW, QS_TYPE, raiseAt, clearAbove, 0);
+    }
+
+    /**
+     * Alarm when measurements go up at least a rate (per minute), measured over a window of time.
+     * There's no rate (and the alarm isn't raised or cleared) until the measurements kept cover at least
+     * half the window, so a little noise between two measurements close together can't raise it.
+     * @param QS_TYPE
+     * @param perMinute
+     * @param clearPerMinute The alarm clears when the rate is below this
+     * @param windowMillis How far back to compare with (at least 2 measurements apart)
+     * @return
+     */
+    public static AlarmRule risingFaster(int QS_TYPE, float perMinute, float clearPerMinute, long windowMillis) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("windowMillis must be > 0");
+        }
+        return new AlarmRule(KIND_RISING, QS_TYPE, perMinute, clearPerMinute, windowMillis);
+    }
+
+    /**
+     * Alarm when the time-weighted average over a window (e.g. EIGHT_HOURS) reaches a level.
+     * Like an exposure limit, it's the sum of each measurement times how long it lasted, divided by
+     * the whole window, so it starts at 0 and builds up. Gaps in the measurements (e.g. while disconnected)
+     * count as 0 after a window / 96.
+     * @param QS_TYPE
+     * @param raiseAt
+     * @param clearBelow The alarm clears when the average is below this
+     * @param windowMillis
+     * @return
+     */
+    public static AlarmRule twaAbove(int QS_TYPE, float raiseAt, float clearBelow, long windowMillis) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("windowMillis must be > 0");
+        }
+        return new AlarmRule(KIND_TWA, QS_TYPE, raiseAt, clearBelow, windowMillis);
+    }
+
+    /**
+     * Give the rule a name (for AlarmListeners and logs)
+     * @param name
+     * @return this
+     */
+    public AlarmRule named(String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * Check a measurement (on the Drone's communication thread)
+     * @return 1 if the alarm was raised, -1 if it was cleared, otherwise 0
+     */
+    int check(long time, float value) {
+        if (Float.isNaN(value)) {
+            return 0;
+        }
+        switch (kind) {
+            case KIND_RISING:
+                level = rate(time, value);
+                break;
+            case KIND_TWA:
+                level = twa(time, value);
+                break;
+            default:
+                level = value;
+        }
+        if (Float.isNaN(level)) {
+            return 0;
+        }
+        boolean low = kind == KIND_BELOW;
+        if (!active && (low ? level <= raiseAt : level >= raiseAt)) {
+            active = true;
+            return 1;
+        }
+        if (active && (low ? level > clearAt : level < clearAt)) {
+            active = false;
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * The change per minute since the oldest kept measurement in the window
+     * @return NaN if that measurement is less than half the window ago
+     */
+    private float rate(long time, float value) {
+        // Drop what's fallen out of the window (or gone back in time)
+        while (rateCount > 0 && (time - rateTimes[rateTail] > windowMillis || time < rateTimes[rateTail])) {
+            rateTail = (rateTail + 1) % RATE_POINTS;
+            rateCount--;
+        }
+        float rate = Float.NaN;
+        long span = rateCount > 0 ? time - rateTimes[rateTail] : 0;
+        if (span > 0 && span >= windowMillis / 2) {
+            rate = (value - rateValues[rateTail]) * 60000f / span;
+        }
+        // Keep points spread over the window, so it's covered by RATE_POINTS
+        int newest = (rateTail + rateCount - 1) % RATE_POINTS;
+        if (rateCount == 0 || time - rateTimes[newest] >= windowMillis / RATE_POINTS) {
+            if (rateCount == RATE_POINTS) {
+                rateTail = (rateTail + 1) % RATE_POINTS;
+                rateCount--;
+            }
+            int slot = (rateTail + rateCount) % RATE_POINTS;
+            rateTimes[slot] = time;
+            rateValues[slot] = value;
+            rateCount++;
+        }
+        return rate;
+    }
+
+    /**
+     * The time-weighted average over the window, holding each measurement until the next one
+     */
+    private float twa(long time, float value) {
+        long bucket = time / bucketMillis;
+        if (!started) {
+            currentBucket = bucket;
+            started = true;
+        } else if (time > lastTime) {
+            if (bucket - currentBucket >= TWA_BUCKETS) {
+                for (int i = 0; i < TWA_BUCKETS; i++) {
+                    twaBuckets[i] = 0;
+                }
+                twaTotal = 0;
+                currentBucket = bucket;
+            }
+            while (currentBucket < bucket) {
+                currentBucket++;
+                int slot = (int) (currentBucket % TWA_BUCKETS);
+                twaTotal -= twaBuckets[slot];
+                twaBuckets[slot] = 0;
+            }
+            double weighted = (double) lastValue * Math.min(time - lastTime, bucketMillis);
+            twaBuckets[(int) (currentBucket % TWA_BUCKETS)] += weighted;
+            twaTotal += weighted;
+        } else if (time < lastTime) {
+            // The clock went back; don't count it
+            return (float) (twaTotal / windowMillis);
+        }
+        lastTime = time;
+        lastValue = value;
+        return (float) (twaTotal / windowMillis);
+    }
+
+    /**
+     * Start over (the alarm is cleared without telling anyone)
+     */
+    public void reset() {
+        active = false;
+        level = Float.NaN;
+        rateCount = 0;
+        started = false;
+        twaTotal = 0;
+        if (twaBuckets != null) {
+            for (int i = 0; i < TWA_BUCKETS; i++) {
+                twaBuckets[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * The quickSystem type the rule is on
+     * @return
+     */
+    public int getQsType() {
+        return qsType;
+    }
+
+    /**
+     * The rule's name (see named())
+     * @return
+     */
+    public String getName() {
+        return name != null ? name : toString();
+    }
+
+    /**
+     * Check if the alarm is raised
+     * @return
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * What the rule last compared: the measurement, the rate per minute, or the time-weighted average
+     * @return NaN until there is one
+     */
+    public float getLevel() {
+        return level;
+    }
+
+    @Override
+    public String toString() {
+        String[] kinds = {"above", "below", "risingFaster", "twaAbove"};
+        return kinds[kind] + "(" + qsType + ", " + raiseAt + ", " + clearAt
+                + (windowMillis > 0 ? ", " + windowMillis + "ms" : "") + ")";
+    }
+
+}
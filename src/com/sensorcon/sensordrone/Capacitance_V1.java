@@ -206,12 +206,10 @@ public class Capacitance_V1 extends DroneSensor {
 
                 if (response != null) {
                     // Parse the data
-                    int MSB = 0x000000ff & ((int) response[1]);
-                    int LSB = 0x000000ff & ((int) response[2]);
-                    int ADC = (MSB << 8) + LSB;
-                    logger.debugLogger(TAG, "ADC: " + String.valueOf(ADC), myDrone.DEBUG);
-                    // *4000 is nF
-                    myDrone.capacitance_femtoFarad = (float) (((float) ADC / 65520.0) * 4000);
+                    int ADC = RegisterCodec.uint16BE(response, 1);
+                    logger.debug(TAG, "ADC: ", ADC);
+                    myDrone.capacitance_femtoFarad = femtoFarad(ADC);
+                    myDrone.recordRawSample(CoreDrone.QS_TYPE_CAPACITANCE, new int[]{ADC});
                     // Notify the Listener that we've updated the values
                     myDrone.notifyDroneEventHandler(measured);
                     myDrone.notifyDroneEventListener(measured);
@@ -235,4 +233,13 @@ public class Capacitance_V1 extends DroneSensor {
         super(drone, "Capacitance_V1");
     }
 
+    /**
+     * Convert a raw capacitance ADC value to femtoFarad
+     * @param ADC
+     * @return
+     */
+    public static float femtoFarad(int ADC) {
+        // *4000 is nF
+        return (float) (((float) ADC / 65520.0) * 4000);
+    }
 }
@@ -0,0 +1,177 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads back measurements compressed by a ColumnEncoder, one at a time:
+ *
+ * <pre>
+ * ColumnDecoder column = ColumnDecoder.readFrom(in);
+ * while (column.next()) {
+ *     chart(column.getTime(), column.getValue());
+ * }
+ * </pre>
+ *
+ * Going through the measurements doesn't allocate.
+ */
+public class ColumnDecoder {
+
+    private final byte[] bytes;
+    private final int length;
+    private final int count;
+    private int read = 0;
+    // The next bit to read
+    private long bit = 0;
+
+    private long time;
+    private long delta;
+    private int valueBits;
+    private int leading;
+    private int trailing;
+
+    /**
+     * Our default Constructor
+     * @param bytes As made by a ColumnEncoder
+     * @param length How many of the bytes are used
+     * @param count How many measurements there are
+     */
+    public ColumnDecoder(byte[] bytes, int length, int count) {
+        this.bytes = bytes;
+        this.length = length;
+        this.count = count;
+    }
+
+    /**
+     * Read measurements saved by ColumnEncoder.writeTo()
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static ColumnDecoder readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int count = data.readInt();
+        int length = data.readInt();
+        if (count < 0 || length < 0) {
+            throw new IOException("Not a ColumnEncoder column");
+        }
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return new ColumnDecoder(bytes, length, count);
+    }
+
+    /**
+     * Move to the next measurement
+     * @return false if there are no more
+     * @throws IllegalStateException If the bytes run out early (they're damaged)
+     */
+    public boolean next() {
+        if (read == count) {
+            return false;
+        }
+        if (read == 0) {
+            time = readBits(64);
+            valueBits = (int) readBits(32);
+        } else {
+            delta += readDeltaOfDelta();
+            time += delta;
+            readValue();
+        }
+        read++;
+        return true;
+    }
+
+    private long readDeltaOfDelta() {
+        if (readBits(1) == 0) {
+            return 0;
+        }
+        if (readBits(1) == 0) {
+            return signed(readBits(7), 7);
+        }
+        if (readBits(1) == 0) {
+            return signed(readBits(9), 9);
+        }
+        if (readBits(1) == 0) {
+            return signed(readBits(12), 12);
+        }
+        return readBits(64);
+    }
+
+    /**
+     * The encoder's ranges run from -(2^(bits-1) - 1) to 2^(bits-1), so the top value is positive
+     */
+    private static long signed(long value, int bits) {
+        return value > (1L << (bits - 1)) ? value - (1L << bits) : value;
+    }
+
+    private void readValue() {
+        if (readBits(1) == 0) {
+            return;
+        }
+        if (readBits(1) == 1) {
+            leading = (int) readBits(5);
+            int significant = (int) readBits(5) + 1;
+            trailing = 32 - leading - significant;
+        }
+        int significant = 32 - leading - trailing;
+        valueBits ^= (int) readBits(significant) << trailing;
+    }
+
+    private long readBits(int bits) {
+        if (bit + bits > (long) length * 8) {
+            throw new IllegalStateException("Column is damaged");
+        }
+        long value = 0;
+        while (bits > 0) {
+            int index = (int) (bit >>> 3);
+            int offset = (int) (bit & 7);
+            int n = Math.min(8 - offset, bits);
+            int chunk = ((bytes[index] & 0xff) >>> (8 - offset - n)) & ((1 << n) - 1);
+            value = (value << n) | chunk;
+            bit += n;
+            bits -= n;
+        }
+        return value;
+    }
+
+    /**
+     * How many measurements there are
+     * @return
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * The time of the current measurement
+     * @return
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * The value of the current measurement
+     * @return
+     */
+    public float getValue() {
+        return Float.intBitsToFloat(valueBits);
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compresses the measurements of one sensor (times and values) as they come in; read them back with
+ * a ColumnDecoder.
+ *
+ * Times are saved as the change in the time between measurements (delta-of-delta), which is
+ * a single bit when they're made at a steady rate. Values are XOR'd with the one before, and only
+ * the bits that changed are saved, which is a single bit when the value didn't change, and usually
+ * well under 32 bits when it changed slowly.
+ *
+ * <pre>
+ * ColumnEncoder column = new ColumnEncoder();
+ * column.add(time, value); // for each measurement
+ * column.writeTo(out);
+ * </pre>
+ *
+ * Adding a measurement doesn't allocate, except to grow the buffer.
+ */
+public class ColumnEncoder {
+
+    private byte[] bytes;
+    // Bits in use in the last byte (0-8; 8 means it's full)
+    private int bitsInLastByte = 8;
+    private int length = 0;
+    private int count = 0;
+
+    private long lastTime;
+    private long lastDelta;
+    private int lastValueBits;
+    private int lastLeading = -1;
+    private int lastTrailing;
+
+    /**
+     * Our default Constructor
+     */
+    public ColumnEncoder() {
+        this(256);
+    }
+
+    /**
+     * Start with room for a number of bytes
+     * @param capacity
+     */
+    public ColumnEncoder(int capacity) {
+        bytes = new byte[Math.max(capacity, 16)];
+    }
+
+    /**
+     * Add a measurement
+     * @param time (it's smallest when times are in order, at a steady rate)
+     * @param value
+     */
+    public void add(long time, float value) {
+        int valueBits = Float.floatToRawIntBits(value);
+        if (count == 0) {
+            writeBits(time, 64);
+            writeBits(valueBits, 32);
+            lastTime = time;
+            lastDelta = 0;
+            lastValueBits = valueBits;
+            count = 1;
+            return;
+        }
+        long delta = time - lastTime;
+        writeDeltaOfDelta(delta - lastDelta);
+        lastTime = time;
+        lastDelta = delta;
+        writeValue(valueBits ^ lastValueBits);
+        lastValueBits = valueBits;
+        count++;
+    }
+
+    private void writeDeltaOfDelta(long dod) {
+        if (dod == 0) {
+            writeBits(0, 1);
+        } else if (dod >= -63 && dod <= 64) {
+            writeBits(0x2, 2);
+            writeBits(dod, 7);
+        } else if (dod >= -255 && dod <= 256) {
+            writeBits(0x6, 3);
+            writeBits(dod, 9);
+        } else if (dod >= -2047 && dod <= 2048) {
+            writeBits(0xe, 4);
+            writeBits(dod, 12);
+        } else {
+            writeBits(0xf, 4);
+            writeBits(dod, 64);
+        }
+    }
+
+    private void writeValue(int xor) {
+        if (xor == 0) {
+            writeBits(0, 1);
+            return;
+        }
+        int leading = Math.min(Integer.numberOfLeadingZeros(xor), 31);
+        int trailing = Integer.numberOfTrailingZeros(xor);
+        if (lastLeading >= 0 && leading >= lastLeading && trailing >= lastTrailing) {
+            // Fits in the same window as last time
+            writeBits(0x2, 2);
+            writeBits(xor >>> lastTrailing, 32 - lastLeading - lastTrailing);
+        } else {
+            int significant = 32 - leading - trailing;
+            writeBits(0x3, 2);
+            writeBits(leading, 5);
+            writeBits(significant - 1, 5);
+            writeBits(xor >>> trailing, significant);
+            lastLeading = leading;
+            lastTrailing = trailing;
+        }
+    }
+
+    /**
+     * Write the low bits of a value, highest first
+     */
+    private void writeBits(long value, int bits) {
+        while (bits > 0) {
+            if (bitsInLastByte == 8) {
+                if (length == bytes.length) {
+                    byte[] bigger = new byte[bytes.length * 2];
+                    System.arraycopy(bytes, 0, bigger, 0, length);
+                    bytes = bigger;
+                }
+                bytes[length++] = 0;
+                bitsInLastByte = 0;
+            }
+            int room = 8 - bitsInLastByte;
+            int n = Math.min(room, bits);
+            int chunk = (int) (value >>> (bits - n)) & ((1 << n) - 1);
+            bytes[length - 1] |= chunk << (room - n);
+            bitsInLastByte += n;
+            bits -= n;
+        }
+    }
+
+    /**
+     * How many measurements have been added
+     * @return
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * How big the compressed measurements are
+     * @return
+     */
+    public int getByteCount() {
+        return length;
+    }
+
+    /**
+     * A ColumnDecoder for the measurements added so far (it shares the buffer, so don't add more while using it)
+     * @return
+     */
+    public ColumnDecoder decoder() {
+        return new ColumnDecoder(bytes, length, count);
+    }
+
+    /**
+     * Save the measurements: the count (4 bytes), the length in bytes (4 bytes), then the bytes.
+     * Read them back with ColumnDecoder.readFrom().
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(count);
+        data.writeInt(length);
+        data.write(bytes, 0, length);
+        data.flush();
+    }
+
+    /**
+     * Start over (keeping the buffer)
+     */
+    public void reset() {
+        length = 0;
+        bitsInLastByte = 8;
+        count = 0;
+        lastLeading = -1;
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The executor behind a Drone's commService: one thread, an unbounded FIFO queue
+ * (just like Executors.newSingleThreadExecutor()). Tasks queued while URGENT is set
+ * (a measurement of a sensor with an alarm raised) go ahead of the others, still in order.
+ *
+ * Every task is stamped when it is queued, so DroneMetrics can tell how long it
+ * waited before its first call to the Sensordrone.
+ */
+class CommExecutor extends ThreadPoolExecutor {
+
+    /**
+     * Set on the calling thread around a submit() that should go ahead of the queue
+     */
+    static final ThreadLocal<Boolean> URGENT = new ThreadLocal<Boolean>();
+
+    private final DroneMetrics metrics;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * A queued task, and when it was queued
+     */
+    private class TimedTask implements Runnable, Comparable<TimedTask> {
+        private final Runnable task;
+        private final long enqueued;
+        private final boolean urgent;
+        private final long order;
+
+        TimedTask(Runnable task, long enqueued, boolean urgent, long order) {
+            this.task = task;
+            this.enqueued = enqueued;
+            this.urgent = urgent;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(TimedTask other) {
+            if (urgent != other.urgent) {
+                return urgent ? -1 : 1;
+            }
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+
+        @Override
+        public void run() {
+            metrics.taskStarted(enqueued);
+            try {
+                task.run();
+            } finally {
+                metrics.taskFinished();
+            }
+        }
+    }
+
+    CommExecutor(ThreadFactory factory, DroneMetrics metrics) {
+        super(1, 1, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(), factory);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        super.execute(new TimedTask(command, System.nanoTime(), URGENT.get() == Boolean.TRUE,
+                sequence.getAndIncrement()));
+    }
+
+}
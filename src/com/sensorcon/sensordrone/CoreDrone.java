@@ -15,12 +15,18 @@
  */
 package com.sensorcon.sensordrone;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.nio.ByteBuffer;
 import java.util.EventListener;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -40,6 +46,7 @@ public abstract class CoreDrone {
 
     /**
      * A boolean to toggle debug messages. This is not modifiable by users.
+     * It only picks the starting log level; use setLogLevel() to change it at runtime.
      */
     public final static boolean DEBUG = false;
 
@@ -96,6 +103,84 @@ public abstract class CoreDrone {
      * Used by this class to send/receive data such as firmware version, calibration data, etc...
      */
     protected DroneSensor localComms;
+    /**
+     * Used to remember things about a particular Sensordrone between connections (may be null)
+     */
+    protected DroneStore droneStore;
+    /**
+     * The math used for altitude, color temperature, and IR temperature
+     */
+    protected DroneConversions conversions = DroneConversions.EXACT;
+    /**
+     * Makes the thread that runs commService (null for the default)
+     */
+    protected ThreadFactory commThreadFactory;
+    /**
+     * Use the handshake remembered in the droneStore (if any) to connect faster
+     */
+    protected boolean warmStartEnabled = false;
+    /**
+     * True if the current connection was set up from the remembered handshake
+     */
+    protected boolean warmStarted = false;
+    /**
+     * The calibration constants currently in use (replaced, never modified)
+     */
+    protected volatile DroneCalibration calibration =
+            new DroneCalibration(0, 0, IRThermometer_V1.DEFAULT_S0);
+    /**
+     * The raw data behind the latest measurement of each quickSystem type
+     */
+    private final RawSample[] rawSamples = new RawSample[QS_TYPE_ADC + 1];
+    /**
+     * The recent measurements of each quickSystem type (made on the first measurement, or getHistory())
+     */
+    private final SensorHistory[] histories = new SensorHistory[QS_TYPE_ADC + 1];
+    private final int[] historyCapacities = new int[QS_TYPE_ADC + 1];
+    /**
+     * When to tell listeners about each quickSystem type's measurements (null for always; replaced, never modified),
+     * and the last measurement they were told about
+     */
+    private volatile Deadband[] deadbands = new Deadband[QS_TYPE_ADC + 1];
+    private final boolean[] deadbandStarted = new boolean[QS_TYPE_ADC + 1];
+    private final float[] deadbandValues = new float[QS_TYPE_ADC + 1];
+    private final long[] deadbandTimes = new long[QS_TYPE_ADC + 1];
+    /**
+     * The filter on each quickSystem type's measurements (null for none; replaced, never modified)
+     */
+    private volatile SignalFilter[] filters = new SignalFilter[QS_TYPE_ADC + 1];
+    /**
+     * Checks alarm rules on every measurement (null for none)
+     */
+    protected volatile AlarmEngine alarmEngine;
+    /**
+     * A bit (1 << QS_TYPE) for each sensor with an alarm raised, whose measurements go first
+     */
+    private volatile int urgentTypes = 0;
+    /**
+     * Set by recordRawSample() when the listeners shouldn't hear about a measurement (cleared once they haven't)
+     */
+    private final boolean[] quiet = new boolean[QS_TYPE_ADC + 1];
+    /**
+     * Counters and latency histograms for the link to the Sensordrone
+     */
+    protected final DroneMetrics metrics = new DroneMetrics(this);
+    /**
+     * The last packets sent to and received from the Sensordrone
+     */
+    protected final FlightRecorder flightRecorder = new FlightRecorder();
+    /**
+     * Records the bytes sent and received on new connections (null for none)
+     */
+    protected volatile WireCapture wireCapture;
+    /**
+     * Where measurements are saved (null for nowhere)
+     */
+    protected volatile ReadingStore readingStore;
+    /**
+     * Told about the commands, connections and listener calls of every Drone (null for none)
+     */
+    static volatile DroneTracer tracer;
 
 
     /**
@@ -136,6 +221,21 @@ public abstract class CoreDrone {
     // The socket closing will be platform dependent
     protected abstract void closeSocket();
 
+    /**
+     * Connect to a Sensordrone via Bluetooth (platform dependent).
+     *
+     * @param MAC The MAC address of the Sensordrone to connect to.
+     * @return Returns true upon successful connection; false otherwise.
+     */
+    public abstract boolean btConnect(String MAC);
+
+    /**
+     * Disconnect from a Sensordrone (platform dependent).
+     *
+     * @return Returns true upon successful disconnection.
+     */
+    public abstract boolean disconnect();
+
     /**
      * The input stream for our connection
      */
@@ -328,7 +428,19 @@ public abstract class CoreDrone {
         if (!isConnected) {
             return false;
         }
+        // A sensor with an alarm raised goes ahead of everything already waiting (see AlarmEngine)
+        if (isUrgent(QS_TYPE)) {
+            CommExecutor.URGENT.set(Boolean.TRUE);
+            try {
+                return measure(QS_TYPE);
+            } finally {
+                CommExecutor.URGENT.set(Boolean.FALSE);
+            }
+        }
+        return measure(QS_TYPE);
+    }
 
+    private boolean measure(int QS_TYPE) {
         if (QS_TYPE == QS_TYPE_ALTITUDE) {
             return measureAltitude();
         } else if (QS_TYPE == QS_TYPE_CAPACITANCE) {
@@ -370,7 +482,55 @@ public abstract class CoreDrone {
         if (!isConnected) {
             return false;
         }
+        return sensorStatus(QS_TYPE);
+    }
 
+    /**
+     * Find out which quickSystem sensor a measurement event is for
+     *
+     * @param event
+     * @return The QS_TYPE (e.g. QS_TYPE_HUMIDITY), or -1 if the event isn't a sensor measurement
+     * @since 1.2.0
+     */
+    public static int quickType(DroneEventObject event) {
+        if (!(event.getSource() instanceof DroneEventObject.droneEventType)) {
+            return -1;
+        }
+        switch ((DroneEventObject.droneEventType) event.getSource()) {
+            case ALTITUDE_MEASURED:
+                return QS_TYPE_ALTITUDE;
+            case CAPCACITANCE_MEASURED:
+                return QS_TYPE_CAPACITANCE;
+            case HUMIDITY_MEASURED:
+                return QS_TYPE_HUMIDITY;
+            case IR_TEMPERATURE_MEASURED:
+                return QS_TYPE_IR_TEMPERATURE;
+            case OXIDIZING_GAS_MEASURED:
+                return QS_TYPE_OXIDIZING_GAS;
+            case PRECISION_GAS_MEASURED:
+                return QS_TYPE_PRECISION_GAS;
+            case PRESSURE_MEASURED:
+                return QS_TYPE_PRESSURE;
+            case REDUCING_GAS_MEASURED:
+                return QS_TYPE_REDUCING_GAS;
+            case RGBC_MEASURED:
+                return QS_TYPE_RGBC;
+            case TEMPERATURE_MEASURED:
+                return QS_TYPE_TEMPERATURE;
+            case ADC_MEASURED:
+                return QS_TYPE_ADC;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * The last known enabled/disabled status of a sensor (even if the connection has been lost)
+     *
+     * @param QS_TYPE
+     * @return
+     */
+    boolean sensorStatus(int QS_TYPE) {
         if (QS_TYPE == QS_TYPE_ALTITUDE) {
             return altitudeStatus;
         } else if (QS_TYPE == QS_TYPE_CAPACITANCE) {
@@ -806,6 +966,63 @@ public abstract class CoreDrone {
         return false;
     }
 
+    /**
+     * Sets the RGBC integration time (turns off auto-ranging).
+     *
+     * @param integrationTime One of RGBC_V1.INTEGRATION_12MS, INTEGRATION_100MS (default), or INTEGRATION_400MS
+     * @return Returns true on successful communication to the CoreDrone.
+     * @since 1.2.0
+     */
+    public boolean setRGBCIntegrationTime(int integrationTime) {
+        if (hardwareVersion == 1) {
+            return ((RGBC_V1) RGBC_CONTROLLER).setIntegrationTime(integrationTime);
+        }
+        return false;
+    }
+
+    /**
+     * Sets the RGBC gain (turns off auto-ranging).
+     *
+     * @param gain One of RGBC_V1.GAIN_1X (default), GAIN_4X, GAIN_16X, or GAIN_64X
+     * @return Returns true on successful communication to the CoreDrone.
+     * @since 1.2.0
+     */
+    public boolean setRGBCGain(int gain) {
+        if (hardwareVersion == 1) {
+            return ((RGBC_V1) RGBC_CONTROLLER).setGain(gain);
+        }
+        return false;
+    }
+
+    /**
+     * Turns RGBC auto-ranging on or off. When on, the integration time and gain are adjusted
+     * automatically after every measurement, based on how bright it is.
+     *
+     * @param onOff
+     * @return Returns true on successful communication to the CoreDrone.
+     * @since 1.2.0
+     */
+    public boolean setRGBCAutoRange(boolean onOff) {
+        if (hardwareVersion == 1) {
+            return ((RGBC_V1) RGBC_CONTROLLER).setAutoRange(onOff);
+        }
+        return false;
+    }
+
+    /**
+     * How long the RGBC sensor currently takes to produce a new reading (this changes with
+     * auto-ranging). There is no point in measuring RGBC more often than this.
+     *
+     * @return Time in milliseconds, or 0 if not connected.
+     * @since 1.2.0
+     */
+    public int getRGBCIntegrationPeriod() {
+        if (hardwareVersion == 1) {
+            return ((RGBC_V1) RGBC_CONTROLLER).getIntegrationPeriod();
+        }
+        return 0;
+    }
+
 	/*
 	 * Capacitance
 	 */
@@ -1155,6 +1372,101 @@ public abstract class CoreDrone {
         }
         return false;
     }
+
+    /**
+     * Sets how many conversions the IR temperature sensor averages for each result.
+     * More averaging gives a less noisy reading, but a slower update rate.
+     *
+     * @param averaging One of IRThermometer_V1.AVERAGE_1, AVERAGE_2, AVERAGE_4 (default), AVERAGE_8, or AVERAGE_16
+     * @return Returns true on successful communication to the CoreDrone.
+     * @since 1.2.0
+     */
+    public boolean setIRTemperatureAveraging(int averaging) {
+        if (hardwareVersion == 1) {
+            return ((IRThermometer_V1) IR_CONTROLLER).setAveraging(averaging);
+        }
+        return false;
+    }
+
+    /**
+     * The time it takes the IR temperature sensor to produce a new reading with its current averaging
+     * setting. There is no point in measuring IR temperature more often than this.
+     *
+     * @return Time in milliseconds, or 0 if not connected.
+     * @since 1.2.0
+     */
+    public int getIRTemperatureConversionPeriod() {
+        if (hardwareVersion == 1) {
+            return ((IRThermometer_V1) IR_CONTROLLER).getConversionPeriod();
+        }
+        return 0;
+    }
+
+    /**
+     * When turned on, measureIRTemperature() only updates the IR temperature values (and notifies
+     * listeners) if the sensor has finished a new conversion since the last measurement.
+     *
+     * @param check
+     * @since 1.2.0
+     */
+    public void setIRTemperatureDataReadyCheck(boolean check) {
+        if (hardwareVersion == 1) {
+            ((IRThermometer_V1) IR_CONTROLLER).setDataReadyCheck(check);
+        }
+    }
+
+    /**
+     * Starts an IR temperature calibration session. Set the returned session's reference temperature
+     * to the (known) temperature of what the Sensordrone is pointed at, and keep measuring IR temperature.
+     * Repeat for at least two different temperatures, then call finishIRTemperatureCalibration().
+     *
+     * @return The calibration session, or null if not connected.
+     * @see IRCalibration
+     * @since 1.2.0
+     */
+    public IRCalibration startIRTemperatureCalibration() {
+        if (hardwareVersion == 1) {
+            return ((IRThermometer_V1) IR_CONTROLLER).startCalibration();
+        }
+        return null;
+    }
+
+    /**
+     * Finishes the IR temperature calibration session, and starts using the fitted calibration factor.
+     * The factor is remembered for this Sensordrone if a DroneStore is set.
+     *
+     * @return Returns false if there is not enough calibration data yet.
+     * @since 1.2.0
+     */
+    public boolean finishIRTemperatureCalibration() {
+        if (hardwareVersion == 1) {
+            return ((IRThermometer_V1) IR_CONTROLLER).finishCalibration();
+        }
+        return false;
+    }
+
+    /**
+     * Cancels an IR temperature calibration session without changing the calibration.
+     *
+     * @since 1.2.0
+     */
+    public void cancelIRTemperatureCalibration() {
+        if (hardwareVersion == 1) {
+            ((IRThermometer_V1) IR_CONTROLLER).cancelCalibration();
+        }
+    }
+
+    /**
+     * Goes back to the default IR temperature calibration, and forgets any stored calibration
+     * for this Sensordrone.
+     *
+     * @since 1.2.0
+     */
+    public void resetIRTemperatureCalibration() {
+        if (hardwareVersion == 1) {
+            ((IRThermometer_V1) IR_CONTROLLER).resetCalibrationFactor();
+        }
+    }
 	
 	/*
 	 * LEDs
@@ -1595,6 +1907,16 @@ public abstract class CoreDrone {
      * @param event
      */
     protected void notifyDroneEventHandler(DroneEventObject event) {
+        DroneTracer trace = tracer;
+        if (trace != null && (event.matches(DroneEventObject.droneEventType.CONNECTED)
+                || event.matches(DroneEventObject.droneEventType.DISCONNECTED)
+                || event.matches(DroneEventObject.droneEventType.CONNECTION_LOST))) {
+            trace.connectionChanged(this, (DroneEventObject.droneEventType) event.getSource());
+        }
+        int qsType = quickType(event);
+        if (qsType >= 0 && quiet[qsType]) {
+            return;
+        }
         Object[] currentListeners = droneListenerList.getListenerList();
         for (int i = 0; i < currentListeners.length; i += 2) {
             // Only want DroneEventHandler
@@ -1602,7 +1924,11 @@ public abstract class CoreDrone {
                 continue;
             }
             if (currentListeners[i] == DroneEventHandler.class) {
+                long start = trace == null ? 0 : System.nanoTime();
                 ((DroneEventHandler) currentListeners[i + 1]).parseEvent(event);
+                if (trace != null) {
+                    trace.listenerDispatched(this, currentListeners[i + 1], event, start, System.nanoTime());
+                }
             }
         }
     }
@@ -1613,6 +1939,13 @@ public abstract class CoreDrone {
      * @param event
      */
     protected void notifyDroneEventListener(DroneEventObject event) {
+        // This is the last notification of a measurement
+        int qsType = quickType(event);
+        if (qsType >= 0 && quiet[qsType]) {
+            quiet[qsType] = false;
+            return;
+        }
+        DroneTracer trace = tracer;
         Object[] listeners = droneListenerList.getListenerList();
         String eventType = event.getSource().toString();
         for (int i = 0; i < listeners.length; i += 2) {
@@ -1621,6 +1954,7 @@ public abstract class CoreDrone {
                 continue;
             }
             if (listeners[i] == DroneEventListener.class) {
+                long start = trace == null ? 0 : System.nanoTime();
         		/* 
         		 * Go through all of the DroneEventObject enums
         		 */
@@ -1666,6 +2000,9 @@ public abstract class CoreDrone {
                 } else {
                     ((DroneEventListener) listeners[i + 1]).unknown(event);
                 }
+                if (trace != null) {
+                    trace.listenerDispatched(this, listeners[i + 1], event, start, System.nanoTime());
+                }
             }
         }
     }
@@ -1681,6 +2018,7 @@ public abstract class CoreDrone {
      * @param status
      */
     protected void notifyDroneStatusListener(DroneEventObject status) {
+        DroneTracer trace = tracer;
         Object[] statuses = droneListenerList.getListenerList();
         String statusType = status.getSource().toString();
         for (int i = 0; i < statuses.length; i += 2) {
@@ -1688,6 +2026,7 @@ public abstract class CoreDrone {
             if (!(statuses[i + 1] instanceof DroneStatusListener)) {
                 continue;
             }
+            long start = trace == null ? 0 : System.nanoTime();
             if (statusType.equals(DroneEventObject.droneEventType.BATTERY_VOLTAGE_MEASURED.toString())) {
                 ((DroneStatusListener) statuses[i + 1]).batteryVoltageStatus(status);
             } else if (statusType.equals(DroneEventObject.droneEventType.LOW_BATTERY.toString())) {
@@ -1762,6 +2101,9 @@ public abstract class CoreDrone {
             } else {
                 ((DroneStatusListener) statuses[i + 1]).unknownStatus(status);
             }
+            if (trace != null) {
+                trace.listenerDispatched(this, statuses[i + 1], status, start, System.nanoTime());
+            }
         }
     }
 
@@ -1838,9 +2180,754 @@ public abstract class CoreDrone {
         }
     }
 
+    /**
+     * Set the DroneStore used to remember things (like calibration data) about each Sensordrone
+     * between connections. Set it before connecting. There isn't one unless it's set here.
+     *
+     * @param store The DroneStore to use, or null to not remember anything.
+     * @since 1.2.0
+     */
+    public void setDroneStore(DroneStore store) {
+        droneStore = store;
+    }
+
+    /**
+     * Choose the math used to calculate altitude, color temperature, and IR temperature.
+     *
+     * @param droneConversions DroneConversions.EXACT (the default) or DroneConversions.FAST
+     * @see DroneConversions
+     * @since 1.2.0
+     */
+    public void setConversions(DroneConversions droneConversions) {
+        if (droneConversions != null) {
+            conversions = droneConversions;
+        }
+    }
+
+    /**
+     * Get the math used to calculate altitude, color temperature, and IR temperature.
+     *
+     * @return
+     * @since 1.2.0
+     */
+    public DroneConversions getConversions() {
+        return conversions;
+    }
+
+    /**
+     * Choose the ThreadFactory used to make the thread that talks to the Sensordrone (e.g. one
+     * that makes virtual threads). Set it before connecting.
+     *
+     * @param factory The ThreadFactory, or null for the default
+     * @since 1.2.0
+     */
+    public void setCommThreadFactory(ThreadFactory factory) {
+        commThreadFactory = factory;
+    }
+
+    /**
+     * Makes a new commService for a connection. All communications with the Sensordrone are run on it,
+     * one at a time, in order.
+     *
+     * @return
+     */
+    protected ExecutorService newCommService() {
+        // The same as Executors.newSingleThreadExecutor(), but timed for DroneMetrics
+        ThreadFactory factory = commThreadFactory == null ? Executors.defaultThreadFactory() : commThreadFactory;
+        return new CommExecutor(factory, metrics);
+    }
+
+    // Waits out the delay of submitLater() for every Drone, so their commServices don't have to
+    private static ScheduledExecutorService commTimer;
+
+    private static synchronized ScheduledExecutorService commTimer() {
+        if (commTimer == null) {
+            commTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "sensordrone-comm-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return commTimer;
+    }
+
+    /**
+     * Queue a task on the commService after a delay (e.g. a sensor that needs time to settle),
+     * instead of sleeping on the commService and holding up every other sensor.
+     *
+     * @param task
+     * @param delayMillis
+     * @param urgent Put it ahead of the queue when it's time (see CommExecutor.URGENT)
+     */
+    void submitLater(final Runnable task, long delayMillis, final boolean urgent) {
+        Runnable submitRunnable = new Runnable() {
+            @Override
+            public void run() {
+                ExecutorService service = commService;
+                if (!isConnected || service == null) {
+                    return;
+                }
+                CommExecutor.URGENT.set(urgent ? Boolean.TRUE : Boolean.FALSE);
+                try {
+                    service.submit(task);
+                } catch (RejectedExecutionException e) {
+                    // Disconnected in the meantime
+                } finally {
+                    CommExecutor.URGENT.set(Boolean.FALSE);
+                }
+            }
+        };
+        commTimer().schedule(submitRunnable, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Choose whether to use the hardware/firmware version and calibration data remembered
+     * from the last connection to a Sensordrone (needs a DroneStore).
+     *
+     * With warm starts, btConnect doesn't wait for the Sensordrone to send this information;
+     * it is still read right after connecting, and replaces the remembered values if they turn out
+     * to be wrong. This is off by default; nothing is remembered for it unless it's turned on
+     * and a DroneStore is set (see setDroneStore()).
+     *
+     * <pre>
+     * myDrone.setDroneStore(new JStore()); // or new AStore(context) on Android
+     * myDrone.setWarmStart(true);
+     * </pre>
+     *
+     * @param enable
+     * @since 1.2.0
+     */
+    public void setWarmStart(boolean enable) {
+        warmStartEnabled = enable;
+    }
+
+    /**
+     * Check if the current connection was set up from remembered data (see setWarmStart())
+     *
+     * @return
+     * @since 1.2.0
+     */
+    public boolean isWarmStarted() {
+        return warmStarted;
+    }
+
+    // The keys the connection handshake is remembered under in the DroneStore
+    private static final String STORE_KEY_HW_VERSION = "hw.version";
+    private static final String STORE_KEY_FW_VERSION = "fw.version";
+    private static final String STORE_KEY_FW_REVISION = "fw.revision";
+    private static final String STORE_KEY_PG_BASELINE = "pg.baseline";
+    private static final String STORE_KEY_PG_SENSITIVITY = "pg.sensitivity";
+    private static final String[] STORE_KEYS_HANDSHAKE = {STORE_KEY_HW_VERSION, STORE_KEY_FW_VERSION,
+            STORE_KEY_FW_REVISION, STORE_KEY_PG_BASELINE, STORE_KEY_PG_SENSITIVITY};
+
+    /**
+     * Tries to set up the hardware/firmware version and calibration data from the droneStore,
+     * instead of asking the Sensordrone. Call this after lastMAC is set, and before initializeHardware().
+     *
+     * @return true if everything was remembered (and has been loaded); false if the handshake needs to be done.
+     */
+    protected boolean loadRememberedHandshake() {
+        warmStarted = false;
+        if (!warmStartEnabled || droneStore == null || lastMAC == null) {
+            return false;
+        }
+        double hw = droneStore.getDouble(lastMAC, STORE_KEY_HW_VERSION, -1);
+        double fw = droneStore.getDouble(lastMAC, STORE_KEY_FW_VERSION, -1);
+        double rev = droneStore.getDouble(lastMAC, STORE_KEY_FW_REVISION, -1);
+        double baseline = droneStore.getDouble(lastMAC, STORE_KEY_PG_BASELINE, Double.NaN);
+        double sensitivity = droneStore.getDouble(lastMAC, STORE_KEY_PG_SENSITIVITY, Double.NaN);
+        if (hw < 0 || fw < 0 || rev < 0 || Double.isNaN(baseline) || Double.isNaN(sensitivity)) {
+            return false;
+        }
+        hardwareVersion = (int) hw;
+        firmwareVersion = (int) fw;
+        firmwareRevision = (int) rev;
+        DroneCalibration current = calibration;
+        calibration = new DroneCalibration((float) baseline, (float) sensitivity, current.irCalibrationFactor);
+        warmStarted = true;
+        return true;
+    }
+
+    /**
+     * Remembers the handshake that was just done (hardware/firmware version and calibration data)
+     * for the next warm start. Call this once the hardware is initialized; it's saved in one write,
+     * and only if something changed.
+     */
+    protected void rememberHandshake() {
+        if (!warmStartEnabled || droneStore == null || lastMAC == null) {
+            return;
+        }
+        DroneCalibration current = calibration;
+        String[] values = {
+                String.valueOf(hardwareVersion),
+                String.valueOf(firmwareVersion),
+                String.valueOf(firmwareRevision),
+                Double.toString(current.precisionGasBaseline),
+                Double.toString(current.precisionGasSensitivity)};
+        for (int i = 0; i < values.length; i++) {
+            if (!values[i].equals(droneStore.get(lastMAC, STORE_KEYS_HANDSHAKE[i]))) {
+                droneStore.putAll(lastMAC, STORE_KEYS_HANDSHAKE, values);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Forgets the remembered handshake, so the next connection does it the slow way
+     */
+    protected void forgetHandshake() {
+        if (droneStore == null || lastMAC == null) {
+            return;
+        }
+        droneStore.putAll(lastMAC, STORE_KEYS_HANDSHAKE, new String[STORE_KEYS_HANDSHAKE.length]);
+    }
+
+    /**
+     * After a warm start, reads the real hardware/firmware version and calibration data
+     * (back-to-back, in one trip) and replaces the remembered ones if they were wrong.
+     *
+     * @return false if the check couldn't be queued
+     */
+    protected boolean validateRememberedHandshake() {
+        Runnable validateRunnable = new Runnable() {
+            @Override
+            public void run() {
+                byte[] readHWFW = {0x50, 0x02, 0x33, 0x00};
+                byte[] readCalibration = {0x50, 0x02, 0x40, 0x00};
+                byte[][] responses = localComms.sdPipelinedCallAndResponse(new byte[][]{readHWFW, readCalibration});
+                if (responses == null) {
+                    return;
+                }
+                byte[] HWFW = responses[0];
+                if (HWFW != null && HWFW.length >= 3) {
+                    int hw = HWFW[0] & 0xff;
+                    if (hw != hardwareVersion) {
+                        // The controllers were set up for the wrong hardware; don't guess next time.
+                        logger.debug(TAG, "Remembered hardware version was wrong");
+                        forgetHandshake();
+                        hardwareVersion = hw;
+                        firmwareVersion = HWFW[1] & 0xff;
+                        firmwareRevision = HWFW[2] & 0xff;
+                        return;
+                    }
+                    firmwareVersion = HWFW[1] & 0xff;
+                    firmwareRevision = HWFW[2] & 0xff;
+                }
+                if (responses[1] != null && PRECISION_GAS_CONTROLLER instanceof PrecisionGas_V1) {
+                    ((PrecisionGas_V1) PRECISION_GAS_CONTROLLER).parseCalibrationData(responses[1]);
+                }
+                // Only written if something was different
+                rememberHandshake();
+            }
+        };
+
+        try {
+            commService.submit(validateRunnable);
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Takes note of how the Sensordrone is set up (enabled sensors, LEDs, baud rate, sensor settings).
+     * This still works after the connection has been lost.
+     *
+     * @return The settings, or null if the hardware was never set up
+     */
+    DroneSettings captureSettings() {
+        // hardwareVersion is reset when the connection is lost, so look at the controllers instead
+        if (!(LED_CONTROLLER instanceof LEDS_V1)) {
+            return null;
+        }
+        DroneSettings settings = new DroneSettings();
+        for (int i = 0; i < settings.enabled.length; i++) {
+            settings.enabled[i] = sensorStatus(i);
+        }
+        settings.ledColors = ((LEDS_V1) LED_CONTROLLER).getColors();
+        settings.baudRate = ((UART_V1) UART_CONTROLLER).getBaudRate();
+        settings.irAveraging = ((IRThermometer_V1) IR_CONTROLLER).getAveraging();
+        settings.rgbcIntegration = ((RGBC_V1) RGBC_CONTROLLER).getIntegrationTime();
+        settings.rgbcGain = ((RGBC_V1) RGBC_CONTROLLER).getGain();
+        settings.rgbcAutoRange = ((RGBC_V1) RGBC_CONTROLLER).getAutoRange();
+        return settings;
+    }
+
+    /**
+     * Sets the Sensordrone back up the way it was (see captureSettings()). Call this after connecting.
+     *
+     * @param settings
+     * @return false if it couldn't all be sent
+     */
+    boolean restoreSettings(DroneSettings settings) {
+        if (!isConnected || hardwareVersion != 1) {
+            return false;
+        }
+        boolean sent = true;
+        // Sensor settings first, so they are used when the sensors are enabled
+        sent &= setIRTemperatureAveraging(settings.irAveraging);
+        if (settings.rgbcAutoRange) {
+            sent &= setRGBCAutoRange(true);
+        } else {
+            sent &= setRGBCIntegrationTime(settings.rgbcIntegration);
+            sent &= setRGBCGain(settings.rgbcGain);
+        }
+        for (int i = 0; i < settings.enabled.length; i++) {
+            if (settings.enabled[i]) {
+                sent &= quickEnable(i);
+            }
+        }
+        boolean ledsOn = false;
+        for (int color : settings.ledColors) {
+            ledsOn |= color != 0;
+        }
+        if (ledsOn) {
+            sent &= ((LEDS_V1) LED_CONTROLLER).setColors(settings.ledColors);
+        }
+        switch (settings.baudRate) {
+            case 2400:
+                sent &= setBaudRate_2400();
+                break;
+            case 9600:
+                sent &= setBaudRate_9600();
+                break;
+            case 19200:
+                sent &= setBaudRate_19200();
+                break;
+            case 38400:
+                sent &= setBaudRate_38400();
+                break;
+            case 115200:
+                sent &= setBaudRate_115200();
+                break;
+            default:
+                break;
+        }
+        return sent;
+    }
+
+    /**
+     * Get the calibration constants currently used to calculate values
+     *
+     * @return
+     * @since 1.2.0
+     */
+    public DroneCalibration getCalibration() {
+        return calibration;
+    }
+
+    /**
+     * Get the raw data (and calibration) behind the latest measurement of a sensor.
+     * Keep these if you want to recompute values later with a different calibration (see RawSampleProcessor).
+     *
+     * @param QS_TYPE The quickSystem type of the sensor (e.g. QS_TYPE_HUMIDITY)
+     * @return The RawSample, or null if there hasn't been a measurement yet
+     * @since 1.2.0
+     */
+    public RawSample getRawSample(int QS_TYPE) {
+        if (QS_TYPE < 0 || QS_TYPE >= rawSamples.length) {
+            return null;
+        }
+        return rawSamples[QS_TYPE];
+    }
+
+    /**
+     * Install a DroneTracer, to be told about the commands, connection changes and listener calls
+     * of every Drone in this process.
+     *
+     * @param droneTracer The tracer, or null to stop tracing
+     * @since 1.2.0
+     */
+    public static void setTracer(DroneTracer droneTracer) {
+        tracer = droneTracer;
+    }
+
+    /**
+     * Get the installed DroneTracer
+     *
+     * @return The tracer, or null if there isn't one
+     * @since 1.2.0
+     */
+    public static DroneTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Get the flight recorder, which always remembers the last packets sent to and received from
+     * the Sensordrone (and takes a snapshot of them when the connection is lost).
+     *
+     * @return
+     * @since 1.2.0
+     */
+    public FlightRecorder getFlightRecorder() {
+        return flightRecorder;
+    }
+
+    /**
+     * Record the exact bytes sent to and received from the Sensordrone, starting with the next connection
+     * (so the session can be played back with a ReplayDrone).
+     *
+     * @param capture The WireCapture to save to, or null to stop capturing new connections
+     * @since 1.2.0
+     */
+    public void setWireCapture(WireCapture capture) {
+        wireCapture = capture;
+    }
+
+    /**
+     * Used by btConnect to set up iStream and oStream (wrapping them if there's a WireCapture)
+     *
+     * @param MAC
+     * @param in
+     * @param out
+     */
+    protected void openStreams(String MAC, InputStream in, OutputStream out) {
+        WireCapture capture = wireCapture;
+        if (capture == null) {
+            iStream = in;
+            oStream = out;
+            return;
+        }
+        capture.connected(MAC);
+        iStream = capture.wrap(in);
+        oStream = capture.wrap(out);
+    }
+
+    /**
+     * Set what this Drone logs, while it's running
+     *
+     * @param level Logger.LEVEL_OFF, LEVEL_INFO, LEVEL_DEBUG, or LEVEL_TRACE (every packet)
+     * @since 1.2.0
+     */
+    public void setLogLevel(int level) {
+        if (logger != null) {
+            logger.setLevel(level);
+        }
+    }
+
+    /**
+     * Get the counters and latency histograms for the link to the Sensordrone.
+     * They keep counting across reconnects.
+     *
+     * @return
+     * @since 1.2.0
+     */
+    public DroneMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the latest measurement of a sensor as a FleetReading (MAC, type, time, and value).
+     *
+     * @param QS_TYPE The quickSystem type of the sensor (e.g. QS_TYPE_HUMIDITY)
+     * @return The reading (in the units listed in RawSampleProcessor), or null if there hasn't been a measurement yet
+     * @since 1.2.0
+     */
+    public FleetReading getReading(int QS_TYPE) {
+        RawSample sample = getRawSample(QS_TYPE);
+        if (sample == null) {
+            return null;
+        }
+        float value = RawSampleProcessor.convert(sample, null, conversions);
+        return new FleetReading(lastMAC, QS_TYPE, sample.timestamp, value);
+    }
+
+    /**
+     * Used by the sensors to keep the raw data behind each measurement, after setting the public fields
+     * and right before notifying the listeners (the filter, alarm rules and deadband are applied here)
+     * @param QS_TYPE
+     * @param raw
+     */
+    void recordRawSample(int QS_TYPE, int[] raw) {
+        RawSample sample = new RawSample(QS_TYPE, System.currentTimeMillis(), raw, calibration);
+        rawSamples[QS_TYPE] = sample;
+        metrics.recordMeasurement(QS_TYPE);
+        SensorHistory history = getHistory(QS_TYPE);
+        ReadingStore store = readingStore;
+        Deadband deadband = deadbands[QS_TYPE];
+        SignalFilter filter = filters[QS_TYPE];
+        AlarmEngine alarms = alarmEngine;
+        if (history == null && store == null && deadband == null && filter == null && alarms == null) {
+            return;
+        }
+        float value = RawSampleProcessor.convert(sample, null, conversions);
+        // The listeners get the filtered value; the history and the store keep the measured one
+        float filtered = value;
+        if (filter != null) {
+            filtered = filter.apply(value, sample.timestamp);
+            setMeasuredValue(QS_TYPE, filtered);
+        }
+        boolean alarmChanged = alarms != null && alarms.check(this, QS_TYPE, sample.timestamp, filtered);
+        if (deadband != null && !passesDeadband(QS_TYPE, deadband, sample.timestamp, filtered) && !alarmChanged) {
+            quiet[QS_TYPE] = true;
+            metrics.recordSuppressed(QS_TYPE);
+        }
+        if (history != null) {
+            history.add(sample.timestamp, value);
+        }
+        if (store != null) {
+            try {
+                store.append(lastMAC, QS_TYPE, sample.timestamp, value);
+            } catch (IOException e) {
+                logger.debug(TAG, "Couldn't save a measurement: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Put a (filtered) value in the public fields of a quickSystem type, in all of its units
+     */
+    private void setMeasuredValue(int QS_TYPE, float value) {
+        switch (QS_TYPE) {
+            case QS_TYPE_ALTITUDE:
+                altitude_Meters = value;
+                altitude_Feet = (float) (value * 3.2084);
+                break;
+            case QS_TYPE_CAPACITANCE:
+                capacitance_femtoFarad = value;
+                break;
+            case QS_TYPE_HUMIDITY:
+                humidity_Percent = value;
+                break;
+            case QS_TYPE_IR_TEMPERATURE:
+                irTemperature_Celsius = value;
+                irTemperature_Kelvin = (float) (value + 273.15);
+                irTemperature_Fahrenheit = (float) (value * (9.0 / 5.0) + 32.0);
+                break;
+            case QS_TYPE_OXIDIZING_GAS:
+                oxidizingGas_Ohm = value;
+                break;
+            case QS_TYPE_PRECISION_GAS:
+                precisionGas_ppmCarbonMonoxide = value;
+                break;
+            case QS_TYPE_PRESSURE:
+                pressure_Pascals = value;
+                pressure_Atmospheres = (float) (value * 9.86923267e-6);
+                pressure_Torr = (float) (value * 0.00750061683);
+                break;
+            case QS_TYPE_REDUCING_GAS:
+                reducingGas_Ohm = value;
+                break;
+            case QS_TYPE_RGBC:
+                rgbcLux = value;
+                break;
+            case QS_TYPE_TEMPERATURE:
+                temperature_Celsius = value;
+                temperature_Kelvin = (float) (value + 273.15);
+                temperature_Fahrenheit = (float) (value * (9.0 / 5.0) + 32.0);
+                break;
+            case QS_TYPE_ADC:
+                externalADC_Volts = value;
+                break;
+        }
+    }
+
+    /**
+     * Smooth a sensor's measurements before the listeners are told about them. The public fields
+     * (in all of their units) get the filtered value; getReading(), getHistory() and the ReadingStore
+     * keep the measured one. For RGBC, only rgbcLux is filtered.
+     *
+     * @param QS_TYPE The quickSystem type of the sensor (e.g. QS_TYPE_REDUCING_GAS)
+     * @param filter The filter (not shared with another sensor), or null for none
+     * @since 1.2.0
+     */
+    public void setFilter(int QS_TYPE, SignalFilter filter) {
+        if (QS_TYPE < 0 || QS_TYPE > QS_TYPE_ADC) {
+            return;
+        }
+        synchronized (deadbandStarted) {
+            SignalFilter[] changed = new SignalFilter[filters.length];
+            System.arraycopy(filters, 0, changed, 0, changed.length);
+            changed[QS_TYPE] = filter;
+            filters = changed;
+        }
+    }
+
+    /**
+     * The filter on a sensor's measurements
+     *
+     * @param QS_TYPE
+     * @return The SignalFilter, or null if there isn't one
+     * @since 1.2.0
+     */
+    public SignalFilter getFilter(int QS_TYPE) {
+        return QS_TYPE < 0 || QS_TYPE > QS_TYPE_ADC ? null : filters[QS_TYPE];
+    }
+
+    /**
+     * Check alarm rules on every measurement, before the listeners are told about it (see AlarmEngine)
+     *
+     * @param engine The AlarmEngine (only for this Drone), or null to stop
+     * @since 1.2.0
+     */
+    public void setAlarmEngine(AlarmEngine engine) {
+        AlarmEngine old = alarmEngine;
+        if (old == engine) {
+            return;
+        }
+        alarmEngine = engine;
+        if (old != null) {
+            // Put its escalated sensors back to normal (through its DroneSupervisor)
+            old.detach(this);
+        }
+        if (engine != null) {
+            engine.attach(this);
+        }
+    }
+
+    /**
+     * The AlarmEngine checking this Drone's measurements
+     *
+     * @return The AlarmEngine, or null if there isn't one
+     * @since 1.2.0
+     */
+    public AlarmEngine getAlarmEngine() {
+        return alarmEngine;
+    }
+
+    /**
+     * Check if a sensor's measurements go first (it has an alarm raised)
+     */
+    boolean isUrgent(int QS_TYPE) {
+        return QS_TYPE >= 0 && QS_TYPE <= QS_TYPE_ADC && (urgentTypes & (1 << QS_TYPE)) != 0;
+    }
+
+    synchronized void setUrgent(int QS_TYPE, boolean urgent) {
+        urgentTypes = urgent ? urgentTypes | (1 << QS_TYPE) : urgentTypes & ~(1 << QS_TYPE);
+    }
+
+    private boolean passesDeadband(int QS_TYPE, Deadband deadband, long time, float value) {
+        if (deadbandStarted[QS_TYPE]
+                && !deadband.passes(value, time, deadbandValues[QS_TYPE], deadbandTimes[QS_TYPE])) {
+            return false;
+        }
+        deadbandStarted[QS_TYPE] = true;
+        deadbandValues[QS_TYPE] = value;
+        deadbandTimes[QS_TYPE] = time;
+        return true;
+    }
+
+    /**
+     * Only tell the listeners (DroneEventHandler and DroneEventListener) about a sensor's measurements when
+     * they've changed enough. The ones held back are still measured, and kept in the public fields,
+     * getReading(), getHistory() and the ReadingStore.
+     *
+     * @param QS_TYPE The quickSystem type of the sensor (e.g. QS_TYPE_TEMPERATURE)
+     * @param deadband How much it has to change, or null to tell them about every measurement
+     * @since 1.2.0
+     */
+    public void setDeadband(int QS_TYPE, Deadband deadband) {
+        if (QS_TYPE < 0 || QS_TYPE > QS_TYPE_ADC) {
+            return;
+        }
+        synchronized (deadbandStarted) {
+            Deadband[] changed = new Deadband[deadbands.length];
+            System.arraycopy(deadbands, 0, changed, 0, changed.length);
+            changed[QS_TYPE] = deadband;
+            // The next measurement starts over
+            deadbandStarted[QS_TYPE] = false;
+            deadbands = changed;
+        }
+    }
+
+    /**
+     * When the listeners are told about a sensor's measurements
+     *
+     * @param QS_TYPE
+     * @return The Deadband, or null if they're told about every one
+     * @since 1.2.0
+     */
+    public Deadband getDeadband(int QS_TYPE) {
+        return QS_TYPE < 0 || QS_TYPE > QS_TYPE_ADC ? null : deadbands[QS_TYPE];
+    }
+
+    /**
+     * Save every measurement from now on (e.g. with several Drones sharing one ReadingStore)
+     *
+     * @param store The ReadingStore, or null to stop saving
+     * @since 1.2.0
+     */
+    public void setReadingStore(ReadingStore store) {
+        readingStore = store;
+    }
+
+    /**
+     * How many measurements of each sensor getHistory() keeps, unless changed with setHistoryCapacity()
+     */
+    public static final int DEFAULT_HISTORY_CAPACITY = 512;
+
+    /**
+     * Get the recent measurements of a sensor (kept automatically, in the units listed in RawSampleProcessor).
+     * They're kept across reconnects.
+     *
+     * @param QS_TYPE The quickSystem type of the sensor (e.g. QS_TYPE_HUMIDITY)
+     * @return The SensorHistory, or null if it's turned off (see setHistoryCapacity())
+     * @since 1.2.0
+     */
+    public SensorHistory getHistory(int QS_TYPE) {
+        if (QS_TYPE < 0 || QS_TYPE >= histories.length) {
+            return null;
+        }
+        synchronized (histories) {
+            SensorHistory history = histories[QS_TYPE];
+            if (history == null && historyCapacities[QS_TYPE] > 0) {
+                history = new SensorHistory(historyCapacities[QS_TYPE]);
+                histories[QS_TYPE] = history;
+            }
+            return history;
+        }
+    }
+
+    /**
+     * Set how many measurements of a sensor getHistory() keeps. The latest ones that fit are kept,
+     * in a new SensorHistory (so call getHistory() again afterwards).
+     *
+     * @param QS_TYPE The quickSystem type of the sensor (e.g. QS_TYPE_HUMIDITY)
+     * @param capacity How many to keep, or 0 to turn it off
+     * @since 1.2.0
+     */
+    public void setHistoryCapacity(int QS_TYPE, int capacity) {
+        if (QS_TYPE < 0 || QS_TYPE >= histories.length) {
+            return;
+        }
+        synchronized (histories) {
+            historyCapacities[QS_TYPE] = Math.max(capacity, 0);
+            SensorHistory history = histories[QS_TYPE];
+            if (history != null) {
+                histories[QS_TYPE] = capacity > 0 ? history.resized(capacity) : null;
+            }
+        }
+    }
+
+    /**
+     * Used by the precision gas sensor when its calibration data is read
+     * (remembered for warm starts by rememberHandshake())
+     * @param baseline
+     * @param sensitivity
+     */
+    synchronized void setPrecisionGasCalibration(float baseline, float sensitivity) {
+        DroneCalibration current = calibration;
+        calibration = new DroneCalibration(baseline, sensitivity, current.irCalibrationFactor);
+    }
+
+    /**
+     * Used by the IR thermometer when its calibration factor changes
+     * @param calibrationFactor
+     */
+    synchronized void setIRCalibrationFactor(double calibrationFactor) {
+        DroneCalibration current = calibration;
+        calibration = new DroneCalibration(current.precisionGasBaseline, current.precisionGasSensitivity, calibrationFactor);
+    }
+
     // A basic Constructor
     public CoreDrone() {
         isConnected = false;
+        for (int i = 0; i < historyCapacities.length; i++) {
+            historyCapacities[i] = DEFAULT_HISTORY_CAPACITY;
+        }
         droneEventListenerList = new EventListenerList();
         droneStatusListenerList = new EventListenerList();
         droneListenerList = new EventListenerList();
@@ -1900,7 +2987,7 @@ public abstract class CoreDrone {
         if (hwVersion == 1) {
             // Make sure any calibration stuff was read properly
             boolean calRead;
-            logger.debugLogger(TAG, "Setting up hardware version 1", DEBUG);
+            logger.debug(TAG, "Setting up hardware version 1");
             ADC_CONTROLLER = new ADC_V1(this);
             CAPACITANCE_CONTROLLER = new Capacitance_V1(this);
             RED_OX_CONTROLLER = new GeneralGas_V1(this);
@@ -1910,8 +2997,15 @@ public abstract class CoreDrone {
             LED_CONTROLLER = new LEDS_V1(this);
             POWER_CONTROLLER = new Power_V1(this);
             PRECISION_GAS_CONTROLLER = new PrecisionGas_V1(this);
-            // Read calibration data
-            calRead = ((PrecisionGas_V1) PRECISION_GAS_CONTROLLER).readCalibrationData();
+            // Read calibration data (unless it's remembered from last time)
+            if (warmStarted) {
+                DroneCalibration remembered = calibration;
+                ((PrecisionGas_V1) PRECISION_GAS_CONTROLLER).setCalibrationData(
+                        remembered.precisionGasBaseline, remembered.precisionGasSensitivity);
+                calRead = true;
+            } else {
+                calRead = ((PrecisionGas_V1) PRECISION_GAS_CONTROLLER).readCalibrationData();
+            }
             if (calRead == false) {
                 return false;
             }
@@ -0,0 +1,116 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+/**
+ * When a measurement has changed enough to tell the listeners about it (see CoreDrone.setDeadband()).
+ *
+ * A measurement is passed on if it's the first one, if it has moved at least the absolute amount
+ * or the percentage from the last one passed on, or if the heartbeat has gone by since then.
+ * With no amount and no percentage, any change is passed on.
+ *
+ * <pre>
+ * // Only tell listeners when the temperature moves 0.5 C, or once a minute
+ * myDrone.setDeadband(CoreDrone.QS_TYPE_TEMPERATURE, new Deadband(0.5f, 0, 60000));
+ * </pre>
+ *
+ * Values are in the units listed in RawSampleProcessor.
+ */
+public final class Deadband {
+
+    /**
+     * How far a measurement has to move (0 to not use it)
+     */
+    public final float absolute;
+    /**
+     * How far a measurement has to move, as a percentage of the last one (0 to not use it)
+     */
+    public final float percent;
+    /**
+     * Pass a measurement on anyway when this long (ms) has gone by (0 for never)
+     */
+    public final long heartbeatMillis;
+
+    /**
+     * Our default Constructor
+     * @param absolute
+     * @param percent
+     * @param heartbeatMillis
+     */
+    public Deadband(float absolute, float percent, long heartbeatMillis) {
+        if (!(absolute >= 0) || !(percent >= 0) || heartbeatMillis < 0) {
+            throw new IllegalArgumentException("Deadband amounts must be >= 0");
+        }
+        this.absolute = absolute;
+        this.percent = percent;
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    /**
+     * Only pass on measurements that moved at least an amount
+     * @param amount
+     * @return
+     */
+    public static Deadband absolute(float amount) {
+        return new Deadband(amount, 0, 0);
+    }
+
+    /**
+     * Only pass on measurements that moved at least a percentage of the last one
+     * @param percent
+     * @return
+     */
+    public static Deadband percent(float percent) {
+        return new Deadband(0, percent, 0);
+    }
+
+    /**
+     * Only pass on measurements that changed, or when the heartbeat has gone by
+     * @param heartbeatMillis
+     * @return
+     */
+    public static Deadband heartbeat(long heartbeatMillis) {
+        return new Deadband(0, 0, heartbeatMillis);
+    }
+
+    /**
+     * Check a measurement against the last one passed on
+     * @param value
+     * @param time
+     * @param lastValue
+     * @param lastTime
+     * @return true to pass it on
+     */
+    public boolean passes(float value, long time, float lastValue, long lastTime) {
+        if (heartbeatMillis > 0 && time - lastTime >= heartbeatMillis) {
+            return true;
+        }
+        float change = Math.abs(value - lastValue);
+        if (absolute == 0 && percent == 0) {
+            return change != 0 || Float.isNaN(value) != Float.isNaN(lastValue);
+        }
+        if (absolute > 0 && change >= absolute) {
+            return true;
+        }
+        return percent > 0 && change >= Math.abs(lastValue) * percent / 100;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadband absolute=" + absolute + " percent=" + percent + " heartbeat=" + heartbeatMillis + "ms";
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.io.Serializable;
+
+/**
+ * The calibration constants used to turn a Sensordrone's raw readings into values.
+ *
+ * This never changes once made; when a constant changes, the Drone gets a new DroneCalibration.
+ * Every RawSample keeps the DroneCalibration it was measured with, so old data can be recomputed
+ * later with a different one (see RawSampleProcessor).
+ */
+public class DroneCalibration implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The precision gas sensor's baseline (an ADC value)
+     */
+    public final float precisionGasBaseline;
+    /**
+     * The precision gas sensor's sensitivity (nA/ppm)
+     */
+    public final float precisionGasSensitivity;
+    /**
+     * The IR thermometer's calibration factor (s0)
+     */
+    public final double irCalibrationFactor;
+    /**
+     * Identifies this set of constants. It is worked out from the constants themselves,
+     * so the same constants always have the same version (even between connections and restarts).
+     */
+    public final int version;
+
+    /**
+     * Our default Constructor
+     * @param precisionGasBaseline
+     * @param precisionGasSensitivity
+     * @param irCalibrationFactor
+     */
+    public DroneCalibration(float precisionGasBaseline, float precisionGasSensitivity, double irCalibrationFactor) {
+        this.precisionGasBaseline = precisionGasBaseline;
+        this.precisionGasSensitivity = precisionGasSensitivity;
+        this.irCalibrationFactor = irCalibrationFactor;
+
+        long irBits = Double.doubleToLongBits(irCalibrationFactor);
+        int hash = 17;
+        hash = 31 * hash + Float.floatToIntBits(precisionGasBaseline);
+        hash = 31 * hash + Float.floatToIntBits(precisionGasSensitivity);
+        hash = 31 * hash + (int) (irBits ^ (irBits >>> 32));
+        version = hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof DroneCalibration)) {
+            return false;
+        }
+        DroneCalibration other = (DroneCalibration) o;
+        return Float.floatToIntBits(precisionGasBaseline) == Float.floatToIntBits(other.precisionGasBaseline)
+                && Float.floatToIntBits(precisionGasSensitivity) == Float.floatToIntBits(other.precisionGasSensitivity)
+                && Double.doubleToLongBits(irCalibrationFactor) == Double.doubleToLongBits(other.irCalibrationFactor);
+    }
+
+    @Override
+    public int hashCode() {
+        return version;
+    }
+
+}
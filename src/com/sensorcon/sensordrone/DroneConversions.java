@@ -0,0 +1,97 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+
+/**
+ * The math used to turn sensor readings into the "expensive" values (altitude, color temperature,
+ * IR object temperature).
+ *
+ * There are two versions:
+ *
+ * EXACT is the math the library has always used (Math.pow, etc...).
+ *
+ * FAST uses a precomputed table and polynomial evaluation instead. Its results differ from EXACT by at most:
+ * <ul>
+ *     <li>altitude: 0.007 meters between 20000 and 112000 Pascals (EXACT is used outside of that)</li>
+ *     <li>color temperature: rounding only (about 1e-12 relative)</li>
+ *     <li>IR temperature: none (the fourth root is two hardware square roots in both)</li>
+ * </ul>
+ * These are well below what the sensors can resolve, so FAST is a good choice when reprocessing a lot of
+ * archived data.
+ *
+ * Both are stateless and can be shared by any number of Drones and threads.
+ *
+ * @see CoreDrone#setConversions(DroneConversions)
+ */
+public class DroneConversions {
+
+    /**
+     * The library's original math.
+     */
+    public static final DroneConversions EXACT = new DroneConversions();
+
+    /**
+     * Table/polynomial based math, with the error bounds listed above.
+     */
+    public static final DroneConversions FAST = new TableConversions();
+
+    // Standard atmosphere constants used for altitude
+    static final double SEA_LEVEL_PASCALS = 101326.0;
+    static final double ALTITUDE_EXPONENT = 0.1902632;
+    static final double ALTITUDE_SCALE = 44330.77;
+
+    /**
+     * Only EXACT and FAST exist
+     */
+    DroneConversions() {
+    }
+
+    /**
+     * Convert a pressure to an altitude
+     * @param pascals Pressure in Pascals
+     * @return Altitude in meters
+     */
+    public double altitudeMeters(double pascals) {
+        double pRatio = pascals / SEA_LEVEL_PASCALS;
+        return (1 - Math.pow(pRatio, ALTITUDE_EXPONENT)) * ALTITUDE_SCALE;
+    }
+
+    /**
+     * Convert CIE chromaticity coordinates to a correlated color temperature (McCamy's approximation)
+     * @param x
+     * @param y
+     * @return Color temperature in Kelvin
+     */
+    public double colorTemperature(double x, double y) {
+        double n = (x - 0.3320) / (0.1858 - y);
+        return 449.0 * Math.pow(n, 3) +
+                3525.0 * Math.pow(n, 2) +
+                6823.3 * n +
+                5520.33;
+    }
+
+    /**
+     * The IR thermometer's object temperature is the fourth root of
+     * (T_DIE^4 + f(V_Obj) / S)
+     * @param value
+     * @return Temperature in Kelvin
+     */
+    public double irTemperature(double value) {
+        return Math.sqrt(Math.sqrt(value));
+    }
+
+}
@@ -0,0 +1,362 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs many Sensordrones at once.
+ *
+ * <ul>
+ *     <li>Connecting (and reconnecting) is done in parallel, but only so many at a time (Bluetooth
+ *     stacks don't like dozens of connects at once).</li>
+ *     <li>All of the Drones share one small scheduler for sampling schedules and for timing reconnects
+ *     (each Drone gets a DroneSupervisor), instead of a thread (or two) each. The reconnects themselves
+ *     run with the connects, so a Sensordrone that's out of range doesn't hold up everyone's sampling.</li>
+ *     <li>A Drone failing to connect (even with an exception) or losing its connection doesn't
+ *     affect the others.</li>
+ *     <li>Every measurement from every Drone goes into one stream of FleetReadings (see take() and poll()).
+ *     If nobody reads the stream, the oldest readings are dropped.</li>
+ * </ul>
+ */
+public class DroneFleet {
+
+    /**
+     * A Drone in the fleet, and the things we keep for it
+     */
+    private class Member implements DroneEventHandler {
+        final CoreDrone drone;
+        final String MAC;
+        final DroneSupervisor supervisor;
+
+        Member(CoreDrone drone, String MAC) {
+            this.drone = drone;
+            this.MAC = MAC;
+            this.supervisor = new DroneSupervisor(drone, scheduler, connectService);
+        }
+
+        @Override
+        public void parseEvent(DroneEventObject event) {
+            int qsType = CoreDrone.quickType(event);
+            if (qsType < 0) {
+                return;
+            }
+            // This runs on the Drone's communication thread; never let it throw back into it.
+            try {
+                RawSample sample = drone.getRawSample(qsType);
+                if (sample == null) {
+                    return;
+                }
+                float value = RawSampleProcessor.convert(sample, null, drone.getConversions());
+                offer(new FleetReading(MAC, qsType, sample.timestamp, value));
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+            }
+        }
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService connectService;
+    private final Map<String, Member> members = new LinkedHashMap<String, Member>();
+    private final BlockingQueue<FleetReading> readings;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Our default Constructor
+     * @param maxConcurrentConnects How many Drones may be connecting (or reconnecting) at the same time
+     * @param schedulerThreads How many threads to share between all of the Drones for sampling
+     * @param readingCapacity How many readings to keep for take()/poll() before dropping the oldest
+     */
+    public DroneFleet(int maxConcurrentConnects, int schedulerThreads, int readingCapacity) {
+        this(maxConcurrentConnects, schedulerThreads, readingCapacity, null);
+    }
+
+    /**
+     * A fleet whose connects run on threads from a ThreadFactory (e.g. JThreads.virtualThreadFactory();
+     * a connect spends most of its time blocked on Bluetooth).
+     * @param maxConcurrentConnects How many Drones may be connecting (or reconnecting) at the same time
+     * @param schedulerThreads How many threads to share between all of the Drones for sampling
+     * @param readingCapacity How many readings to keep for take()/poll() before dropping the oldest
+     * @param connectThreadFactory The ThreadFactory for connects, or null for the default
+     */
+    public DroneFleet(int maxConcurrentConnects, int schedulerThreads, int readingCapacity,
+                      ThreadFactory connectThreadFactory) {
+        if (connectThreadFactory == null) {
+            connectService = Executors.newFixedThreadPool(Math.max(1, maxConcurrentConnects));
+        } else {
+            connectService = Executors.newFixedThreadPool(Math.max(1, maxConcurrentConnects), connectThreadFactory);
+        }
+        scheduler = Executors.newScheduledThreadPool(Math.max(1, schedulerThreads));
+        readings = new ArrayBlockingQueue<FleetReading>(Math.max(1, readingCapacity));
+    }
+
+    /**
+     * A fleet that connects 4 at a time, with 2 scheduler threads, keeping up to 10000 readings
+     */
+    public DroneFleet() {
+        this(4, 2, 10000);
+    }
+
+    /**
+     * Add a Drone to the fleet. It isn't connected until connect() or connectAll() is called.
+     * @param drone
+     * @param MAC The MAC address of the Sensordrone to connect it to
+     * @return false if a Drone with that MAC is already in the fleet
+     */
+    public synchronized boolean add(CoreDrone drone, String MAC) {
+        if (members.containsKey(MAC)) {
+            return false;
+        }
+        Member member = new Member(drone, MAC);
+        members.put(MAC, member);
+        drone.registerDroneListener(member);
+        return true;
+    }
+
+    /**
+     * Disconnect a Drone and take it out of the fleet
+     * @param MAC
+     * @return false if it wasn't in the fleet
+     */
+    public boolean remove(String MAC) {
+        Member member;
+        synchronized (this) {
+            member = members.remove(MAC);
+        }
+        if (member == null) {
+            return false;
+        }
+        member.supervisor.stop();
+        member.drone.unregisterDroneListener(member);
+        if (member.drone.isConnected) {
+            member.drone.disconnect();
+        }
+        return true;
+    }
+
+    /**
+     * Get a Drone in the fleet
+     * @param MAC
+     * @return The Drone, or null if it isn't in the fleet
+     */
+    public synchronized CoreDrone getDrone(String MAC) {
+        Member member = members.get(MAC);
+        return member == null ? null : member.drone;
+    }
+
+    /**
+     * The MAC addresses of all of the Drones in the fleet
+     * @return
+     */
+    public synchronized List<String> getMACs() {
+        return new ArrayList<String>(members.keySet());
+    }
+
+    /**
+     * Start connecting one Drone (in the background)
+     * @param MAC
+     * @return A Future for the result of btConnect, or null if it isn't in the fleet
+     */
+    public Future<Boolean> connect(String MAC) {
+        final Member member;
+        synchronized (this) {
+            member = members.get(MAC);
+        }
+        if (member == null) {
+            return null;
+        }
+        Callable<Boolean> connectCallable = new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                boolean connected;
+                try {
+                    connected = member.drone.isConnected || member.drone.btConnect(member.MAC);
+                } catch (RuntimeException e) {
+                    // One bad Drone (or Bluetooth stack hiccup) shouldn't stop the rest
+                    failures.incrementAndGet();
+                    connected = false;
+                }
+                if (connected) {
+                    member.supervisor.start();
+                }
+                return connected;
+            }
+        };
+        try {
+            return connectService.submit(connectCallable);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Connect every Drone in the fleet that isn't connected, and wait for them.
+     * @param timeout How long to wait for all of them
+     * @param unit
+     * @return How many are connected
+     * @throws InterruptedException
+     */
+    public int connectAll(long timeout, TimeUnit unit) throws InterruptedException {
+        List<Future<Boolean>> pending = new ArrayList<Future<Boolean>>();
+        for (String MAC : getMACs()) {
+            Future<Boolean> future = connect(MAC);
+            if (future != null) {
+                pending.add(future);
+            }
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Future<Boolean> future : pending) {
+            try {
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                failures.incrementAndGet();
+            } catch (TimeoutException e) {
+                // Leave it connecting in the background
+            }
+        }
+        return getConnectedCount();
+    }
+
+    /**
+     * How many Drones in the fleet are connected right now
+     * @return
+     */
+    public synchronized int getConnectedCount() {
+        int count = 0;
+        for (Member member : members.values()) {
+            if (member.drone.isConnected) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Enable a sensor on every connected Drone
+     * @param QS_TYPE
+     */
+    public synchronized void enableAll(int QS_TYPE) {
+        for (Member member : members.values()) {
+            member.drone.quickEnable(QS_TYPE);
+        }
+    }
+
+    /**
+     * Measure a sensor on every Drone at a fixed rate (using the shared scheduler).
+     * The schedules keep going through reconnects.
+     * @param QS_TYPE
+     * @param periodMillis
+     */
+    public synchronized void scheduleAll(int QS_TYPE, long periodMillis) {
+        for (Member member : members.values()) {
+            member.supervisor.schedule(QS_TYPE, periodMillis);
+        }
+    }
+
+    /**
+     * Stop measuring a sensor on a schedule
+     * @param QS_TYPE
+     */
+    public synchronized void unscheduleAll(int QS_TYPE) {
+        for (Member member : members.values()) {
+            member.supervisor.unschedule(QS_TYPE);
+        }
+    }
+
+    private void offer(FleetReading reading) {
+        // Drop the oldest readings to make room
+        while (!readings.offer(reading)) {
+            if (readings.poll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Get the next reading from any Drone, waiting for one if needed
+     * @return
+     * @throws InterruptedException
+     */
+    public FleetReading take() throws InterruptedException {
+        return readings.take();
+    }
+
+    /**
+     * Get the next reading from any Drone, waiting up to the timeout
+     * @param timeout
+     * @param unit
+     * @return The reading, or null if there wasn't one in time
+     * @throws InterruptedException
+     */
+    public FleetReading poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return readings.poll(timeout, unit);
+    }
+
+    /**
+     * Move up to max readings into a list, without waiting
+     * @param into
+     * @param max
+     * @return How many were moved
+     */
+    public int drainTo(List<FleetReading> into, int max) {
+        return readings.drainTo(into, max);
+    }
+
+    /**
+     * How many readings were dropped because nobody took them in time
+     * @return
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * How many connects or listener calls failed with an exception
+     * @return
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Disconnect every Drone and stop the fleet's threads
+     */
+    public void shutdown() {
+        for (String MAC : getMACs()) {
+            remove(MAC);
+        }
+        connectService.shutdown();
+        scheduler.shutdown();
+    }
+
+}
@@ -0,0 +1,353 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counters and latency histograms for one Drone's link to its Sensordrone.
+ *
+ * Everything is kept per command byte (the third byte of a call, e.g. 0x10), and per sensor
+ * (the TAG of the DroneSensor making the call). Error responses (0x99) are counted by error code.
+ *
+ * Every call is timed at four points: when its task was queued on the commService, when the write
+ * started, when the write was done, and when the response was read. From those each command byte gets
+ * a queue wait, a write time, and a service time (write start to response) histogram;
+ * getLatencyBreakdown() sums them up.
+ *
+ * Recording is lock free and doesn't allocate (a command's histogram is made the first time the
+ * command is used), so the metrics are always on. Get them with CoreDrone.getMetrics();
+ * the java package can serve them over HTTP (MetricsServer) and JMX (DroneMetricsJMX).
+ */
+public class DroneMetrics {
+
+    /**
+     * Error codes sent back by the Sensordrone in an 0x99 response
+     */
+    public static final int ERROR_GENERIC = 0x00;
+    public static final int ERROR_COMMAND_NOT_RECOGNIZED = 0x01;
+    public static final int ERROR_LOW_BATTERY = 0x02;
+    public static final int ERROR_I2C_TIMEOUT = 0x03;
+
+    /**
+     * The most sensors we keep separate counts for (there are only about a dozen)
+     */
+    public static final int MAX_SENSORS = 32;
+
+    private final CoreDrone myDrone;
+
+    private final AtomicLongArray commandCalls = new AtomicLongArray(256);
+    private final AtomicLongArray commandFailures = new AtomicLongArray(256);
+    private final AtomicReferenceArray<LatencyHistogram> commandLatency =
+            new AtomicReferenceArray<LatencyHistogram>(256);
+    private final AtomicReferenceArray<LatencyHistogram> commandQueueWait =
+            new AtomicReferenceArray<LatencyHistogram>(256);
+    private final AtomicReferenceArray<LatencyHistogram> commandWriteTime =
+            new AtomicReferenceArray<LatencyHistogram>(256);
+
+    // The commService task being run (set and read on the comm thread), and when it was queued.
+    // The first call the task makes gets its queue wait.
+    private volatile Thread taskThread;
+    private long taskEnqueued;
+
+    private final String[] sensorNames = new String[MAX_SENSORS];
+    private volatile int sensorCount = 0;
+    private final AtomicLongArray sensorCalls = new AtomicLongArray(MAX_SENSORS);
+    private final AtomicLongArray sensorFailures = new AtomicLongArray(MAX_SENSORS);
+    private final AtomicReferenceArray<LatencyHistogram> sensorLatency =
+            new AtomicReferenceArray<LatencyHistogram>(MAX_SENSORS);
+
+    private final AtomicLongArray errors = new AtomicLongArray(256);
+    private final AtomicLongArray measurements = new AtomicLongArray(CoreDrone.QS_TYPE_ADC + 1);
+    private final AtomicLongArray suppressed = new AtomicLongArray(CoreDrone.QS_TYPE_ADC + 1);
+    private final AtomicLong ioErrors = new AtomicLong();
+    private final AtomicLong connectionsLost = new AtomicLong();
+
+    DroneMetrics(CoreDrone drone) {
+        myDrone = drone;
+    }
+
+    /**
+     * Used by DroneSensor to get its slot in the per sensor metrics.
+     * Sensors are made again on every connect, so the same name always gets the same slot.
+     * @param name
+     * @return The slot, or -1 if there are too many sensors
+     */
+    synchronized int sensorIndex(String name) {
+        if (name == null) {
+            name = "unknown";
+        }
+        for (int i = 0; i < sensorCount; i++) {
+            if (sensorNames[i].equals(name)) {
+                return i;
+            }
+        }
+        if (sensorCount == MAX_SENSORS) {
+            return -1;
+        }
+        sensorNames[sensorCount] = name;
+        sensorLatency.set(sensorCount, new LatencyHistogram());
+        sensorCount++;
+        return sensorCount - 1;
+    }
+
+    /**
+     * Used by CommExecutor when a task starts running
+     * @param enqueued When the task was queued (System.nanoTime())
+     */
+    void taskStarted(long enqueued) {
+        taskEnqueued = enqueued;
+        taskThread = Thread.currentThread();
+    }
+
+    /**
+     * Used by CommExecutor when a task is done
+     */
+    void taskFinished() {
+        taskThread = null;
+    }
+
+    /**
+     * Used by DroneSensor after every call and response. Times are from System.nanoTime().
+     * @param command The command byte
+     * @param sensor The sensor's slot (or -1)
+     * @param writeStart
+     * @param writeDone
+     * @param responded When the response was read (or given up on)
+     * @param ok false if there was no (good) response
+     */
+    void recordCall(int command, int sensor, long writeStart, long writeDone, long responded, boolean ok) {
+        command &= 0xff;
+        long service = responded - writeStart;
+        commandCalls.incrementAndGet(command);
+        histogram(commandLatency, command).recordNanos(service);
+        histogram(commandWriteTime, command).recordNanos(writeDone - writeStart);
+        if (taskThread == Thread.currentThread()) {
+            taskThread = null;
+            histogram(commandQueueWait, command).recordNanos(writeStart - taskEnqueued);
+        }
+        if (!ok) {
+            commandFailures.incrementAndGet(command);
+        }
+        if (sensor >= 0) {
+            sensorCalls.incrementAndGet(sensor);
+            sensorLatency.get(sensor).recordNanos(service);
+            if (!ok) {
+                sensorFailures.incrementAndGet(sensor);
+            }
+        }
+    }
+
+    /**
+     * Get a command's histogram, making it the first time
+     * @param histograms
+     * @param command
+     * @return
+     */
+    private static LatencyHistogram histogram(AtomicReferenceArray<LatencyHistogram> histograms, int command) {
+        LatencyHistogram histogram = histograms.get(command);
+        if (histogram == null) {
+            histograms.compareAndSet(command, null, new LatencyHistogram());
+            histogram = histograms.get(command);
+        }
+        return histogram;
+    }
+
+    void recordError(int code) {
+        errors.incrementAndGet(code & 0xff);
+    }
+
+    void recordIOError() {
+        ioErrors.incrementAndGet();
+    }
+
+    void recordConnectionLost() {
+        connectionsLost.incrementAndGet();
+    }
+
+    void recordMeasurement(int QS_TYPE) {
+        measurements.incrementAndGet(QS_TYPE);
+    }
+
+    void recordSuppressed(int QS_TYPE) {
+        suppressed.incrementAndGet(QS_TYPE);
+    }
+
+    /**
+     * How many times a command has been sent
+     * @param command The command byte (e.g. 0x10)
+     * @return
+     */
+    public long getCommandCount(int command) {
+        return commandCalls.get(command & 0xff);
+    }
+
+    /**
+     * How many times a command got an error (or no) response
+     * @param command The command byte
+     * @return
+     */
+    public long getCommandFailureCount(int command) {
+        return commandFailures.get(command & 0xff);
+    }
+
+    /**
+     * The service times of a command (write start to response read)
+     * @param command The command byte
+     * @return The histogram, or null if the command hasn't been sent
+     */
+    public LatencyHistogram getCommandLatency(int command) {
+        return commandLatency.get(command & 0xff);
+    }
+
+    /**
+     * How long tasks waited in the commService queue before sending a command
+     * (only counted for the first call of each task)
+     * @param command The command byte
+     * @return The histogram, or null if no task has started with the command
+     */
+    public LatencyHistogram getCommandQueueWait(int command) {
+        return commandQueueWait.get(command & 0xff);
+    }
+
+    /**
+     * How long writing a command took (write start to write done)
+     * @param command The command byte
+     * @return The histogram, or null if the command hasn't been sent
+     */
+    public LatencyHistogram getCommandWriteTime(int command) {
+        return commandWriteTime.get(command & 0xff);
+    }
+
+    /**
+     * The p50/p99/p999 queue wait and service time of a command
+     * @param command The command byte
+     * @return
+     */
+    public LatencyBreakdown getLatencyBreakdown(int command) {
+        return new LatencyBreakdown(command & 0xff, getCommandLatency(command), getCommandQueueWait(command));
+    }
+
+    /**
+     * How many sensors have metrics
+     * @return
+     */
+    public int getSensorCount() {
+        return sensorCount;
+    }
+
+    /**
+     * The name (TAG) of a sensor
+     * @param sensor 0 - getSensorCount()-1
+     * @return
+     */
+    public synchronized String getSensorName(int sensor) {
+        return sensorNames[sensor];
+    }
+
+    /**
+     * How many calls a sensor has made
+     * @param sensor 0 - getSensorCount()-1
+     * @return
+     */
+    public long getSensorCallCount(int sensor) {
+        return sensorCalls.get(sensor);
+    }
+
+    /**
+     * How many of a sensor's calls got an error (or no) response
+     * @param sensor 0 - getSensorCount()-1
+     * @return
+     */
+    public long getSensorFailureCount(int sensor) {
+        return sensorFailures.get(sensor);
+    }
+
+    /**
+     * The round trip times of a sensor's calls
+     * @param sensor 0 - getSensorCount()-1
+     * @return
+     */
+    public LatencyHistogram getSensorLatency(int sensor) {
+        return sensorLatency.get(sensor);
+    }
+
+    /**
+     * How many error responses had a given code
+     * @param code e.g. ERROR_I2C_TIMEOUT
+     * @return
+     */
+    public long getErrorCount(int code) {
+        return errors.get(code & 0xff);
+    }
+
+    /**
+     * How many measurements of a quickSystem type have been made
+     * @param QS_TYPE
+     * @return
+     */
+    public long getMeasurementCount(int QS_TYPE) {
+        return measurements.get(QS_TYPE);
+    }
+
+    /**
+     * How many measurements of a quickSystem type the listeners weren't told about (see CoreDrone.setDeadband())
+     * @param QS_TYPE
+     * @return
+     */
+    public long getSuppressedCount(int QS_TYPE) {
+        return suppressed.get(QS_TYPE);
+    }
+
+    /**
+     * How many reads or writes failed with an IOException
+     * @return
+     */
+    public long getIOErrorCount() {
+        return ioErrors.get();
+    }
+
+    /**
+     * How many times the connection was lost
+     * @return
+     */
+    public long getConnectionLostCount() {
+        return connectionsLost.get();
+    }
+
+    /**
+     * How many commands are waiting to be run on the commService
+     * @return
+     */
+    public int getQueueDepth() {
+        if (myDrone.commService instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) myDrone.commService).getQueue().size();
+        }
+        return 0;
+    }
+
+    /**
+     * Check if the Drone is connected
+     * @return
+     */
+    public boolean isConnected() {
+        return myDrone.isConnected;
+    }
+
+}
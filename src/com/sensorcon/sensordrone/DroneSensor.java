@@ -48,6 +48,8 @@ public abstract class DroneSensor {
     protected Logger logger;
     protected CoreDrone myDrone;
     protected String TAG;
+    // Our slot in the per sensor metrics
+    private final int metricsSensor;
 
     /**
      * Our default Constructor
@@ -56,6 +58,7 @@ public abstract class DroneSensor {
     public DroneSensor(CoreDrone drone) {
         myDrone = drone;
         logger = myDrone.logger;
+        metricsSensor = myDrone.metrics.sensorIndex(null);
     }
 
     /**
@@ -67,6 +70,7 @@ public abstract class DroneSensor {
         myDrone = drone;
         logger = myDrone.logger;
         TAG = tag;
+        metricsSensor = myDrone.metrics.sensorIndex(tag);
     }
 
     /**
@@ -78,19 +82,84 @@ public abstract class DroneSensor {
 
         // Don't do anything if the CoreDrone's commService is shut down!
         if (myDrone.commService.isShutdown()) {
-            logger.debugLogger(TAG, "commService is down. Aborting call...", CoreDrone.DEBUG);
+            logger.debug(TAG, "commService is down. Aborting call...");
             return null;
         }
         byte[] response;
+        long writeStart = System.nanoTime();
         sdWrite(call);
+        long writeDone = System.nanoTime();
 
         response = sdRead();
+        recordCall(call, writeStart, writeDone, response);
 
         // Will pass null if bad response
         return response;
 
     }
 
+    /**
+     * A method to send several data packets to the Sensordrone back-to-back, and then read all of
+     * the responding data packets.
+     *
+     * The Sensordrone answers every packet in the order it was received, so writing all of the calls
+     * before reading saves a full round trip per extra call compared to calling sdCallAndResponse
+     * in a row.
+     * @param calls
+     * @return An array holding one response per call (an entry will be null if that call failed),
+     * or null if the calls could not be made.
+     */
+    public byte[][] sdPipelinedCallAndResponse(byte[][] calls) {
+
+        // Don't do anything if the CoreDrone's commService is shut down!
+        if (myDrone.commService.isShutdown()) {
+            logger.debug(TAG, "commService is down. Aborting call...");
+            return null;
+        }
+
+        // Send everything first
+        long[] writeStart = new long[calls.length];
+        long[] writeDone = new long[calls.length];
+        for (int i = 0; i < calls.length; i++) {
+            writeStart[i] = System.nanoTime();
+            sdWrite(calls[i]);
+            writeDone[i] = System.nanoTime();
+        }
+        // A failed write will have shut things down
+        if (myDrone.commService.isShutdown()) {
+            return null;
+        }
+
+        // Now collect the responses; every one must be read to keep the stream in sync
+        byte[][] responses = new byte[calls.length][];
+        for (int i = 0; i < calls.length; i++) {
+            responses[i] = sdRead();
+            recordCall(calls[i], writeStart[i], writeDone[i], responses[i]);
+        }
+        return responses;
+    }
+
+    /**
+     * Count and time a call (by its command byte, and by us) in the Drone's metrics,
+     * and tell the DroneTracer (if any). The response has just been read.
+     * @param call
+     * @param writeStart
+     * @param writeDone
+     * @param response
+     */
+    private void recordCall(byte[] call, long writeStart, long writeDone, byte[] response) {
+        if (call.length <= 2) {
+            return;
+        }
+        long responded = System.nanoTime();
+        myDrone.metrics.recordCall(call[2], metricsSensor, writeStart, writeDone, responded, response != null);
+        DroneTracer trace = CoreDrone.tracer;
+        if (trace != null) {
+            trace.commandCompleted(myDrone, call[2] & 0xff, TAG, call.length, response == null ? 0 : response.length,
+                    writeStart, responded, response != null);
+        }
+    }
+
     /**
      * A method to write a data packet to the Sensordrone without automatically reading back a response
      * @param call
@@ -100,21 +169,23 @@ public abstract class DroneSensor {
 
         // Don't do anything if the CoreDrone's commService is shut down!
         if (myDrone.commService.isShutdown()) {
-            logger.debugLogger(TAG, "commService is down. Aborting call...", CoreDrone.DEBUG);
+            logger.debug(TAG, "commService is down. Aborting call...");
             return;
         }
 
         // Make the Call
         try {
-            logger.debugLogger(TAG, "Making the call", CoreDrone.DEBUG);
+            logger.debug(TAG, "Making the call");
+            myDrone.flightRecorder.record(FlightRecorder.TX, call);
             myDrone.oStream.write(call);
             myDrone.oStream.flush();
-            logger.txLogger(TAG, call, CoreDrone.DEBUG);
+            logger.tx(TAG, call);
 
         } catch (IOException e) {
             // If an IOException is thrown, it's safe to assume
             // there was an disconnect. Try to disconnect gracefully
-            logger.debugLogger(TAG, "Communication lost... disconnecting", CoreDrone.DEBUG);
+            logger.debug(TAG, "Communication lost... disconnecting");
+            myDrone.metrics.recordIOError();
             connectionLost();
         }
 
@@ -128,7 +199,7 @@ public abstract class DroneSensor {
 
         // Don't do anything if the CoreDrone's commService is shut down!
         if (myDrone.commService.isShutdown()) {
-            logger.debugLogger(TAG, "commSerive is down. Aborting call...", CoreDrone.DEBUG);
+            logger.debug(TAG, "commSerive is down. Aborting call...");
             return null;
         }
 
@@ -136,13 +207,14 @@ public abstract class DroneSensor {
         int headerLength = 2;
         byte[] header = new byte[headerLength];
         try {
-            logger.debugLogger(TAG, "Reading the first two bytes", CoreDrone.DEBUG);
+            logger.debug(TAG, "Reading the first two bytes");
             myDrone.iStream.read(header, 0, headerLength);
-            logger.rxLogger(TAG, header, CoreDrone.DEBUG);
+            logger.rx(TAG, header);
         } catch (IOException e) {
             // If an IOException is thrown, it's safe to assume
             // there was an disconnect. Try to disconnect gracefully
-            logger.debugLogger(TAG, "Communication lost... disconnecting", CoreDrone.DEBUG);
+            logger.debug(TAG, "Communication lost... disconnecting");
+            myDrone.metrics.recordIOError();
             connectionLost();
             return null;
         }
@@ -153,13 +225,15 @@ public abstract class DroneSensor {
         if (headerLength > 0) {
             byte[] data = new byte[dataLength];
             try {
-                logger.debugLogger(TAG, "Reading the rest of the data", CoreDrone.DEBUG);
+                logger.debug(TAG, "Reading the rest of the data");
                 myDrone.iStream.read(data, 0, dataLength);
-                logger.rxLogger(TAG, data, CoreDrone.DEBUG);
+                myDrone.flightRecorder.record(FlightRecorder.RX, header, headerLength, data, dataLength);
+                logger.rx(TAG, data);
             } catch (IOException e) {
                 // If an IOException is thrown, it's safe to assume
                 // there was an disconnect. Try to disconnect gracefully
-                logger.debugLogger(TAG, "Communication lost... disconnecting", CoreDrone.DEBUG);
+                logger.debug(TAG, "Communication lost... disconnecting");
+                myDrone.metrics.recordIOError();
                 connectionLost();
                 return null;
             }
@@ -169,23 +243,28 @@ public abstract class DroneSensor {
             if (commandType == (byte) 0x99) {
                 // It's an error.
                 byte errorCode = data[1];
+                // None of these errors are show-stoppers; count them, and fail the call with a null
+                myDrone.metrics.recordError(errorCode);
                 // Handle different Error
                 if (errorCode == ERROR_GENERIC) {
+                    logger.debug(TAG, "Error response: generic error");
                     return null;
                 } else if (errorCode == ERROR_COMAND_NOT_RECOGNIZED) {
+                    logger.debug(TAG, "Error response: command not recognized");
                     return null;
                 } else if (errorCode == ERROR_LOW_BATTERY) {
+                    logger.debug(TAG, "Error response: low battery");
                     // Notify that there is a low battery condition
                     myDrone.notifyDroneStatusListener(dsLowBattery);
                     return null;
                 } else if (errorCode == ERROR_I2C_TIMEOUT) {
+                    logger.debug(TAG, "Error response: I2C timeout");
                     return null;
                 } else {
+                    logger.debug(TAG, "Error response: unknown error ", errorCode);
                     return null;
                 }
             }
-            // So far we just return null / fail silently; none of these errors are show-stoppers.
-            // Some logging would be a good thing to add here.
 
 
             // If we've made it this far, there is no error
@@ -211,9 +290,7 @@ public abstract class DroneSensor {
      * @return
      */
     public int bytes2int(byte MSB, byte LSB) {
-        int intMSB = 0x000000ff & ((int) MSB);
-        int intLSB = 0x000000ff & ((int) LSB);
-        return ((intMSB << 8) + intLSB);
+        return RegisterCodec.uint16(MSB, LSB);
     }
 
     /**
@@ -241,6 +318,9 @@ public abstract class DroneSensor {
     void connectionLost() {
 
 
+        myDrone.metrics.recordConnectionLost();
+        myDrone.flightRecorder.connectionLost(myDrone);
+
         // Stop the communications queue.
         myDrone.commService.shutdownNow();
 
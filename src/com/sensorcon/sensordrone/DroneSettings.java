@@ -0,0 +1,53 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+/**
+ * What a Sensordrone was set up to do when its connection was lost, so it can be set up
+ * the same way again after reconnecting (see CoreDrone.captureSettings()).
+ */
+class DroneSettings {
+
+    /**
+     * The enabled/disabled status of each quickSystem type
+     */
+    final boolean[] enabled = new boolean[CoreDrone.QS_TYPE_ADC + 1];
+    /**
+     * The LED colors (see LEDS_V1.getColors())
+     */
+    int[] ledColors;
+    /**
+     * The UART baud rate (0 if never set)
+     */
+    int baudRate;
+    /**
+     * The IR thermometer averaging setting
+     */
+    int irAveraging;
+    /**
+     * The RGBC integration time setting
+     */
+    int rgbcIntegration;
+    /**
+     * The RGBC gain setting
+     */
+    int rgbcGain;
+    /**
+     * RGBC auto-ranging
+     */
+    boolean rgbcAutoRange;
+
+}
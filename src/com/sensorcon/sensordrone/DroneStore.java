@@ -0,0 +1,97 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+
+/**
+ * This is an abstract class that is implemented in android/java/whatever to keep small
+ * bits of information about a particular Sensordrone (keyed by its MAC address) between sessions.
+ *
+ * It is platform specific; e.g. a properties file for Java, or SharedPreferences for Android.
+ *
+ * Values are stored as Strings. If a Drone has no DroneStore set, nothing is remembered.
+ */
+public abstract class DroneStore {
+
+    /**
+     * Get a stored value
+     * @param MAC The MAC address of the Sensordrone
+     * @param key
+     * @return The stored value, or null if there isn't one.
+     */
+    abstract public String get(String MAC, String key);
+
+    /**
+     * Store a value
+     * @param MAC The MAC address of the Sensordrone
+     * @param key
+     * @param value
+     */
+    abstract public void put(String MAC, String key, String value);
+
+    /**
+     * Remove a stored value
+     * @param MAC The MAC address of the Sensordrone
+     * @param key
+     */
+    abstract public void remove(String MAC, String key);
+
+    /**
+     * Store (or remove) several values at once. Override this if a store can save them in one write.
+     * @param MAC The MAC address of the Sensordrone
+     * @param keys
+     * @param values The values, in the same order as the keys (null to remove that key)
+     */
+    public void putAll(String MAC, String[] keys, String[] values) {
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] == null) {
+                remove(MAC, keys[i]);
+            } else {
+                put(MAC, keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * A helper to read a stored double
+     * @param MAC
+     * @param key
+     * @param defaultValue Returned if nothing (or garbage) is stored
+     * @return
+     */
+    public double getDouble(String MAC, String key, double defaultValue) {
+        String value = get(MAC, key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * A helper to store a double
+     * @param MAC
+     * @param key
+     * @param value
+     */
+    public void putDouble(String MAC, String key, double value) {
+        put(MAC, key, Double.toString(value));
+    }
+
+}
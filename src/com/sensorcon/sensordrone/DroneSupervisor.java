@@ -0,0 +1,363 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps a Drone connected.
+ *
+ * When the connection is lost (CONNECTION_LOST), the supervisor tries to reconnect to the same
+ * Sensordrone, waiting a little longer after every failed attempt (exponential backoff).
+ * Once it's back, the Sensordrone is set up the way it was: the same sensors are enabled, and the
+ * LED colors, UART baud rate, IR averaging and RGBC settings are sent again.
+ *
+ * Sampling schedules (see schedule()) keep running through all of this; they just skip their
+ * measurements while there is no connection.
+ *
+ * A user called disconnect() doesn't trigger a reconnect.
+ */
+public class DroneSupervisor implements DroneEventHandler {
+
+    private static final String TAG = "DroneSupervisor";
+
+    private final CoreDrone myDrone;
+    private final ScheduledExecutorService scheduler;
+    // Only shut down the scheduler if we made it
+    private final boolean ownScheduler;
+    // Where reconnect attempts (which block in btConnect) run; null for the scheduler
+    private final Executor connectExecutor;
+
+    private long initialDelay = 500;
+    private long maxDelay = 30000;
+    private int maxAttempts = 0;
+
+    private volatile boolean running = false;
+    private final AtomicBoolean reconnecting = new AtomicBoolean(false);
+    private ScheduledFuture<?> pendingAttempt;
+    private final ScheduledFuture<?>[] schedules = new ScheduledFuture<?>[CoreDrone.QS_TYPE_ADC + 1];
+    // As asked for with schedule(), and while escalate()d (0 for none)
+    private final long[] periods = new long[CoreDrone.QS_TYPE_ADC + 1];
+    private final long[] escalatedPeriods = new long[CoreDrone.QS_TYPE_ADC + 1];
+
+    private volatile String MAC;
+    private DroneSettings settings;
+    private int attempt;
+    private volatile int reconnectCount = 0;
+
+    /**
+     * Supervise a Drone, using a scheduler thread of its own
+     * @param drone
+     */
+    public DroneSupervisor(CoreDrone drone) {
+        this(drone, Executors.newSingleThreadScheduledExecutor(), true, null);
+    }
+
+    /**
+     * Supervise a Drone, using a shared scheduler (e.g. one for many Drones).
+     * The scheduler is not shut down by stop().
+     * @param drone
+     * @param sharedScheduler
+     */
+    public DroneSupervisor(CoreDrone drone, ScheduledExecutorService sharedScheduler) {
+        this(drone, sharedScheduler, false, null);
+    }
+
+    /**
+     * Supervise a Drone, using a shared scheduler only for timing, and running the reconnect attempts
+     * on another Executor (e.g. a small pool that limits how many Drones connect at once).
+     * A reconnect blocks in btConnect() for as long as the Bluetooth stack takes, which would
+     * otherwise hold up every sampling schedule on the scheduler.
+     * Neither is shut down by stop().
+     * @param drone
+     * @param sharedScheduler
+     * @param connectExecutor
+     */
+    public DroneSupervisor(CoreDrone drone, ScheduledExecutorService sharedScheduler, Executor connectExecutor) {
+        this(drone, sharedScheduler, false, connectExecutor);
+    }
+
+    private DroneSupervisor(CoreDrone drone, ScheduledExecutorService scheduler, boolean ownScheduler,
+                            Executor connectExecutor) {
+        myDrone = drone;
+        this.scheduler = scheduler;
+        this.ownScheduler = ownScheduler;
+        this.connectExecutor = connectExecutor;
+    }
+
+    /**
+     * Set how long to wait before reconnecting. The wait doubles after every failed attempt,
+     * up to maxDelay.
+     * @param initialDelay Milliseconds before the first attempt (default 500)
+     * @param maxDelay The longest wait between attempts, in milliseconds (default 30000)
+     */
+    public void setBackoff(long initialDelay, long maxDelay) {
+        this.initialDelay = Math.max(0, initialDelay);
+        this.maxDelay = Math.max(this.initialDelay, maxDelay);
+    }
+
+    /**
+     * Set how many times to try reconnecting before giving up
+     * @param attempts The number of attempts, or 0 to keep trying forever (default)
+     */
+    public void setMaxAttempts(int attempts) {
+        maxAttempts = Math.max(0, attempts);
+    }
+
+    /**
+     * Start supervising. The Drone should already be connected (that's the Sensordrone we reconnect to).
+     * @return false if the Drone has never been connected
+     */
+    public synchronized boolean start() {
+        if (myDrone.lastMAC == null) {
+            return false;
+        }
+        if (!running) {
+            MAC = myDrone.lastMAC;
+            running = true;
+            myDrone.registerDroneListener(this);
+        }
+        return true;
+    }
+
+    /**
+     * Stop supervising. Any reconnect in progress and all sampling schedules are cancelled.
+     */
+    public synchronized void stop() {
+        running = false;
+        myDrone.unregisterDroneListener(this);
+        if (pendingAttempt != null) {
+            pendingAttempt.cancel(false);
+            pendingAttempt = null;
+        }
+        for (int i = 0; i < schedules.length; i++) {
+            unschedule(i);
+        }
+        reconnecting.set(false);
+        if (ownScheduler) {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Measure a sensor at a fixed rate. The schedule survives reconnects.
+     * @param QS_TYPE The quickSystem type of the sensor
+     * @param periodMillis Time between measurements, in milliseconds
+     * @return false if the measurement couldn't be scheduled
+     */
+    public synchronized boolean schedule(final int QS_TYPE, long periodMillis) {
+        if (QS_TYPE < 0 || QS_TYPE >= schedules.length || periodMillis <= 0) {
+            return false;
+        }
+        periods[QS_TYPE] = periodMillis;
+        return reschedule(QS_TYPE, 0);
+    }
+
+    /**
+     * Measure a sensor faster for now (e.g. while an alarm is raised, see AlarmEngine), until deescalate().
+     * If the sensor isn't on a schedule, it's measured at this rate until then.
+     * @param QS_TYPE The quickSystem type of the sensor
+     * @param periodMillis Time between measurements, in milliseconds (a slower one than schedule()'s is ignored)
+     * @return false if the measurement couldn't be scheduled
+     */
+    public synchronized boolean escalate(int QS_TYPE, long periodMillis) {
+        if (QS_TYPE < 0 || QS_TYPE >= schedules.length || periodMillis <= 0) {
+            return false;
+        }
+        escalatedPeriods[QS_TYPE] = periodMillis;
+        return reschedule(QS_TYPE, 0);
+    }
+
+    /**
+     * Go back to measuring a sensor at the schedule()'d rate (or not at all)
+     * @param QS_TYPE
+     */
+    public synchronized void deescalate(int QS_TYPE) {
+        if (QS_TYPE < 0 || QS_TYPE >= schedules.length || escalatedPeriods[QS_TYPE] == 0) {
+            return;
+        }
+        escalatedPeriods[QS_TYPE] = 0;
+        reschedule(QS_TYPE, periods[QS_TYPE]);
+    }
+
+    /**
+     * Start measuring a sensor at the fastest of its periods (or stop, if it has none)
+     */
+    private boolean reschedule(final int QS_TYPE, long initialDelay) {
+        cancel(QS_TYPE);
+        long periodMillis = periods[QS_TYPE];
+        if (escalatedPeriods[QS_TYPE] > 0 && (periodMillis == 0 || escalatedPeriods[QS_TYPE] < periodMillis)) {
+            periodMillis = escalatedPeriods[QS_TYPE];
+        }
+        if (periodMillis == 0) {
+            return true;
+        }
+        Runnable sampleRunnable = new Runnable() {
+            @Override
+            public void run() {
+                if (myDrone.isConnected) {
+                    myDrone.quickMeasure(QS_TYPE);
+                }
+            }
+        };
+        try {
+            schedules[QS_TYPE] = scheduler.scheduleAtFixedRate(sampleRunnable, initialDelay, periodMillis,
+                    TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stop measuring a sensor on a schedule
+     * @param QS_TYPE
+     */
+    public synchronized void unschedule(int QS_TYPE) {
+        if (QS_TYPE < 0 || QS_TYPE >= schedules.length) {
+            return;
+        }
+        periods[QS_TYPE] = 0;
+        escalatedPeriods[QS_TYPE] = 0;
+        cancel(QS_TYPE);
+    }
+
+    private void cancel(int QS_TYPE) {
+        if (schedules[QS_TYPE] != null) {
+            schedules[QS_TYPE].cancel(false);
+            schedules[QS_TYPE] = null;
+        }
+    }
+
+    /**
+     * Check if the supervisor is trying to reconnect right now
+     * @return
+     */
+    public boolean isReconnecting() {
+        return reconnecting.get();
+    }
+
+    /**
+     * How many times the supervisor has successfully reconnected
+     * @return
+     */
+    public int getReconnectCount() {
+        return reconnectCount;
+    }
+
+    @Override
+    public void parseEvent(DroneEventObject event) {
+        if (!running || !event.matches(DroneEventObject.droneEventType.CONNECTION_LOST)) {
+            return;
+        }
+        // A lost connection can be reported more than once (e.g. by a write and then a read)
+        if (!reconnecting.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (this) {
+            settings = myDrone.captureSettings();
+            attempt = 0;
+            scheduleAttempt(initialDelay);
+        }
+    }
+
+    /**
+     * Queue the next reconnect attempt
+     * @param delay
+     */
+    private void scheduleAttempt(long delay) {
+        final Runnable reconnectRunnable = new Runnable() {
+            @Override
+            public void run() {
+                tryReconnect();
+            }
+        };
+        Runnable timerRunnable = reconnectRunnable;
+        if (connectExecutor != null) {
+            timerRunnable = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        connectExecutor.execute(reconnectRunnable);
+                    } catch (RejectedExecutionException e) {
+                        synchronized (DroneSupervisor.this) {
+                            pendingAttempt = null;
+                            reconnecting.set(false);
+                        }
+                    }
+                }
+            };
+        }
+        try {
+            pendingAttempt = scheduler.schedule(timerRunnable, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            reconnecting.set(false);
+        }
+    }
+
+    /**
+     * Runs on the scheduler, or the connectExecutor if there is one
+     */
+    private void tryReconnect() {
+        if (!running) {
+            return;
+        }
+        // Someone else (e.g. the app) may have reconnected it already
+        boolean connected;
+        try {
+            connected = myDrone.isConnected || myDrone.btConnect(MAC);
+        } catch (RuntimeException e) {
+            // The Bluetooth stack can throw these; it's just a failed attempt
+            if (myDrone.logger != null) {
+                myDrone.logger.info(TAG, "Reconnect attempt failed: " + e);
+            }
+            connected = false;
+        }
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            if (connected) {
+                if (settings != null) {
+                    myDrone.restoreSettings(settings);
+                }
+                reconnectCount++;
+                pendingAttempt = null;
+                reconnecting.set(false);
+                return;
+            }
+            attempt++;
+            if (maxAttempts > 0 && attempt >= maxAttempts) {
+                pendingAttempt = null;
+                reconnecting.set(false);
+                return;
+            }
+            // initialDelay * 2^attempt, without overflowing
+            long delay = initialDelay;
+            for (int i = 0; i < attempt && delay < maxDelay; i++) {
+                delay = Math.max(1, delay) * 2;
+            }
+            scheduleAttempt(Math.min(delay, maxDelay));
+        }
+    }
+
+}
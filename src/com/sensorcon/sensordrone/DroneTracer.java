@@ -0,0 +1,60 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+/**
+ * Gets told about every command, connection change and listener call of every Drone in the process,
+ * for profilers and tracers (e.g. com.sensorcon.sensordrone.java.jfr.JFRTracer).
+ *
+ * Install one with CoreDrone.setTracer(). With no tracer installed, the only cost is a null check.
+ *
+ * The methods are called on the thread doing the work (usually a Drone's communication thread),
+ * so they must be quick and must not throw. Times are from System.nanoTime().
+ */
+public interface DroneTracer {
+
+    /**
+     * A call to the Sensordrone got its response (or failed)
+     * @param drone
+     * @param command The command byte
+     * @param sensor The TAG of the sensor that made the call
+     * @param bytesSent
+     * @param bytesReceived The size of the response data (0 if there was none)
+     * @param writeStart
+     * @param responded
+     * @param ok false if there was no (good) response
+     */
+    void commandCompleted(CoreDrone drone, int command, String sensor, int bytesSent, int bytesReceived,
+                          long writeStart, long responded, boolean ok);
+
+    /**
+     * A Drone connected, disconnected, or lost its connection
+     * @param drone
+     * @param state CONNECTED, DISCONNECTED or CONNECTION_LOST
+     */
+    void connectionChanged(CoreDrone drone, DroneEventObject.droneEventType state);
+
+    /**
+     * A listener (DroneEventHandler, DroneEventListener or DroneStatusListener) was called
+     * @param drone
+     * @param listener
+     * @param event
+     * @param start
+     * @param end
+     */
+    void listenerDispatched(CoreDrone drone, Object listener, DroneEventObject event, long start, long end);
+
+}
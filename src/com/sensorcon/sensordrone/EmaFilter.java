@@ -0,0 +1,67 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+/**
+ * An exponential moving average: each output moves a fraction (alpha) of the way to the new measurement.
+ * A small alpha smooths more, but follows real changes more slowly.
+ * NaN measurements are passed through without changing the average.
+ */
+public class EmaFilter implements SignalFilter {
+
+    private final float alpha;
+    private float average;
+    private boolean started = false;
+
+    /**
+     * Our default Constructor
+     * @param alpha Between 0 (exclusive) and 1 (1 doesn't smooth at all)
+     */
+    public EmaFilter(float alpha) {
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("alpha must be > 0 and <= 1");
+        }
+        this.alpha = alpha;
+    }
+
+    @Override
+    public float apply(float value, long time) {
+        if (Float.isNaN(value)) {
+            return value;
+        }
+        if (!started) {
+            average = value;
+            started = true;
+        } else {
+            average += alpha * (value - average);
+        }
+        return average;
+    }
+
+    @Override
+    public void reset() {
+        started = false;
+    }
+
+    /**
+     * The fraction of the way each output moves
+     * @return
+     */
+    public float getAlpha() {
+        return alpha;
+    }
+
+}
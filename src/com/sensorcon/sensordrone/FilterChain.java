@@ -0,0 +1,54 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+/**
+ * Runs several filters in a row, e.g. a median to drop spikes, then an average to smooth:
+ *
+ * <pre>
+ * myDrone.setFilter(CoreDrone.QS_TYPE_REDUCING_GAS,
+ *         new FilterChain(new MedianFilter(5), new EmaFilter(0.2f)));
+ * </pre>
+ */
+public class FilterChain implements SignalFilter {
+
+    private final SignalFilter[] filters;
+
+    /**
+     * Our default Constructor
+     * @param filters In the order they're run
+     */
+    public FilterChain(SignalFilter... filters) {
+        this.filters = new SignalFilter[filters.length];
+        System.arraycopy(filters, 0, this.filters, 0, filters.length);
+    }
+
+    @Override
+    public float apply(float value, long time) {
+        for (SignalFilter filter : filters) {
+            value = filter.apply(value, time);
+        }
+        return value;
+    }
+
+    @Override
+    public void reset() {
+        for (SignalFilter filter : filters) {
+            filter.reset();
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+/**
+ * One measurement from one Sensordrone in a DroneFleet
+ */
+public class FleetReading {
+
+    /**
+     * The MAC address of the Sensordrone
+     */
+    public final String MAC;
+    /**
+     * The quickSystem type of the measurement (e.g. CoreDrone.QS_TYPE_HUMIDITY)
+     */
+    public final int qsType;
+    /**
+     * When the measurement was made (System.currentTimeMillis())
+     */
+    public final long timestamp;
+    /**
+     * The value (in the units listed in RawSampleProcessor)
+     */
+    public final float value;
+
+    /**
+     * Our default Constructor
+     * @param MAC
+     * @param qsType
+     * @param timestamp
+     * @param value
+     */
+    public FleetReading(String MAC, int qsType, long timestamp, float value) {
+        this.MAC = MAC;
+        this.qsType = qsType;
+        this.timestamp = timestamp;
+        this.value = value;
+    }
+
+}
@@ -0,0 +1,413 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Remembers the last packets sent to (TX) and received from (RX) a Sensordrone, so a problem in the field
+ * can be looked at after the fact. It is always on.
+ *
+ * Packets go into a fixed ring of slots (SLOTS of them, SLOT_DATA bytes of packet each; longer packets
+ * are cut short, but their real length is kept), stamped with System.nanoTime(). Recording is lock free
+ * and doesn't allocate: a slot is claimed with one atomic increment, and guarded by a sequence stamp,
+ * so a snapshot taken while packets are being recorded just skips the slots being written.
+ * The slots themselves are packed into an AtomicLongArray too, so a copy taken between two reads of
+ * the same stamp is never torn.
+ *
+ * Get a Snapshot on demand with snapshot(). One is also taken automatically when the connection is lost
+ * (see getConnectionLostSnapshot() and setConnectionLostHandler()).
+ */
+public class FlightRecorder {
+
+    /**
+     * A packet sent to the Sensordrone
+     */
+    public static final int TX = 0;
+    /**
+     * A packet received from the Sensordrone
+     */
+    public static final int RX = 1;
+    /**
+     * The connection was lost here (no data)
+     */
+    public static final int CONNECTION_LOST = 2;
+
+    /**
+     * How many packets are remembered
+     */
+    public static final int SLOTS = 1024;
+    /**
+     * How many bytes of each packet are remembered
+     */
+    public static final int SLOT_DATA = 52;
+
+    // Slot layout, in bytes packed big endian into longs:
+    // nanos (8), direction (1), stored length (1), original length (2), data (SLOT_DATA)
+    private static final int SLOT_HEADER = 12;
+    private static final int SLOT_WORDS = (SLOT_HEADER + SLOT_DATA) / 8;
+
+    // "SDFR", for the binary dump
+    private static final int MAGIC = 0x53444652;
+    private static final int VERSION = 1;
+
+    /**
+     * Told about the snapshot taken when a connection is lost.
+     * Called on the thread that noticed (usually the communication thread), so be quick.
+     */
+    public interface Handler {
+        void connectionLost(CoreDrone drone, Snapshot snapshot);
+    }
+
+    private final AtomicLongArray slots = new AtomicLongArray(SLOTS * SLOT_WORDS);
+    // Per slot: 0 = empty, -1 = being written, otherwise the sequence number + 1 of what's in it
+    private final AtomicLongArray stamps = new AtomicLongArray(SLOTS);
+    private final AtomicLong next = new AtomicLong();
+
+    // For turning nanoTime into wall clock time
+    private final long anchorMillis = System.currentTimeMillis();
+    private final long anchorNanos = System.nanoTime();
+
+    private volatile Snapshot connectionLostSnapshot;
+    private volatile Handler handler;
+
+    /**
+     * Record a packet (or two pieces of one, e.g. a header and its data)
+     * @param direction TX, RX, or CONNECTION_LOST
+     * @param first
+     * @param firstLength
+     * @param second May be null
+     * @param secondLength
+     */
+    void record(int direction, byte[] first, int firstLength, byte[] second, int secondLength) {
+        long nanos = System.nanoTime();
+        long seq = next.getAndIncrement();
+        int slot = (int) (seq & (SLOTS - 1));
+        int base = slot * SLOT_WORDS;
+        stamps.set(slot, -1);
+
+        int length = firstLength + secondLength;
+        int stored = Math.min(length, SLOT_DATA);
+        slots.lazySet(base, nanos);
+        long word = ((long) direction << 56) | ((long) stored << 48) | ((long) (length & 0xffff) << 32);
+        int w = 1;
+        int shift = 24;
+        for (int i = 0; i < stored; i++) {
+            byte b = i < firstLength ? first[i] : second[i - firstLength];
+            word |= (long) (b & 0xff) << shift;
+            shift -= 8;
+            if (shift < 0) {
+                slots.lazySet(base + w++, word);
+                word = 0;
+                shift = 56;
+            }
+        }
+        if (shift != 56) {
+            slots.lazySet(base + w, word);
+        }
+
+        // Publish the slot (a release store is enough here)
+        stamps.lazySet(slot, seq + 1);
+    }
+
+    void record(int direction, byte[] data) {
+        record(direction, data, data == null ? 0 : data.length, null, 0);
+    }
+
+    /**
+     * Used when the connection is lost: marks it, takes a snapshot, and passes it on
+     * @param drone
+     */
+    void connectionLost(CoreDrone drone) {
+        record(CONNECTION_LOST, null, 0, null, 0);
+        Snapshot snapshot = snapshot(drone.lastMAC);
+        connectionLostSnapshot = snapshot;
+        Handler h = handler;
+        if (h != null) {
+            try {
+                h.connectionLost(drone, snapshot);
+            } catch (RuntimeException e) {
+                // Don't let a bad handler get in the way of the disconnect
+            }
+        }
+    }
+
+    /**
+     * Take a copy of everything remembered so far
+     * @return
+     */
+    public Snapshot snapshot() {
+        return snapshot(null);
+    }
+
+    private Snapshot snapshot(String MAC) {
+        long end = next.get();
+        long start = Math.max(0, end - SLOTS);
+        int capacity = (int) (end - start);
+        Snapshot snapshot = new Snapshot(MAC, anchorMillis, anchorNanos, capacity);
+        long[] copy = new long[SLOT_WORDS];
+        for (long seq = start; seq < end; seq++) {
+            int slot = (int) (seq & (SLOTS - 1));
+            int base = slot * SLOT_WORDS;
+            long before = stamps.get(slot);
+            if (before != seq + 1) {
+                // Being written, or already overwritten by something newer
+                continue;
+            }
+            for (int i = 0; i < SLOT_WORDS; i++) {
+                copy[i] = slots.get(base + i);
+            }
+            if (stamps.get(slot) != before) {
+                continue;
+            }
+            long nanos = copy[0];
+            int direction = (int) (copy[1] >>> 56);
+            int stored = (int) (copy[1] >>> 48) & 0xff;
+            int length = (int) (copy[1] >>> 32) & 0xffff;
+            byte[] data = new byte[stored];
+            for (int i = 0; i < stored; i++) {
+                int at = SLOT_HEADER + i;
+                data[i] = (byte) (copy[at >> 3] >>> (56 - 8 * (at & 7)));
+            }
+            snapshot.add(seq, direction, nanos, length, data);
+        }
+        return snapshot;
+    }
+
+    /**
+     * The snapshot taken the last time the connection was lost
+     * @return The snapshot, or null if it hasn't been lost
+     */
+    public Snapshot getConnectionLostSnapshot() {
+        return connectionLostSnapshot;
+    }
+
+    /**
+     * Set who gets the snapshot taken when the connection is lost (e.g. to save it to a file)
+     * @param handler The handler, or null for none
+     */
+    public void setConnectionLostHandler(Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * How many packets have been recorded (including the ones no longer remembered)
+     * @return
+     */
+    public long getRecordedCount() {
+        return next.get();
+    }
+
+    /**
+     * A copy of what a FlightRecorder remembered, oldest packet first
+     */
+    public static class Snapshot {
+
+        private final String MAC;
+        private final long anchorMillis;
+        private final long anchorNanos;
+        private int count = 0;
+        private final long[] sequence;
+        private final int[] direction;
+        private final long[] nanos;
+        private final int[] length;
+        private final byte[][] data;
+
+        Snapshot(String MAC, long anchorMillis, long anchorNanos, int capacity) {
+            this.MAC = MAC;
+            this.anchorMillis = anchorMillis;
+            this.anchorNanos = anchorNanos;
+            sequence = new long[capacity];
+            direction = new int[capacity];
+            nanos = new long[capacity];
+            length = new int[capacity];
+            data = new byte[capacity][];
+        }
+
+        void add(long seq, int dir, long time, int originalLength, byte[] bytes) {
+            sequence[count] = seq;
+            direction[count] = dir;
+            nanos[count] = time;
+            length[count] = originalLength;
+            data[count] = bytes;
+            count++;
+        }
+
+        /**
+         * The MAC address of the Sensordrone (only for the connection lost snapshot)
+         * @return The MAC, or null
+         */
+        public String getMAC() {
+            return MAC;
+        }
+
+        /**
+         * How many packets are in the snapshot
+         * @return
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * The sequence number of a packet (gaps mean packets were lost while the snapshot was taken)
+         * @param i
+         * @return
+         */
+        public long getSequence(int i) {
+            return sequence[i];
+        }
+
+        /**
+         * The direction of a packet
+         * @param i
+         * @return TX, RX, or CONNECTION_LOST
+         */
+        public int getDirection(int i) {
+            return direction[i];
+        }
+
+        /**
+         * When the packet was recorded
+         * @param i
+         * @return System.nanoTime()
+         */
+        public long getNanos(int i) {
+            return nanos[i];
+        }
+
+        /**
+         * When the packet was recorded
+         * @param i
+         * @return Milliseconds since 1970 (like System.currentTimeMillis())
+         */
+        public long getTimeMillis(int i) {
+            return anchorMillis + (nanos[i] - anchorNanos) / 1000000;
+        }
+
+        /**
+         * The real length of a packet
+         * @param i
+         * @return
+         */
+        public int getLength(int i) {
+            return length[i];
+        }
+
+        /**
+         * The packet (only the first SLOT_DATA bytes, if it was longer)
+         * @param i
+         * @return
+         */
+        public byte[] getData(int i) {
+            return data[i];
+        }
+
+        /**
+         * Write the snapshot in a compact binary form (read it back with readFrom())
+         * @param out
+         * @throws IOException
+         */
+        public void writeTo(OutputStream out) throws IOException {
+            DataOutputStream dos = new DataOutputStream(out);
+            dos.writeInt(MAGIC);
+            dos.writeByte(VERSION);
+            dos.writeUTF(MAC == null ? "" : MAC);
+            dos.writeLong(anchorMillis);
+            dos.writeLong(anchorNanos);
+            dos.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                dos.writeLong(sequence[i]);
+                dos.writeByte(direction[i]);
+                dos.writeLong(nanos[i]);
+                dos.writeShort(length[i]);
+                dos.writeByte(data[i].length);
+                dos.write(data[i]);
+            }
+            dos.flush();
+        }
+
+        /**
+         * Read a snapshot written by writeTo()
+         * @param in
+         * @return
+         * @throws IOException If it isn't a snapshot
+         */
+        public static Snapshot readFrom(InputStream in) throws IOException {
+            DataInputStream dis = new DataInputStream(in);
+            if (dis.readInt() != MAGIC || dis.readUnsignedByte() != VERSION) {
+                throw new IOException("Not a FlightRecorder snapshot");
+            }
+            String MAC = dis.readUTF();
+            long anchorMillis = dis.readLong();
+            long anchorNanos = dis.readLong();
+            int count = dis.readInt();
+            if (count < 0 || count > SLOTS) {
+                throw new IOException("Bad FlightRecorder snapshot");
+            }
+            Snapshot snapshot = new Snapshot(MAC.length() == 0 ? null : MAC, anchorMillis, anchorNanos, count);
+            for (int i = 0; i < count; i++) {
+                long seq = dis.readLong();
+                int dir = dis.readUnsignedByte();
+                long time = dis.readLong();
+                int originalLength = dis.readUnsignedShort();
+                byte[] bytes = new byte[dis.readUnsignedByte()];
+                dis.readFully(bytes);
+                snapshot.add(seq, dir, time, originalLength, bytes);
+            }
+            return snapshot;
+        }
+
+        /**
+         * The snapshot as text, one packet per line (e.g. "+12.345ms TX 50 2 10")
+         * @return
+         */
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(count * 32 + 64);
+            out.append("FlightRecorder");
+            if (MAC != null) {
+                out.append(' ').append(MAC);
+            }
+            out.append(": ").append(count).append(" packets\n");
+            long first = count > 0 ? nanos[0] : 0;
+            for (int i = 0; i < count; i++) {
+                out.append('+').append((nanos[i] - first) / 1000 / 1000.0).append("ms ");
+                if (direction[i] == TX) {
+                    out.append("TX");
+                } else if (direction[i] == RX) {
+                    out.append("RX");
+                } else {
+                    out.append("CONNECTION_LOST");
+                }
+                Logger.appendHex(out, data[i], data[i].length);
+                if (data[i].length < length[i]) {
+                    out.append(" ... (").append(length[i]).append(" bytes)");
+                }
+                out.append('\n');
+            }
+            return out.toString();
+        }
+
+    }
+
+}
@@ -191,12 +191,9 @@ public class GeneralGas_V1 extends DroneSensor {
 
                 if (oxData != null) {
                     // Parse the data
-                    int oxMSB = 0x000000ff & ((int) oxData[1]);
-                    int oxLSB = 0x000000ff & ((int) oxData[0]);
-                    int oxADC = oxLSB + (oxMSB << 8);
-                    float voltage = (float) (((float) oxADC / 4095.0) * 3.3);
-                    float resistance = (float) ((18000.0 * 3.3 / voltage) - 18000.0);
-                    myDrone.oxidizingGas_Ohm = resistance;
+                    int oxADC = RegisterCodec.uint16LE(oxData, 0);
+                    myDrone.oxidizingGas_Ohm = oxidizingOhm(oxADC);
+                    myDrone.recordRawSample(CoreDrone.QS_TYPE_OXIDIZING_GAS, new int[]{oxADC});
                     // Notify the Listener
                     myDrone.notifyDroneEventHandler(oxidizingMeasured);
                     myDrone.notifyDroneEventListener(oxidizingMeasured);
@@ -233,12 +230,9 @@ public class GeneralGas_V1 extends DroneSensor {
 
                 if (redData != null) {
                     // Parse the data
-                    int redMSB = 0x000000ff & ((int) redData[1]);
-                    int redLSB = 0x000000ff & ((int) redData[0]);
-                    int redADC = redLSB + (redMSB << 8);
-                    float voltage = (float) ((redADC / 4095.0) * 3.3);
-                    float resistance = (float) ((270000.0 * 3.3 / voltage) - 270000.0);
-                    myDrone.reducingGas_Ohm = resistance;
+                    int redADC = RegisterCodec.uint16LE(redData, 0);
+                    myDrone.reducingGas_Ohm = reducingOhm(redADC);
+                    myDrone.recordRawSample(CoreDrone.QS_TYPE_REDUCING_GAS, new int[]{redADC});
                     // Notify the Listener
                     myDrone.notifyDroneEventHandler(reducingMeasured);
                     myDrone.notifyDroneEventListener(reducingMeasured);
@@ -335,4 +329,24 @@ public class GeneralGas_V1 extends DroneSensor {
     GeneralGas_V1(CoreDrone drone) {
         super(drone, "GeneralGas_V1");
     }
+
+    /**
+     * Convert a raw oxidizing gas ADC value to the sensor's resistance
+     * @param oxADC
+     * @return Resistance in Ohm
+     */
+    public static float oxidizingOhm(int oxADC) {
+        float voltage = (float) (((float) oxADC / 4095.0) * 3.3);
+        return (float) ((18000.0 * 3.3 / voltage) - 18000.0);
+    }
+
+    /**
+     * Convert a raw reducing gas ADC value to the sensor's resistance
+     * @param redADC
+     * @return Resistance in Ohm
+     */
+    public static float reducingOhm(int redADC) {
+        float voltage = (float) ((redADC / 4095.0) * 3.3);
+        return (float) ((270000.0 * 3.3 / voltage) - 270000.0);
+    }
 }
@@ -75,18 +75,12 @@ public class Humidity_V1 extends DroneSensor {
 
                 if (humidity_response != null) {
                     // Parse data
-                    int MSB = 0x000000ff & ((int) humidity_response[0]);
-                    int LSB = 0x000000fc & ((int) humidity_response[1]); // fc not ff
+                    // The last two bits are status bits, not data
+                    int ADC = RegisterCodec.uint16BE(humidity_response, 0) & 0xfffc;
+                    logger.debug(TAG, "Humidity ADC: ", ADC);
 
-                    int ADC = LSB + (MSB << 8);
-                    logger.debugLogger(TAG, "Humidity ADC: " + String.valueOf(ADC), CoreDrone.DEBUG);
-
-                    // RH above water
-                    float humidity = (float) (-6.0 + 125.0 * ((float) ADC / Math.pow(2, 16)));
-                    myDrone.humidity_Percent = humidity;
-
-                    // There is a different equation for RH over ice.
-                    // I can add it if you want.
+                    myDrone.humidity_Percent = humidityPercent(ADC);
+                    myDrone.recordRawSample(CoreDrone.QS_TYPE_HUMIDITY, new int[]{ADC});
 
                     myDrone.notifyDroneEventHandler(measured);
                     myDrone.notifyDroneEventListener(measured);
@@ -127,18 +121,14 @@ public class Humidity_V1 extends DroneSensor {
 
                 if (temperature_response != null) {
                     // Parse data
-                    int MSB = 0x000000ff & ((int) temperature_response[0]);
-                    int LSB = 0x000000fc & ((int) temperature_response[1]); // fc not ff
-                    int ADC = LSB + (MSB << 8);
-                    logger.debugLogger(TAG,
-                            "Temperature ADC: " + String.valueOf(ADC),
-                            CoreDrone.DEBUG);
-                    float temperature = (float) (-46.85 + 175.72 * ((float) ADC / Math
-                            .pow(2, 16)));
-                    myDrone.temperature_Celsius = temperature;
+                    // The last two bits are status bits, not data
+                    int ADC = RegisterCodec.uint16BE(temperature_response, 0) & 0xfffc;
+                    logger.debug(TAG, "Temperature ADC: ", ADC);
+                    myDrone.temperature_Celsius = temperatureCelsius(ADC);
                     myDrone.temperature_Kelvin = (float) (myDrone.temperature_Celsius + 273.15);
                     myDrone.temperature_Fahrenheit = (float) (myDrone.temperature_Celsius
                             * (9.0 / 5.0) + 32.0);
+                    myDrone.recordRawSample(CoreDrone.QS_TYPE_TEMPERATURE, new int[]{ADC});
 
                     myDrone.notifyDroneEventHandler(tempMeasured);
                     myDrone.notifyDroneEventListener(tempMeasured);
@@ -303,4 +293,25 @@ public class Humidity_V1 extends DroneSensor {
         }
         return true;
     }
+
+    /**
+     * Convert a raw humidity ADC value (status bits cleared) to relative humidity
+     * @param ADC
+     * @return Relative humidity in %
+     */
+    public static float humidityPercent(int ADC) {
+        // RH above water
+        // There is a different equation for RH over ice.
+        // I can add it if you want.
+        return (float) (-6.0 + 125.0 * ((float) ADC / 65536.0));
+    }
+
+    /**
+     * Convert a raw temperature ADC value (status bits cleared) to Celsius
+     * @param ADC
+     * @return
+     */
+    public static float temperatureCelsius(int ADC) {
+        return (float) (-46.85 + 175.72 * ((float) ADC / 65536.0));
+    }
 }
@@ -0,0 +1,162 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+
+/**
+ * A calibration session for the IR temperature sensor.
+ *
+ * Point the Sensordrone at an object whose temperature you KNOW, tell the session that temperature,
+ * and keep measuring IR temperature. Every measurement adds an (X,Y) pair:
+ *
+ * X = T_KNOWN^4 - T_DIE^4
+ * Y = f(V_Obj) / (1 + a1*(T_DIE - T_REF) + a2*(T_DIE - T_REF)^2)
+ *
+ * The slope of Y vs. X is the calibration factor (s0). More known temperatures, spread over a wider range,
+ * give a better calibration factor. The fit is updated with every pair, so there is no need to store them.
+ */
+public class IRCalibration {
+
+    /**
+     * How far apart (Kelvin) reference temperatures have to be to count as different ones
+     */
+    public static final double MIN_REFERENCE_SPREAD = 5;
+
+    // Running (Welford style) least squares sums. These stay well conditioned even though
+    // X is on the order of 1e8-1e10.
+    private long count = 0;
+    private double meanX = 0;
+    private double meanY = 0;
+    private double sumSquaresX = 0;
+    private double sumProductsXY = 0;
+
+    // The temperature of the current reference object (Kelvin). NaN means "not set".
+    private double referenceKelvin = Double.NaN;
+    // True once the current reference has been counted
+    private boolean referenceCounted = false;
+    // The different reference temperatures that have had measurements paired with them
+    private double[] references = new double[4];
+    private int referenceCount = 0;
+
+    /**
+     * Set the temperature of the object the sensor is currently pointed at.
+     * Every measurement from now on is paired with this temperature, until it is changed.
+     * @param kelvin
+     */
+    public synchronized void setReferenceTemperature(double kelvin) {
+        if (kelvin != referenceKelvin) {
+            referenceCounted = false;
+        }
+        referenceKelvin = kelvin;
+    }
+
+    /**
+     * Set the temperature of the object the sensor is currently pointed at, in Celsius
+     * @param celsius
+     */
+    public void setReferenceTemperatureCelsius(double celsius) {
+        setReferenceTemperature(celsius + 273.15);
+    }
+
+    /**
+     * Stop pairing measurements with a known temperature (e.g. while you move to the next reference object).
+     */
+    public synchronized void pause() {
+        referenceKelvin = Double.NaN;
+        referenceCounted = false;
+    }
+
+    /**
+     * Add a measurement. Called by IRThermometer_V1; ignored if no reference temperature is set.
+     * @param tDie The die temperature in Kelvin
+     * @param yValue The temperature compensated Seebeck voltage
+     */
+    synchronized void addSample(double tDie, double yValue) {
+        if (Double.isNaN(referenceKelvin)) {
+            return;
+        }
+        if (!referenceCounted) {
+            countReference(referenceKelvin);
+            referenceCounted = true;
+        }
+        double tRef2 = referenceKelvin * referenceKelvin;
+        double tDie2 = tDie * tDie;
+        double xValue = tRef2 * tRef2 - tDie2 * tDie2;
+
+        count++;
+        double dX = xValue - meanX;
+        meanX += dX / count;
+        meanY += (yValue - meanY) / count;
+        sumSquaresX += dX * (xValue - meanX);
+        sumProductsXY += dX * (yValue - meanY);
+    }
+
+    /**
+     * Count a reference temperature, unless it's within MIN_REFERENCE_SPREAD of one already counted
+     * @param kelvin
+     */
+    private void countReference(double kelvin) {
+        for (int i = 0; i < referenceCount; i++) {
+            if (Math.abs(references[i] - kelvin) < MIN_REFERENCE_SPREAD) {
+                return;
+            }
+        }
+        if (referenceCount == references.length) {
+            double[] grown = new double[referenceCount * 2];
+            System.arraycopy(references, 0, grown, 0, referenceCount);
+            references = grown;
+        }
+        references[referenceCount++] = kelvin;
+    }
+
+    /**
+     * The number of (X,Y) pairs collected so far
+     * @return
+     */
+    public synchronized long getSampleCount() {
+        return count;
+    }
+
+    /**
+     * The number of different reference temperatures used so far: ones that had measurements paired with them,
+     * and are at least MIN_REFERENCE_SPREAD apart
+     * @return
+     */
+    public synchronized int getReferenceCount() {
+        return referenceCount;
+    }
+
+    /**
+     * Checks if there is enough data to fit a calibration factor
+     * (at least two known temperatures, MIN_REFERENCE_SPREAD or more apart)
+     * @return
+     */
+    public synchronized boolean canFit() {
+        return referenceCount >= 2 && count >= 2 && sumSquaresX > 0;
+    }
+
+    /**
+     * The current best fit calibration factor (the slope of Y vs. X)
+     * @return The calibration factor, or NaN if there isn't enough data yet.
+     */
+    public synchronized double getCalibrationFactor() {
+        if (!canFit()) {
+            return Double.NaN;
+        }
+        return sumProductsXY / sumSquaresX;
+    }
+
+}
@@ -15,7 +15,6 @@
  */
 package com.sensorcon.sensordrone;
 
-import java.math.BigInteger;
 import java.util.concurrent.RejectedExecutionException;
 
 /**
@@ -29,16 +28,54 @@ public class IRThermometer_V1 extends DroneSensor {
     private byte I2C_SLAVE_ADDRESS = (byte) 0x41;
 
     // Terms used for calculating the objects Temperature
-    private double a1 = 1.75E-3;
-    private double a2 = -1.678E-5;
-    private double T_REF = 298.15;
-    private double b0 = -2.94E-5;
-    private double b1 = -5.7E-7;
-    private double b2 = 4.63E-9;
-    private double c2 = 13.4;
+    private static final double a1 = 1.75E-3;
+    private static final double a2 = -1.678E-5;
+    private static final double T_REF = 298.15;
+    private static final double b0 = -2.94E-5;
+    private static final double b1 = -5.7E-7;
+    private static final double b2 = 4.63E-9;
+    private static final double c2 = 13.4;
     // s0 is the calibration factor
     // If you want to tweak the accuracy/range, this would be the number to mess with.
-    private double s0 = 2.51E-14;
+    // (Or better yet, use startCalibration())
+    static final double DEFAULT_S0 = 2.51E-14;
+    private double s0 = DEFAULT_S0;
+
+    // The key a fitted s0 is stored under in the DroneStore
+    private static final String STORE_KEY_S0 = "ir.s0";
+    // The calibration session in progress, if any (set by the app, used on the communication thread)
+    private volatile IRCalibration calibration = null;
+
+    /*
+     * Conversion rate settings (CR bits of the configuration register).
+     * The sensor averages this many conversions before updating its result registers;
+     * every doubling of the averaging doubles the time between updates (250ms per conversion).
+     */
+    /**
+     * 1 averaged sample, updated every 250ms (4 per second)
+     */
+    public static final int AVERAGE_1 = 0;
+    /**
+     * 2 averaged samples, updated every 500ms (2 per second)
+     */
+    public static final int AVERAGE_2 = 1;
+    /**
+     * 4 averaged samples, updated every 1000ms (1 per second). This is the default.
+     */
+    public static final int AVERAGE_4 = 2;
+    /**
+     * 8 averaged samples, updated every 2000ms
+     */
+    public static final int AVERAGE_8 = 3;
+    /**
+     * 16 averaged samples, updated every 4000ms
+     */
+    public static final int AVERAGE_16 = 4;
+
+    // The currently selected conversion rate; defaults to what the library has always used.
+    private int conversionRate = AVERAGE_4;
+    // Only publish measurements when the sensor says it has fresh data
+    private boolean dataReadyCheck = false;
 
     // Used for notifications
     private DroneEventObject measured = new DroneEventObject(DroneEventObject.droneEventType.IR_TEMPERATURE_MEASURED);
@@ -60,14 +97,7 @@ public class IRThermometer_V1 extends DroneSensor {
 
             @Override
             public void run() {
-                byte i2cStatusRegister = 0x02;
-                byte i2cWriteLength = 0x01;
-                byte enableByte = 0x75;
-                byte[] enableCall = {0x50, 0x07, 0x11,
-                        I2C_BANK, I2C_SLAVE_ADDRESS, i2cWriteLength, i2cStatusRegister, enableByte,
-                        0x00};
-
-                byte[] lastCall = sdCallAndResponse(enableCall);
+                byte[] lastCall = writeConfiguration();
                 if (lastCall != null) {
                     myDrone.irTemperatureStatus = true;
 
@@ -86,6 +116,89 @@ public class IRThermometer_V1 extends DroneSensor {
         return true;
     }
 
+    /**
+     * Builds the upper byte of the configuration register:
+     * continuous conversion mode, the selected conversion rate, and the data ready pin enabled.
+     * @return
+     */
+    private byte configurationByte() {
+        return (byte) (0x70 | (conversionRate << 1) | 0x01);
+    }
+
+    /**
+     * Writes the configuration register (this turns the sensor on).
+     * Must be called from the commService.
+     * @return
+     */
+    private byte[] writeConfiguration() {
+        byte i2cStatusRegister = 0x02;
+        byte i2cWriteLength = 0x01;
+        byte[] enableCall = {0x50, 0x07, 0x11,
+                I2C_BANK, I2C_SLAVE_ADDRESS, i2cWriteLength, i2cStatusRegister, configurationByte(),
+                0x00};
+        return sdCallAndResponse(enableCall);
+    }
+
+    /**
+     * Set how many conversions the sensor averages for each result.
+     * More averaging means less noise, but a slower update rate.
+     *
+     * If the sensor is already enabled, the new setting is sent right away; otherwise it is
+     * used the next time the sensor is enabled.
+     * @param rate One of AVERAGE_1, AVERAGE_2, AVERAGE_4, AVERAGE_8, or AVERAGE_16
+     * @return
+     */
+    public boolean setAveraging(int rate) {
+        if (rate < AVERAGE_1 || rate > AVERAGE_16) {
+            return false;
+        }
+        conversionRate = rate;
+        if (!myDrone.isConnected || !myDrone.irTemperatureStatus) {
+            return true;
+        }
+
+        Runnable configureRunnable = new Runnable() {
+            @Override
+            public void run() {
+                writeConfiguration();
+            }
+        };
+
+        try {
+            myDrone.commService.submit(configureRunnable);
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the currently selected averaging setting
+     * @return One of AVERAGE_1, AVERAGE_2, AVERAGE_4, AVERAGE_8, or AVERAGE_16
+     */
+    public int getAveraging() {
+        return conversionRate;
+    }
+
+    /**
+     * The time it takes the sensor to produce a new result with the current averaging setting.
+     * Measuring faster than this will just return the same data again.
+     * @return Time in milliseconds
+     */
+    public int getConversionPeriod() {
+        return 250 << conversionRate;
+    }
+
+    /**
+     * When turned on, measure() also checks the sensor's data ready flag, and only updates the values
+     * (and notifies listeners) if a new conversion has finished since the last read.
+     * This lets you poll as fast as you want and still only get each sample once.
+     * @param check
+     */
+    public void setDataReadyCheck(boolean check) {
+        dataReadyCheck = check;
+    }
+
     /**
      * Disable the IR sensor
      * @return
@@ -146,8 +259,9 @@ public class IRThermometer_V1 extends DroneSensor {
                 byte[] statusCheck = sdCallAndResponse(statusCall);
 
                 if (statusCheck != null) {
-                    byte statusByte = (byte) (0x0000000e & statusCheck[0]);
-                    if (statusByte == 0x0e) {
+                    // Check the mode bits; the conversion rate bits can be anything
+                    byte statusByte = (byte) (0x00000070 & statusCheck[0]);
+                    if (statusByte == 0x70) {
                         myDrone.irTemperatureStatus = true;
                     } else {
                         myDrone.irTemperatureStatus = false;
@@ -169,18 +283,60 @@ public class IRThermometer_V1 extends DroneSensor {
 
 
     // Equations for calculating Target Object Temperatures
-    private double S(double T_DIE, double calibration_constant) {
+    private static double S(double T_DIE, double calibration_constant) {
         double sensitivity = calibration_constant * (1 + a1 * (T_DIE - T_REF) + a2 * (T_DIE - T_REF) * (T_DIE - T_REF));
         return sensitivity;
     }
-    private double V_os(double T_DIE) {
+    private static double V_os(double T_DIE) {
         double offset = b0 + b1 * (T_DIE - T_REF) + b2 * (T_DIE - T_REF) * (T_DIE - T_REF);
         return offset;
     }
-    private double Seebeck(double V_Obj, double V_os) {
+    private static double Seebeck(double V_Obj, double V_os) {
         double f_V_Obj = (V_Obj - V_os) + c2 * (V_Obj - V_os) * (V_Obj - V_os);
         return f_V_Obj;
     }
+    private static double dieKelvin(int T_DIE) {
+        // The *4 was reversed engineered by me. I probably jut didn't bit shift it correctly,
+        // but, hey, the data sheet didn't tell me to.
+        return (double) ((T_DIE / (32.0 * 4.0)) + 273.15);
+    }
+    private static double objectVolts(int V_OBJ) {
+        return (double) (V_OBJ * 156.25e-9);
+    }
+
+    /**
+     * Calculate the object temperature from the sensor's raw register values
+     * @param T_DIE The raw die temperature register
+     * @param V_OBJ The raw object voltage register
+     * @param calibrationFactor The calibration factor (s0) to use
+     * @param conversions The conversion math to use
+     * @return Temperature in Kelvin
+     */
+    public static double objectKelvin(int T_DIE, int V_OBJ, double calibrationFactor, DroneConversions conversions) {
+        double dT_Die = dieKelvin(T_DIE); // Should be Kelvin.
+        double dV_Obj = objectVolts(V_OBJ); // Should be in Volts
+        double Vos = V_os(dT_Die);
+        double sensitivity = S(dT_Die, calibrationFactor);
+        double fVobj = Seebeck(dV_Obj, Vos);
+        double TMP = dT_Die * dT_Die * dT_Die * dT_Die
+                + (fVobj / sensitivity);
+        return conversions.irTemperature(TMP);
+    }
+
+    /*
+     * The calls used by measureRunnable. They never change, so we build them once.
+     */
+    private final byte[] callStatus = {0x50, 0x06, 0x10,
+            I2C_BANK, I2C_SLAVE_ADDRESS, 0x02, 0x02,
+            0x00};
+    private final byte[] callTemp = {0x50, 0x06, 0x10,
+            I2C_BANK, I2C_SLAVE_ADDRESS, 0x01, 0x02,
+            0x00};
+    private final byte[] callVoltage = {0x50, 0x06, 0x10,
+            I2C_BANK, I2C_SLAVE_ADDRESS, 0x00, 0x02,
+            0x00};
+    private final byte[][] readOnly = {callTemp, callVoltage};
+    private final byte[][] readWithStatus = {callStatus, callTemp, callVoltage};
 
     // This one's a biggie
     private Runnable measureRunnable = new Runnable() {
@@ -188,67 +344,56 @@ public class IRThermometer_V1 extends DroneSensor {
         @Override
         public void run() {
             // We need to get the Die Temperature and Voltage
-            byte I2C_REGISTER_ADDRESS_TEMP = 0x01;
-            byte I2C_REGISTER_ADDRESS_VOLT = 0x00;
-            byte I2C_REGISTER_READ_LENGTH = 0x02;
             // Getting the die temperature and the object voltage need to be done in two separate calls.
             // Making one read of twice the length will only result in headaches, tears, and an incorrect reading.
-            byte[] call_temp = {0x50, 0x06, 0x10,
-                    I2C_BANK, I2C_SLAVE_ADDRESS, I2C_REGISTER_ADDRESS_TEMP, I2C_REGISTER_READ_LENGTH,
-                    0x00};
-            byte[] call_voltage = {0x50, 0x06, 0x10,
-                    I2C_BANK, I2C_SLAVE_ADDRESS, I2C_REGISTER_ADDRESS_VOLT, I2C_REGISTER_READ_LENGTH,
-                    0x00};
-            byte[] data_temp = sdCallAndResponse(call_temp);
+            // We can send the calls back-to-back though, and then read both responses.
+            byte[][] responses;
+            if (dataReadyCheck) {
+                responses = sdPipelinedCallAndResponse(readWithStatus);
+            } else {
+                responses = sdPipelinedCallAndResponse(readOnly);
+            }
+            if (responses == null) {
+                return;
+            }
+            int offset = 0;
+            if (dataReadyCheck) {
+                // DRDY is the MSB of the configuration register's low byte
+                byte[] data_status = responses[0];
+                if (data_status == null || (data_status[1] & 0x80) == 0) {
+                    return;
+                }
+                offset = 1;
+            }
+            byte[] data_temp = responses[offset];
             if (data_temp == null) {
                 return;
             }
-            byte[] data_volt = sdCallAndResponse(call_voltage);
+            byte[] data_volt = responses[offset + 1];
             if (data_volt != null) {
-                // Data is in two's complement so we should be able to use a BigInteger
-                byte[] twosC_temp = {data_temp[0], data_temp[1]};
-                byte[] twosC_volt = {data_volt[0], data_volt[1]};
-                BigInteger bigIntTemp = new BigInteger(twosC_temp);
-                BigInteger bigIntVolt = new BigInteger(twosC_volt);
-                int T_DIE = bigIntTemp.intValue();
-                logger.debugLogger(TAG, "T_DIE: " + String.valueOf(T_DIE),
-                        myDrone.DEBUG);
-                int V_OBJ = bigIntVolt.intValue();
-                logger.debugLogger(TAG, "V_Object: " + String.valueOf(V_OBJ),
-                        myDrone.DEBUG);
+                // Data is in two's complement
+                int T_DIE = RegisterCodec.int16BE(data_temp, 0);
+                logger.debug(TAG, "T_DIE: ", T_DIE);
+                int V_OBJ = RegisterCodec.int16BE(data_volt, 0);
+                logger.debug(TAG, "V_Object: ", V_OBJ);
                 // Parse the data
-                double dT_Die = (double) ((T_DIE / (32.0 * 4.0)) + 273.15); // Should be Kelvin.
-                // The *4 was reversed engineered by me. I probably jut didn't bit shift it correctly,
-                // but, hey, the data sheet didn't tell me to.
-                double dV_Obj = (double) (V_OBJ * 156.25e-9); // Should be in Volts
-                double Vos = V_os(dT_Die);
-                double sensitivity = S(dT_Die, s0);
-                double fVobj = Seebeck(dV_Obj, Vos);
-                double TMP = dT_Die * dT_Die * dT_Die * dT_Die
-                        + (fVobj / sensitivity);
-                double temperature = Math.sqrt(TMP);
-                temperature = Math.sqrt(temperature);
+                double temperature = objectKelvin(T_DIE, V_OBJ, s0, myDrone.conversions);
 
                 // Some of you may be asking yourselves about that s0 factor above.
-                // Here is the general run down of how to get a good one.
-
-                // If you KNOW the temperature of the object you are point the device at
-                double KNOWN_TEMPERATURE = 273.15;
-                // You can calculate an (X,Y) pair
-                double calX = Math.pow(KNOWN_TEMPERATURE, 4) - Math.pow(dT_Die, 4);
-                double calY = fVobj / (1 + a1 * (dT_Die - T_REF) + a2 * (dT_Die - T_REF));
-                // Which you can log
-                logger.debugLogger(TAG, String.valueOf(KNOWN_TEMPERATURE) + ": (" + calX + "," + calY + ")", myDrone.DEBUG);
-                // If you do this for at least two different KNOWN_TEMPERATURES and
-                // plot the data, the slope of that line will be your calibration factor.
-                // More known temperature points = a better calibration factor.
-                // A wider range of know temperatures = a better calibration factor
+                // If a calibration session is running, feed it an (X,Y) pair (see IRCalibration).
+                IRCalibration session = calibration;
+                if (session != null) {
+                    double dT_Die = dieKelvin(T_DIE);
+                    double fVobj = Seebeck(objectVolts(V_OBJ), V_os(dT_Die));
+                    session.addSample(dT_Die, fVobj / S(dT_Die, 1.0));
+                }
 
                 // Assign our values
                 myDrone.irTemperature_Kelvin = (float) temperature;
                 myDrone.irTemperature_Celsius = (float) (myDrone.irTemperature_Kelvin - 273.15);
                 myDrone.irTemperature_Fahrenheit = (float) (myDrone.irTemperature_Celsius
                         * (9.0 / 5.0) + 32.0);
+                myDrone.recordRawSample(CoreDrone.QS_TYPE_IR_TEMPERATURE, new int[]{T_DIE, V_OBJ});
                 // Notify our listener that we are done
                 myDrone.notifyDroneEventHandler(measured);
                 myDrone.notifyDroneEventListener(measured);
@@ -273,12 +418,88 @@ public class IRThermometer_V1 extends DroneSensor {
     }
 
 
+    /**
+     * Start a calibration session. While it is running, every IR temperature measurement is
+     * paired with the session's reference temperature.
+     *
+     * Any session already in progress is thrown away.
+     * @return The new session; set its reference temperature to start collecting data.
+     */
+    public IRCalibration startCalibration() {
+        IRCalibration session = new IRCalibration();
+        calibration = session;
+        return session;
+    }
+
+    /**
+     * Finish the current calibration session, and use (and store) the fitted calibration factor.
+     * @return false if there is no session, or it doesn't have enough data for a fit.
+     * The session keeps running in that case.
+     */
+    public boolean finishCalibration() {
+        IRCalibration session = calibration;
+        if (session == null || !session.canFit()) {
+            return false;
+        }
+        double fitted = session.getCalibrationFactor();
+        if (fitted <= 0 || Double.isInfinite(fitted)) {
+            return false;
+        }
+        calibration = null;
+        setCalibrationFactor(fitted);
+        return true;
+    }
+
+    /**
+     * Throw away the current calibration session without changing anything
+     */
+    public void cancelCalibration() {
+        calibration = null;
+    }
+
+    /**
+     * Set the calibration factor (s0) used to calculate the object temperature.
+     * It is remembered for this Sensordrone if the Drone has a DroneStore.
+     * @param calibrationFactor
+     */
+    public void setCalibrationFactor(double calibrationFactor) {
+        s0 = calibrationFactor;
+        myDrone.setIRCalibrationFactor(calibrationFactor);
+        if (myDrone.droneStore != null) {
+            myDrone.droneStore.putDouble(myDrone.lastMAC, STORE_KEY_S0, calibrationFactor);
+        }
+    }
+
+    /**
+     * Get the calibration factor (s0) currently used to calculate the object temperature.
+     * @return
+     */
+    public double getCalibrationFactor() {
+        return s0;
+    }
+
+    /**
+     * Go back to the library's default calibration factor, and forget any stored one.
+     */
+    public void resetCalibrationFactor() {
+        s0 = DEFAULT_S0;
+        myDrone.setIRCalibrationFactor(DEFAULT_S0);
+        if (myDrone.droneStore != null) {
+            myDrone.droneStore.remove(myDrone.lastMAC, STORE_KEY_S0);
+        }
+    }
+
     /**
      * Our default Constructor
      * @param drone
      */
     public IRThermometer_V1(CoreDrone drone) {
         super(drone, "IRThermometer_V1");
+        // Use a previously fitted calibration factor for this Sensordrone, if we have one.
+        if (myDrone.droneStore != null) {
+            s0 = myDrone.droneStore.getDouble(myDrone.lastMAC, STORE_KEY_S0, DEFAULT_S0);
+        }
+        myDrone.setIRCalibrationFactor(s0);
     }
 
 }
@@ -0,0 +1,78 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+/**
+ * A one-dimensional Kalman filter, for a value that drifts slowly and is measured with noise.
+ *
+ * Between measurements the value is expected to wander by about the process noise; each measurement
+ * is trusted according to the measurement noise. The filter works out how much to trust each one
+ * as it goes, so it settles quickly at first and then smooths steadily.
+ * NaN measurements are passed through without changing the estimate.
+ */
+public class KalmanFilter implements SignalFilter {
+
+    private final float processNoise;
+    private final float measurementNoise;
+    private float estimate;
+    private float errorVariance;
+    private boolean started = false;
+
+    /**
+     * Our default Constructor
+     * @param processNoise How much the real value changes between measurements (a variance, in units squared)
+     * @param measurementNoise How noisy the measurements are (a variance, in units squared)
+     */
+    public KalmanFilter(float processNoise, float measurementNoise) {
+        if (!(processNoise >= 0) || !(measurementNoise > 0)) {
+            throw new IllegalArgumentException("processNoise must be >= 0 and measurementNoise > 0");
+        }
+        this.processNoise = processNoise;
+        this.measurementNoise = measurementNoise;
+    }
+
+    @Override
+    public float apply(float value, long time) {
+        if (Float.isNaN(value)) {
+            return value;
+        }
+        if (!started) {
+            estimate = value;
+            errorVariance = measurementNoise;
+            started = true;
+            return estimate;
+        }
+        float predicted = errorVariance + processNoise;
+        float gain = predicted / (predicted + measurementNoise);
+        estimate += gain * (value - estimate);
+        errorVariance = (1 - gain) * predicted;
+        return estimate;
+    }
+
+    @Override
+    public void reset() {
+        started = false;
+    }
+
+    /**
+     * How uncertain the current estimate is (a variance)
+     * @return
+     */
+    public float getErrorVariance() {
+        return errorVariance;
+    }
+
+}
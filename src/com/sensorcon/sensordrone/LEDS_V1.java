@@ -161,6 +161,40 @@ public class LEDS_V1 extends DroneSensor {
         }
     };
 
+    /**
+     * The colors last set (0-255)
+     * @return {left red, left green, left blue, right red, right green, right blue}
+     */
+    int[] getColors() {
+        return new int[]{LEFT_RED & 0xff, LEFT_GREEN & 0xff, LEFT_BLUE & 0xff,
+                RIGHT_RED & 0xff, RIGHT_GREEN & 0xff, RIGHT_BLUE & 0xff};
+    }
+
+    /**
+     * Set both LEDs in one command (e.g. to restore colors from getColors())
+     * @param colors {left red, left green, left blue, right red, right green, right blue}
+     * @return
+     */
+    boolean setColors(int[] colors) {
+        if (!myDrone.isConnected) {
+            return false;
+        }
+        LEFT_RED = intToByte(colors[0]);
+        LEFT_GREEN = intToByte(colors[1]);
+        LEFT_BLUE = intToByte(colors[2]);
+        RIGHT_RED = intToByte(colors[3]);
+        RIGHT_GREEN = intToByte(colors[4]);
+        RIGHT_BLUE = intToByte(colors[5]);
+
+        try {
+            // Call the runnable to set the colors
+            myDrone.commService.submit(colorRunnable);
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Our default Constructor
      * @param drone
@@ -0,0 +1,60 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+/**
+ * Where the time goes for one command byte (see DroneMetrics.getLatencyBreakdown()).
+ *
+ * Queue wait is the time a task spent in the commService queue before it made this call
+ * (only the first call a task makes has a queue wait). Service time is the time from starting
+ * to write the call to having read its response (the Bluetooth round trip).
+ *
+ * All times are in microseconds.
+ */
+public class LatencyBreakdown {
+
+    public final int command;
+
+    public final long serviceCount;
+    public final long serviceP50;
+    public final long serviceP99;
+    public final long serviceP999;
+
+    public final long queueWaitCount;
+    public final long queueWaitP50;
+    public final long queueWaitP99;
+    public final long queueWaitP999;
+
+    LatencyBreakdown(int command, LatencyHistogram service, LatencyHistogram queueWait) {
+        this.command = command;
+        serviceCount = service == null ? 0 : service.getCount();
+        serviceP50 = service == null ? 0 : service.getPercentileMicros(0.5);
+        serviceP99 = service == null ? 0 : service.getPercentileMicros(0.99);
+        serviceP999 = service == null ? 0 : service.getPercentileMicros(0.999);
+        queueWaitCount = queueWait == null ? 0 : queueWait.getCount();
+        queueWaitP50 = queueWait == null ? 0 : queueWait.getPercentileMicros(0.5);
+        queueWaitP99 = queueWait == null ? 0 : queueWait.getPercentileMicros(0.99);
+        queueWaitP999 = queueWait == null ? 0 : queueWait.getPercentileMicros(0.999);
+    }
+
+    @Override
+    public String toString() {
+        return "0x" + Integer.toHexString(command)
+                + " service p50/p99/p999=" + serviceP50 + "/" + serviceP99 + "/" + serviceP999 + "us (" + serviceCount + ")"
+                + " queue wait p50/p99/p999=" + queueWaitP50 + "/" + queueWaitP99 + "/" + queueWaitP999 + "us (" + queueWaitCount + ")";
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size histogram of durations, in microseconds.
+ *
+ * Every power of two is split into 8 buckets, so a percentile is never off by more than 12.5%,
+ * from 1 microsecond up to about 35 minutes. Recording is lock free and never allocates,
+ * so it is cheap enough to leave on all the time.
+ */
+public class LatencyHistogram {
+
+    // Buckets per power of two = 2^SUB_BITS
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // The largest value we keep track of (anything bigger goes in the last bucket)
+    private static final long MAX_MICROS = (1L << 31) - 1;
+    /**
+     * The number of buckets
+     */
+    public static final int BUCKETS = bucketOf(MAX_MICROS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Find the bucket for a value
+     * @param micros
+     * @return
+     */
+    static int bucketOf(long micros) {
+        if (micros < SUB_COUNT) {
+            return (int) Math.max(0, micros);
+        }
+        if (micros > MAX_MICROS) {
+            micros = MAX_MICROS;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >> (msb - SUB_BITS)) & (SUB_COUNT - 1);
+        return (msb - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * The largest value that goes in a bucket
+     * @param bucket
+     * @return Microseconds
+     */
+    public static long bucketUpperBound(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        int sub = bucket % SUB_COUNT;
+        return ((long) (SUB_COUNT + sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Record a duration
+     * @param nanos Nanoseconds (e.g. from System.nanoTime())
+     */
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    /**
+     * Record a duration
+     * @param micros Microseconds
+     */
+    public void recordMicros(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        counts.incrementAndGet(bucketOf(micros));
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+    /**
+     * How many durations have been recorded
+     * @return
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * The sum of all recorded durations
+     * @return Microseconds
+     */
+    public long getSumMicros() {
+        return sumMicros.get();
+    }
+
+    /**
+     * The longest recorded duration
+     * @return Microseconds
+     */
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * How many durations are in a bucket
+     * @param bucket
+     * @return
+     */
+    public long getBucketCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    /**
+     * How many durations were at or below a value (to the precision of the buckets; a bucket
+     * is only counted if all of it is at or below the value)
+     * @param micros
+     * @return
+     */
+    public long getCountAtOrBelow(long micros) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS && bucketUpperBound(i) <= micros; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Get a percentile (e.g. 0.99 for p99)
+     * @param fraction 0.0 - 1.0
+     * @return Microseconds (the top of the bucket it falls in), or 0 if nothing was recorded
+     */
+    public long getPercentileMicros(double fraction) {
+        // Use the buckets for the total, so a record() in progress can't push us off the end
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * total);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+
+    /**
+     * Forget everything recorded so far
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sumMicros.set(0);
+        maxMicros.set(0);
+    }
+
+}
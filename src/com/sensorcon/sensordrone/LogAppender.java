@@ -0,0 +1,196 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes log messages on a background thread, for every Logger in the process.
+ *
+ * Messages go into a fixed ring of reusable entries (packets are copied into the entry's own buffer),
+ * so logging doesn't allocate. The thread puts each line together in a reused StringBuilder and hands
+ * it to the Logger's write(). If the ring is full, the message is dropped (and counted) rather than
+ * making the caller wait.
+ */
+final class LogAppender implements Runnable {
+
+    static final int KIND_TEXT = 0;
+    static final int KIND_LONG = 1;
+    static final int KIND_DOUBLE = 2;
+    static final int KIND_HEX = 3;
+    static final int KIND_BYTES = 4;
+    static final int KIND_FLOAT = 5;
+
+    static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final int CAPACITY = 1024;
+
+    /**
+     * One message
+     */
+    private static final class Entry {
+        Logger logger;
+        int level;
+        String TAG;
+        String msg;
+        int kind;
+        long longValue;
+        double doubleValue;
+        byte[] bytes = new byte[32];
+        int length;
+
+        void copyFrom(Entry other) {
+            logger = other.logger;
+            level = other.level;
+            TAG = other.TAG;
+            msg = other.msg;
+            kind = other.kind;
+            longValue = other.longValue;
+            doubleValue = other.doubleValue;
+            length = other.length;
+            if (length > 0) {
+                if (bytes.length < length) {
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                }
+                System.arraycopy(other.bytes, 0, bytes, 0, length);
+            }
+            // Don't hold on to the Logger
+            other.logger = null;
+        }
+    }
+
+    private static final Object lock = new Object();
+    private static final Entry[] ring = new Entry[CAPACITY];
+    private static int head = 0;
+    private static int count = 0;
+    // True while the thread is writing an entry it took out of the ring
+    private static boolean writing = false;
+    private static Thread thread;
+    private static final AtomicLong dropped = new AtomicLong();
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            ring[i] = new Entry();
+        }
+    }
+
+    private LogAppender() {
+    }
+
+    static void append(Logger logger, int level, String TAG, String msg, int kind,
+                       long longValue, double doubleValue, byte[] bytes) {
+        synchronized (lock) {
+            if (count == CAPACITY) {
+                dropped.incrementAndGet();
+                return;
+            }
+            Entry entry = ring[(head + count) % CAPACITY];
+            entry.logger = logger;
+            entry.level = level;
+            entry.TAG = TAG;
+            entry.msg = msg;
+            entry.kind = kind;
+            entry.longValue = longValue;
+            entry.doubleValue = doubleValue;
+            entry.length = 0;
+            if (bytes != null) {
+                if (entry.bytes.length < bytes.length) {
+                    entry.bytes = new byte[Math.max(bytes.length, entry.bytes.length * 2)];
+                }
+                System.arraycopy(bytes, 0, entry.bytes, 0, bytes.length);
+                entry.length = bytes.length;
+            }
+            count++;
+            if (thread == null) {
+                thread = new Thread(new LogAppender(), "sensordrone-logger");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    static boolean flush(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (lock) {
+            while (count > 0 || writing) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return false;
+                }
+                lock.wait(wait);
+            }
+        }
+        return true;
+    }
+
+    static long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void run() {
+        Entry current = new Entry();
+        StringBuilder line = new StringBuilder(256);
+        while (true) {
+            synchronized (lock) {
+                writing = false;
+                lock.notifyAll();
+                while (count == 0) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        // Keep going; we're a daemon thread
+                    }
+                }
+                current.copyFrom(ring[head]);
+                head = (head + 1) % CAPACITY;
+                count--;
+                writing = true;
+            }
+            line.setLength(0);
+            if (current.msg != null) {
+                line.append(current.msg);
+            }
+            switch (current.kind) {
+                case KIND_LONG:
+                    line.append(current.longValue);
+                    break;
+                case KIND_DOUBLE:
+                    line.append(current.doubleValue);
+                    break;
+                case KIND_FLOAT:
+                    line.append((float) current.doubleValue);
+                    break;
+                case KIND_HEX:
+                    line.append(Long.toHexString(current.longValue));
+                    break;
+                case KIND_BYTES:
+                    Logger.appendHex(line, current.bytes, current.length);
+                    break;
+                default:
+                    break;
+            }
+            try {
+                current.logger.write(current.level, current.TAG, line.toString());
+            } catch (RuntimeException e) {
+                // A broken Logger shouldn't stop the others
+            }
+            current.logger = null;
+        }
+    }
+
+}
@@ -20,14 +20,36 @@ package com.sensorcon.sensordrone;
  * This is an abstract class that MUST be implemented in android/java/whatever.
  * The Drone class needs a Logger, or else it will throw a null pointer exception.
  *
- * If the CoreDrone DEBUG boolean is set to TRUE, then a lot of information with be dumped
- * to some type of standard out.
- *
  * It is platform specific, but this can/is simply implemented as a "System.out.println()"
  * for Java or Log.d() for Android.
+ *
+ * What gets logged is set at runtime with setLevel() (or CoreDrone.setLogLevel()); the CoreDrone DEBUG
+ * boolean only picks the starting level. The library logs through info(), debug(), tx() and rx():
+ * they check the level first, and only pass on the message's parts (a constant string and a number,
+ * or a copy of a packet). The line is put together and written later on a background thread
+ * (see LogAppender), so logging never holds up communications, and costs next to nothing when it's off.
  */
 public abstract class Logger {
 
+    /**
+     * Log nothing
+     */
+    public static final int LEVEL_OFF = 0;
+    /**
+     * Log useful info
+     */
+    public static final int LEVEL_INFO = 1;
+    /**
+     * Also log calculated values and other debug messages
+     */
+    public static final int LEVEL_DEBUG = 2;
+    /**
+     * Also log every packet sent (TX) and received (RX)
+     */
+    public static final int LEVEL_TRACE = 3;
+
+    private volatile int level = CoreDrone.DEBUG ? LEVEL_TRACE : LEVEL_OFF;
+
 
     abstract public void txLogger(String TAG, byte[] data, boolean debug);
 
@@ -37,5 +59,172 @@ public abstract class Logger {
 
     abstract public void infoLogger(String TAG, String msg, boolean display);
 
+    /**
+     * Set what gets logged
+     * @param level LEVEL_OFF, LEVEL_INFO, LEVEL_DEBUG or LEVEL_TRACE
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    /**
+     * Get what gets logged
+     * @return
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Check if a level is being logged (e.g. before putting together an expensive message)
+     * @param level
+     * @return
+     */
+    public boolean isEnabled(int level) {
+        return level != LEVEL_OFF && this.level >= level;
+    }
+
+    /**
+     * Log useful info
+     * @param TAG
+     * @param msg
+     */
+    public void info(String TAG, String msg) {
+        if (level >= LEVEL_INFO) {
+            LogAppender.append(this, LEVEL_INFO, TAG, msg, LogAppender.KIND_TEXT, 0, 0, null);
+        }
+    }
+
+    /**
+     * Log a debug message
+     * @param TAG
+     * @param msg
+     */
+    public void debug(String TAG, String msg) {
+        if (level >= LEVEL_DEBUG) {
+            LogAppender.append(this, LEVEL_DEBUG, TAG, msg, LogAppender.KIND_TEXT, 0, 0, null);
+        }
+    }
+
+    /**
+     * Log a debug message followed by a number (e.g. debug(TAG, "ADC: ", ADC))
+     * @param TAG
+     * @param msg
+     * @param value
+     */
+    public void debug(String TAG, String msg, long value) {
+        if (level >= LEVEL_DEBUG) {
+            LogAppender.append(this, LEVEL_DEBUG, TAG, msg, LogAppender.KIND_LONG, value, 0, null);
+        }
+    }
+
+    /**
+     * Log a debug message followed by a number
+     * @param TAG
+     * @param msg
+     * @param value
+     */
+    public void debug(String TAG, String msg, double value) {
+        if (level >= LEVEL_DEBUG) {
+            LogAppender.append(this, LEVEL_DEBUG, TAG, msg, LogAppender.KIND_DOUBLE, 0, value, null);
+        }
+    }
+
+    /**
+     * Log a debug message followed by a number
+     * @param TAG
+     * @param msg
+     * @param value
+     */
+    public void debug(String TAG, String msg, float value) {
+        if (level >= LEVEL_DEBUG) {
+            LogAppender.append(this, LEVEL_DEBUG, TAG, msg, LogAppender.KIND_FLOAT, 0, value, null);
+        }
+    }
+
+    /**
+     * Log a debug message followed by a number in hex
+     * @param TAG
+     * @param msg
+     * @param value
+     */
+    public void debugHex(String TAG, String msg, long value) {
+        if (level >= LEVEL_DEBUG) {
+            LogAppender.append(this, LEVEL_DEBUG, TAG, msg, LogAppender.KIND_HEX, value, 0, null);
+        }
+    }
+
+    /**
+     * Log a packet sent to the Sensordrone (the bytes are copied, so the array can be reused)
+     * @param TAG
+     * @param data
+     */
+    public void tx(String TAG, byte[] data) {
+        if (level >= LEVEL_TRACE) {
+            LogAppender.append(this, LEVEL_TRACE, TAG, "TX:", LogAppender.KIND_BYTES, 0, 0, data);
+        }
+    }
+
+    /**
+     * Log a packet received from the Sensordrone (the bytes are copied, so the array can be reused)
+     * @param TAG
+     * @param data
+     */
+    public void rx(String TAG, byte[] data) {
+        if (level >= LEVEL_TRACE) {
+            LogAppender.append(this, LEVEL_TRACE, TAG, "RX:", LogAppender.KIND_BYTES, 0, 0, data);
+        }
+    }
+
+    /**
+     * Write a finished line. Called on the LogAppender thread, one line at a time.
+     *
+     * The default passes it to infoLogger() or debugLogger(); platform Loggers can write it directly.
+     * @param level
+     * @param TAG
+     * @param line
+     */
+    protected void write(int level, String TAG, String line) {
+        if (level == LEVEL_INFO) {
+            infoLogger(TAG, line, true);
+        } else {
+            debugLogger(TAG, line, true);
+        }
+    }
+
+    /**
+     * Add a packet to a StringBuilder as hex (e.g. " 50 2 10")
+     * @param out
+     * @param data
+     * @param length How many bytes of data to add
+     */
+    protected static void appendHex(StringBuilder out, byte[] data, int length) {
+        for (int i = 0; i < length; i++) {
+            int b = data[i] & 0xff;
+            out.append(' ');
+            if (b >= 0x10) {
+                out.append(LogAppender.HEX[b >> 4]);
+            }
+            out.append(LogAppender.HEX[b & 0xf]);
+        }
+    }
+
+    /**
+     * Wait for everything logged so far to be written
+     * @param timeoutMillis
+     * @return false if it didn't happen in time
+     * @throws InterruptedException
+     */
+    public static boolean flush(long timeoutMillis) throws InterruptedException {
+        return LogAppender.flush(timeoutMillis);
+    }
+
+    /**
+     * How many messages were thrown away because they were logged faster than they could be written
+     * @return
+     */
+    public static long getDroppedCount() {
+        return LogAppender.getDroppedCount();
+    }
 
 }
@@ -0,0 +1,104 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+/**
+ * The median of the last few measurements, which drops spikes (e.g. a single bad gas reading)
+ * without blurring steps as much as an average does.
+ *
+ * The measurements are kept in a ring, and also in a sorted copy that's updated in place
+ * (one removal and one insertion per measurement), so there's no allocation or sorting.
+ * NaN measurements are passed through without being kept.
+ */
+public class MedianFilter implements SignalFilter {
+
+    private final float[] ring;
+    private final float[] sorted;
+    private int next = 0;
+    private int size = 0;
+
+    /**
+     * Our default Constructor
+     * @param window How many measurements to take the median of (an odd number keeps it a real measurement)
+     */
+    public MedianFilter(int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be > 0");
+        }
+        ring = new float[window];
+        sorted = new float[window];
+    }
+
+    @Override
+    public float apply(float value, long time) {
+        if (Float.isNaN(value)) {
+            return value;
+        }
+        if (size == ring.length) {
+            remove(ring[next]);
+        }
+        ring[next] = value;
+        next = (next + 1) % ring.length;
+        insert(value);
+        int middle = size / 2;
+        return (size & 1) == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    private void remove(float value) {
+        int i = find(value);
+        System.arraycopy(sorted, i + 1, sorted, i, size - i - 1);
+        size--;
+    }
+
+    private void insert(float value) {
+        int i = find(value);
+        System.arraycopy(sorted, i, sorted, i + 1, size - i);
+        sorted[i] = value;
+        size++;
+    }
+
+    /**
+     * Where a value is (or goes) in the sorted copy
+     */
+    private int find(float value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public void reset() {
+        next = 0;
+        size = 0;
+    }
+
+    /**
+     * How many measurements the median is taken over
+     * @return
+     */
+    public int getWindow() {
+        return ring.length;
+    }
+
+}
@@ -89,16 +89,14 @@ public class Power_V1 extends DroneSensor {
                 byte[] call = {0x50, 0x02, 0x22, 0x00};
                 byte response[] = sdCallAndResponse(call);
                 if (response != null) {
-                    int MSB = response[1] & 0xff;
-                    int LSB = response[0] & 0xff;
-                    int ADC = (MSB << 8) + LSB;
+                    int ADC = RegisterCodec.uint16LE(response, 0);
                     float voltage = (float) (((float) ADC / 4095.0) * 6.0);
                     myDrone.batteryVoltage_Volts = voltage;
-                    logger.infoLogger(TAG, "ADC: "
-                            + Integer.toHexString(MSB & 0xff)
-                            + Integer.toHexString(LSB & 0xff) +
-                            " Voltage: " + String.valueOf(myDrone.batteryVoltage_Volts)
-                            , CoreDrone.DEBUG);
+                    if (logger.isEnabled(Logger.LEVEL_INFO)) {
+                        logger.info(TAG, "ADC: "
+                                + Integer.toHexString(ADC) +
+                                " Voltage: " + String.valueOf(myDrone.batteryVoltage_Volts));
+                    }
                     // Notify that the battery voltage has been measured
                     myDrone.notifyDroneEventHandler(batteryVoltage);
                     myDrone.notifyDroneStatusListener(batteryVoltage);
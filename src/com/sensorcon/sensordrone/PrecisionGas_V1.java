@@ -28,7 +28,7 @@ public class PrecisionGas_V1 extends DroneSensor {
     /**
      * These are the multipliers needed for the appropriate (automatic) gain stage on the sensor
      */
-    protected final int gainRes[] =
+    protected static final int gainRes[] =
             {
                     2200000,
                     301961,
@@ -84,6 +84,26 @@ public class PrecisionGas_V1 extends DroneSensor {
         super(drone, "PrecisionGas_V1");
     }
 
+    /**
+     * Calculate the gas concentration from the sensor's raw data
+     * @param ADC The raw ADC value
+     * @param gainStage The gain stage the sensor was using (0-7)
+     * @param baseline The calibrated baseline (as an ADC value)
+     * @param sensitivity The calibrated sensitivity (nA/ppm)
+     * @return Concentration in ppm
+     */
+    public static float ppm(int ADC, int gainStage, float baseline, float sensitivity) {
+        // PPM Calculation
+        float deltaADC = (float) ADC - baseline;
+        float gasResponse = (float) ((deltaADC * 3.0e9) / 4096.0);
+        // Uncomment the following if statement if you don't display negative values
+        // (e.g. from perhaps a small baseline shift)
+//        if (deltaADC < 0.0) {
+//            gasResponse = 0;
+//        }
+        return gasResponse / (sensitivity * (float) gainRes[gainStage]);
+    }
+
     /**
      * Take a measurement
      * @return
@@ -101,22 +121,13 @@ public class PrecisionGas_V1 extends DroneSensor {
                 byte[] response = sdCallAndResponse(call);
 
                 if (response != null) {
-                    int LSB = 0x000000FF & response[0];
-                    int MSB = 0x000000FF & response[1];
-                    int gainStage = 0x000000FF & response[2];
-                    int ADC = (MSB << 8) + LSB;
-                    logger.debugLogger(TAG, "ADC: " + String.valueOf(ADC), CoreDrone.DEBUG);
-                    logger.debugLogger(TAG, "Gain stage: " + String.valueOf(gainStage), CoreDrone.DEBUG);
-                    logger.debugLogger(TAG, "Gain Resistor: " + String.valueOf(gainRes[gainStage]), CoreDrone.DEBUG);
-                    // PPM Calculation
-                    float deltaADC = (float) ADC - calibratedBaseline;
-                    float gasResponse = (float) ((deltaADC * 3.0e9) / 4096.0);
-                    // Uncomment the following if statement if you don't display negative values
-                    // (e.g. from perhaps a small baseline shift)
-//                    if (deltaADC < 0.0) {
-//                        gasResponse = 0;
-//                    }
-                    myDrone.precisionGas_ppmCarbonMonoxide = gasResponse / (calibratedSensitivity * (float) gainRes[gainStage]);
+                    int ADC = RegisterCodec.uint16LE(response, 0);
+                    int gainStage = RegisterCodec.uint8(response[2]);
+                    logger.debug(TAG, "ADC: ", ADC);
+                    logger.debug(TAG, "Gain stage: ", gainStage);
+                    logger.debug(TAG, "Gain Resistor: ", gainRes[gainStage]);
+                    myDrone.precisionGas_ppmCarbonMonoxide = ppm(ADC, gainStage, calibratedBaseline, calibratedSensitivity);
+                    myDrone.recordRawSample(CoreDrone.QS_TYPE_PRECISION_GAS, new int[]{ADC, gainStage});
 
                     myDrone.notifyDroneEventHandler(measured);
                     myDrone.notifyDroneEventListener(measured);
@@ -149,14 +160,7 @@ public class PrecisionGas_V1 extends DroneSensor {
                 byte[] call = {0x50, 0x02, 0x40, 0x00};
                 byte[] response = sdCallAndResponse(call);
                 if (response != null) {
-                    int sensitivityLSB = response[0] & 0x000000ff;
-                    int sensitivityMSB = ((response[1] & 0x000000ff) << 8);
-                    calibratedSensitivity = (float) ((sensitivityMSB + sensitivityLSB) / 1000.0);
-                    logger.debugLogger(TAG, "Sensitivity set to " + String.valueOf(calibratedSensitivity), CoreDrone.DEBUG);
-                    int baselineLSB = response[2] & 0x000000ff;
-                    int baselineMSB = ((response[3] & 0x000000ff) << 8);
-                    calibratedBaseline = (float) (baselineMSB + baselineLSB);
-                    logger.debugLogger(TAG, "Baseline set to " + String.valueOf(calibratedBaseline), CoreDrone.DEBUG);
+                    parseCalibrationData(response);
                 }
             }
         };
@@ -169,6 +173,28 @@ public class PrecisionGas_V1 extends DroneSensor {
         return true;
     }
 
+    /**
+     * Sets the calibration values from a 0x40 response
+     * @param response
+     */
+    void parseCalibrationData(byte[] response) {
+        calibratedSensitivity = (float) (RegisterCodec.uint16LE(response, 0) / 1000.0);
+        logger.debug(TAG, "Sensitivity set to ", calibratedSensitivity);
+        calibratedBaseline = (float) RegisterCodec.uint16LE(response, 2);
+        logger.debug(TAG, "Baseline set to ", calibratedBaseline);
+        myDrone.setPrecisionGasCalibration(calibratedBaseline, calibratedSensitivity);
+    }
+
+    /**
+     * Sets the calibration values without asking the Sensordrone (e.g. remembered from last time)
+     * @param baseline
+     * @param sensitivity
+     */
+    void setCalibrationData(float baseline, float sensitivity) {
+        calibratedBaseline = baseline;
+        calibratedSensitivity = sensitivity;
+    }
+
     /**
      * Enable the sensor
      * @return
@@ -262,9 +288,11 @@ public class PrecisionGas_V1 extends DroneSensor {
             public void run() {
                 final byte[] call = {0x50, 0x06, 0x10, 0x00, 0x48, (byte) Register, 0x02, 0x00};
                 byte[] data = sdCallAndResponse(call);
-                logger.debugLogger(TAG, "Register " +
-                        Integer.toHexString(Register & 0xff) + ": " +
-                        Integer.toHexString(data[0] & 0xff), myDrone.DEBUG);
+                if (logger.isEnabled(Logger.LEVEL_DEBUG)) {
+                    logger.debug(TAG, "Register " +
+                            Integer.toHexString(Register & 0xff) + ": " +
+                            Integer.toHexString(data[0] & 0xff));
+                }
             }
         };
 
@@ -295,10 +323,8 @@ public class PrecisionGas_V1 extends DroneSensor {
                 byte[] response = sdCallAndResponse(call);
 
                 if (response != null) {
-                    int LSB = 0x000000FF & response[0];
-                    int MSB = 0x000000FF & response[1];
-                    int gainStage = 0x000000FF & response[2];
-                    int ADC = (MSB << 8) + LSB;
+                    int ADC = RegisterCodec.uint16LE(response, 0);
+                    int gainStage = RegisterCodec.uint8(response[2]);
 
                     PRECISION_GAS_ADC = ADC;
 
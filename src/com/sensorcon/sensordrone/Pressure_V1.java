@@ -15,7 +15,6 @@
  */
 package com.sensorcon.sensordrone;
 
-import java.math.BigInteger;
 import java.util.concurrent.RejectedExecutionException;
 
 /**
@@ -437,13 +436,13 @@ public class Pressure_V1 extends DroneSensor {
                 byte[] getData = {0x50, 0x05, 0x10, 0x00, 0x60, 0x01, 0x05};
                 byte[] sensorData = sdCallAndResponse(getData);
                 if (sensorData != null) {
+                    // Registers 0x04 and 0x05 (the 4th and 5th bytes read):
                     // The integer portion is in 2's Compliment
-                    byte[] tempByte = {sensorData[6]};
-                    BigInteger bigTemp = new BigInteger(tempByte);
-                    // The decimal portion is NOT in 2's Compliment
-                    int tempDecimal = 0x000000ff & (int) sensorData[7];
-                    TEMPERATURE_CELSIUS = (float) (bigTemp.floatValue() + (tempDecimal >> 4) / 16.0);
-                    TEMPERATURE_KELVIN = (float) (TEMPERATURE_CELSIUS - 273.15);
+                    int tempInteger = RegisterCodec.int8(sensorData[3]);
+                    // The decimal portion is NOT in 2's Compliment (4 bits, left justified)
+                    int tempDecimal = RegisterCodec.uint8(sensorData[4]) >> 4;
+                    TEMPERATURE_CELSIUS = (float) (tempInteger + RegisterCodec.fixedPoint(tempDecimal, 4));
+                    TEMPERATURE_KELVIN = (float) (TEMPERATURE_CELSIUS + 273.15);
                     TEMPERATURE_FAHRENHEIT = (float) (TEMPERATURE_CELSIUS * (9.0 / 5.0) + 32.0);
                 }
             }
@@ -458,6 +457,16 @@ public class Pressure_V1 extends DroneSensor {
     }
 
 
+    /**
+     * Convert the sensor's raw 20 bit pressure reading to Pascals
+     * @param rawPressure
+     * @return
+     */
+    public static float pascals(int rawPressure) {
+        // Pressure is a 20 bit Q18.2 fixed point number (Pascals)
+        return (float) RegisterCodec.fixedPoint(rawPressure, 2);
+    }
+
     /**
      * Measure the Pressure
      * @return
@@ -475,15 +484,11 @@ public class Pressure_V1 extends DroneSensor {
                 byte[] sensorData = sdCallAndResponse(getData);
                 if (sensorData != null) {
 
-                    byte[] presByte = {sensorData[0], sensorData[1]};
-                    // Two's compliment is easy with a BigInteger :-)
-                    BigInteger bigPres = new BigInteger(presByte);
-                    int presIntBits = 0x000000ff & ((int) sensorData[2] & 0x0c);
-                    int presDecBits = 0x000000ff & ((int) sensorData[2] & 0x03);
-                    myDrone.pressure_Pascals = (float) ((bigPres.intValue() << 2)
-                            + presIntBits + (presDecBits / 4.0));
+                    int rawPressure = RegisterCodec.uint20BE(sensorData, 0);
+                    myDrone.pressure_Pascals = pascals(rawPressure);
                     myDrone.pressure_Atmospheres = (float) (myDrone.pressure_Pascals * 9.86923267e-6);
                     myDrone.pressure_Torr = (float) (myDrone.pressure_Pascals * 0.00750061683);
+                    myDrone.recordRawSample(CoreDrone.QS_TYPE_PRESSURE, new int[]{rawPressure});
                     // Notify the listener
                     myDrone.notifyDroneEventHandler(measured);
                     myDrone.notifyDroneEventListener(measured);
@@ -517,18 +522,13 @@ public class Pressure_V1 extends DroneSensor {
                 byte[] getData = {0x50, 0x05, 0x10, 0x00, 0x60, 0x01, 0x05};
                 byte[] sensorData = sdCallAndResponse(getData);
                 if (sensorData != null) {
-                    // The Integer portion of the pressure is in Two's Compliment
-                    byte[] presByte = {sensorData[0], sensorData[1]};
-                    BigInteger bigPres = new BigInteger(presByte);
-                    int presIntBits = 0x000000ff & ((int) sensorData[2] & 0x0c);
-                    int presDecBits = 0x000000ff & ((int) sensorData[2] & 0x03);
-                    float pressurePascals = (float) ((bigPres.intValue() << 2)
-                            + presIntBits + (presDecBits / 4.0));
+                    int rawPressure = RegisterCodec.uint20BE(sensorData, 0);
+                    float pressurePascals = pascals(rawPressure);
                     // Fancy math goes here
-                    float pRatio = (float) (pressurePascals / 101326.0);
-                    float altitudeMeters = (float) ((1 - Math.pow(pRatio, 0.1902632)) * 44330.77);
+                    float altitudeMeters = (float) myDrone.conversions.altitudeMeters(pressurePascals);
                     myDrone.altitude_Feet = (float) (altitudeMeters * 3.2084);
                     myDrone.altitude_Meters = altitudeMeters;
+                    myDrone.recordRawSample(CoreDrone.QS_TYPE_ALTITUDE, new int[]{rawPressure});
                     // Notify the listener
                     myDrone.notifyDroneEventHandler(altitudeMeasured);
                     myDrone.notifyDroneEventListener(altitudeMeasured);
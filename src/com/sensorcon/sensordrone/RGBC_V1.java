@@ -43,6 +43,234 @@ public class RGBC_V1 extends DroneSensor {
      */
     private DroneEventObject status = new DroneEventObject(DroneEventObject.droneEventType.RGBC_STATUS_CHECKED);
 
+    /*
+     * Integration time settings (timing register)
+     */
+    /**
+     * 12ms integration time: fastest, for bright light.
+     */
+    public static final int INTEGRATION_12MS = 0;
+    /**
+     * 100ms integration time (the default).
+     */
+    public static final int INTEGRATION_100MS = 1;
+    /**
+     * 400ms integration time: slowest, for dim light.
+     */
+    public static final int INTEGRATION_400MS = 2;
+
+    /*
+     * Gain settings (gain register)
+     */
+    /**
+     * 1x gain (the default)
+     */
+    public static final int GAIN_1X = 0;
+    /**
+     * 4x gain
+     */
+    public static final int GAIN_4X = 1;
+    /**
+     * 16x gain
+     */
+    public static final int GAIN_16X = 2;
+    /**
+     * 64x gain
+     */
+    public static final int GAIN_64X = 3;
+
+    // Integration time in ms, and largest count, for each integration setting
+    private static final int[] INTEGRATION_MS = {12, 100, 400};
+    private static final int[] FULL_SCALE = {4095, 65535, 65535};
+    // Multiplier for each gain setting
+    private static final int[] GAIN_MULTIPLIER = {1, 4, 16, 64};
+
+    /*
+     * The steps the auto-ranging moves through, from least to most sensitive.
+     * We stay at 100ms as long as we can, since 400ms is slow, and 12ms has poor resolution.
+     */
+    private static final int[][] AUTO_RANGE_STEPS = {
+            {INTEGRATION_12MS, GAIN_1X},
+            {INTEGRATION_100MS, GAIN_1X},
+            {INTEGRATION_100MS, GAIN_4X},
+            {INTEGRATION_100MS, GAIN_16X},
+            {INTEGRATION_100MS, GAIN_64X},
+            {INTEGRATION_400MS, GAIN_64X}
+    };
+    // Go less sensitive if the clear channel is above this fraction of full scale
+    private static final double AUTO_RANGE_HIGH = 0.8;
+    // Go more sensitive if the clear channel would still be below this fraction of full scale afterwards
+    private static final double AUTO_RANGE_LOW = 0.5;
+
+    // The current settings
+    private int integration = INTEGRATION_100MS;
+    private int gain = GAIN_1X;
+    private boolean autoRange = false;
+    private int autoRangeStep = 1;
+    // When the settings last changed; readings taken before a full integration period
+    // has passed since then are a mix of old and new settings, so measure() puts the read off until then.
+    private long settingsChangedAt = 0;
+
+    /**
+     * Writes the integration time and gain registers.
+     * Must be called from the commService.
+     * @return
+     */
+    private byte[] writeSettings() {
+        byte[] intTime = {0x50, 0x07, 0x11, 0x00, 0x39, 0x01, (byte) 0x81, (byte) integration, 0x00};
+        // Gain is bits 5:4 (prescaler bits 2:0 are left at divide by 1)
+        byte[] gainCall = {0x50, 0x07, 0x11, 0x00, 0x39, 0x01, (byte) 0x87, (byte) (gain << 4), 0x00};
+        byte[][] responses = sdPipelinedCallAndResponse(new byte[][]{intTime, gainCall});
+        settingsChangedAt = System.currentTimeMillis();
+        if (responses == null) {
+            return null;
+        }
+        return responses[1];
+    }
+
+    /**
+     * Sends new settings if the sensor is running, otherwise they're used on the next enable.
+     * @return
+     */
+    private boolean applySettings() {
+        if (!myDrone.isConnected || !myDrone.rgbcStatus) {
+            return true;
+        }
+
+        Runnable settingsRunnable = new Runnable() {
+            @Override
+            public void run() {
+                writeSettings();
+            }
+        };
+
+        try {
+            myDrone.commService.submit(settingsRunnable);
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Set the integration time. Turns auto-ranging off.
+     * Shorter times measure faster, longer times work in dimmer light.
+     * @param integrationTime One of INTEGRATION_12MS, INTEGRATION_100MS, or INTEGRATION_400MS
+     * @return
+     */
+    public boolean setIntegrationTime(int integrationTime) {
+        if (integrationTime < INTEGRATION_12MS || integrationTime > INTEGRATION_400MS) {
+            return false;
+        }
+        autoRange = false;
+        integration = integrationTime;
+        return applySettings();
+    }
+
+    /**
+     * Set the gain. Turns auto-ranging off.
+     * @param gainSetting One of GAIN_1X, GAIN_4X, GAIN_16X, or GAIN_64X
+     * @return
+     */
+    public boolean setGain(int gainSetting) {
+        if (gainSetting < GAIN_1X || gainSetting > GAIN_64X) {
+            return false;
+        }
+        autoRange = false;
+        gain = gainSetting;
+        return applySettings();
+    }
+
+    /**
+     * Turn auto-ranging on or off. When on, the integration time and gain are adjusted
+     * after every measurement based on the clear channel, to keep it from saturating in bright
+     * light, and to keep resolution in dim light.
+     * @param onOff
+     * @return
+     */
+    public boolean setAutoRange(boolean onOff) {
+        autoRange = onOff;
+        if (!onOff) {
+            return true;
+        }
+        // Start from the most sensitive step that isn't more sensitive than what we have now
+        int current = INTEGRATION_MS[integration] * GAIN_MULTIPLIER[gain];
+        autoRangeStep = 0;
+        for (int i = 0; i < AUTO_RANGE_STEPS.length; i++) {
+            if (sensitivity(i) <= current) {
+                autoRangeStep = i;
+            }
+        }
+        integration = AUTO_RANGE_STEPS[autoRangeStep][0];
+        gain = AUTO_RANGE_STEPS[autoRangeStep][1];
+        return applySettings();
+    }
+
+    /**
+     * Check if auto-ranging is on
+     * @return
+     */
+    public boolean getAutoRange() {
+        return autoRange;
+    }
+
+    /**
+     * The current integration time setting
+     * @return One of INTEGRATION_12MS, INTEGRATION_100MS, or INTEGRATION_400MS
+     */
+    public int getIntegrationTime() {
+        return integration;
+    }
+
+    /**
+     * The current gain setting
+     * @return One of GAIN_1X, GAIN_4X, GAIN_16X, or GAIN_64X
+     */
+    public int getGain() {
+        return gain;
+    }
+
+    /**
+     * How long the sensor currently takes to produce a new reading.
+     * Measuring faster than this just returns the same data again.
+     * @return Time in milliseconds
+     */
+    public int getIntegrationPeriod() {
+        return INTEGRATION_MS[integration];
+    }
+
+    private static int sensitivity(int step) {
+        return INTEGRATION_MS[AUTO_RANGE_STEPS[step][0]] * GAIN_MULTIPLIER[AUTO_RANGE_STEPS[step][1]];
+    }
+
+    /**
+     * Pick the auto-range step for the next measurement, based on the raw clear channel.
+     * Must be called from the commService.
+     * @param rawClear
+     */
+    private void autoRange(int rawClear) {
+        int step = autoRangeStep;
+        if (rawClear > AUTO_RANGE_HIGH * FULL_SCALE[integration]) {
+            // Too bright; go down a step
+            if (step > 0) {
+                step--;
+            }
+        } else if (step < AUTO_RANGE_STEPS.length - 1) {
+            // Would we still have some head room one step up?
+            int next = step + 1;
+            double predicted = rawClear * ((double) sensitivity(next) / sensitivity(step));
+            if (predicted < AUTO_RANGE_LOW * FULL_SCALE[AUTO_RANGE_STEPS[next][0]]) {
+                step = next;
+            }
+        }
+        if (step != autoRangeStep) {
+            autoRangeStep = step;
+            integration = AUTO_RANGE_STEPS[step][0];
+            gain = AUTO_RANGE_STEPS[step][1];
+            writeSettings();
+        }
+    }
+
     /**
      * Enable the RBC sensor
      * @return
@@ -58,21 +286,17 @@ public class RGBC_V1 extends DroneSensor {
             public void run() {
                 byte[] transistorOn = {0x50, 0x03, 0x35, 0x01, 0x00};
                 byte[] powerOn = {0x50, 0x07, 0x11, 0x00, 0x39, 0x01, (byte) 0x80, 0x01, 0x00};
-                //byte[] intTime_12 = { 0x50, 0x07, 0x11, 0x00, 0x39, 0x01, (byte) 0x81, 0x00, 0x00 };
-                byte[] intTime_100 = {0x50, 0x07, 0x11, 0x00, 0x39, 0x01, (byte) 0x81, 0x01, 0x00};
-                //byte[] intTime_400 = { 0x50, 0x07, 0x11, 0x00, 0x39, 0x01, (byte) 0x81, 0x02, 0x00 };
                 byte[] initADC = {0x50, 0x07, 0x11, 0x00, 0x39, 0x01, (byte) 0x80, 0x03, 0x00};
 
-                // Default integration time is 12ms.
-                // We set it to 100 for response vs. performance
-                // The other valid settings are commented out above
+                // The sensor's default integration time is 12ms.
+                // We default to 100 for response vs. performance (see setIntegrationTime/setGain)
 
                 // The RGBC sensor is behind a transistor; it needs to be enabled first
                 sdCallAndResponse(transistorOn);
                 // Now that the transistor is on, turn the sensor on
                 sdCallAndResponse(powerOn);
-                // Set the integration time
-                sdCallAndResponse(intTime_100);
+                // Set the integration time and gain
+                writeSettings();
                 byte[] lastCall = sdCallAndResponse(initADC);
 
                 if (lastCall != null) {
@@ -174,7 +398,10 @@ public class RGBC_V1 extends DroneSensor {
 
 
     /**
-     * Take an RGBC measurement
+     * Take an RGBC measurement.
+     * Right after the sensor is enabled or its settings change (including auto-ranging), the measurement
+     * is put off until a whole integration period has been taken with the new settings (without holding up
+     * the other sensors in the meantime).
      * @return
      */
     public boolean measure() {
@@ -182,54 +409,42 @@ public class RGBC_V1 extends DroneSensor {
             return false;
         }
 
+        final boolean urgent = CommExecutor.URGENT.get() == Boolean.TRUE;
         Runnable measureRunnable = new Runnable() {
 
             @Override
             public void run() {
 
+                // Don't read something that was (partly) integrated with the old settings; come back when it's done
+                long wait = settingsChangedAt + INTEGRATION_MS[integration] - System.currentTimeMillis();
+                if (wait > 0) {
+                    myDrone.submitLater(this, wait, urgent);
+                    return;
+                }
+
                 byte[] readColors = {0x50, 0x06, 0x10, 0x00, 0x39, (byte) 0x90, 0x08, 0x00};
                 byte[] colorBytes = sdCallAndResponse(readColors);
 
                 if (colorBytes != null) {
                     // Parse the output
+                    int rawRed = RegisterCodec.uint16LE(colorBytes, 2);
+                    int rawGreen = RegisterCodec.uint16LE(colorBytes, 0);
+                    int rawBlue = RegisterCodec.uint16LE(colorBytes, 4);
+                    int rawClear = RegisterCodec.uint16LE(colorBytes, 6);
+                    // The settings it was measured with (auto-ranging may change them below)
+                    int[] raw = {rawRed, rawGreen, rawBlue, rawClear, integration, gain};
+
+                    float R = correctedChannel(rawRed, integration, gain, RED_WINDOW);
+                    float G = correctedChannel(rawGreen, integration, gain, GREEN_WINDOW);
+                    float B = correctedChannel(rawBlue, integration, gain, BLUE_WINDOW);
+                    float C = correctedChannel(rawClear, integration, gain, CLEAR_WINDOW);
+
+                    if (autoRange) {
+                        autoRange(rawClear);
+                    }
 
-                    float R = bytes2int(colorBytes[3], colorBytes[2]);
-                    float G = bytes2int(colorBytes[1], colorBytes[0]);
-                    float B = bytes2int(colorBytes[5], colorBytes[4]);
-                    float C = bytes2int(colorBytes[7], colorBytes[6]);
-
-                    // These are calibration factors measured for the absorbance loss
-                    // due to the window material that the Sensordrone ships with.
-                    double Rcal = 0.2639626007;
-                    double Gcal = 0.2935368922;
-                    double Bcal = 0.379682891;
-                    double Ccal = 0.2053011829;
-
-                    R += R * Rcal;
-                    G += G * Gcal;
-                    B += B * Bcal;
-                    C += C * Ccal;
-
-                    // Fancy math goes here
-
-                    // These are calibration coefficients for three
-                    // different intensity semi-full spectrum light sources.
-                    // If you wanted to calibrate for a different color space,
-                    // this is where the magic happens...
-                    double X = -0.14282 * R + 1.54924 * G + -0.95641 * B;
-                    double Y = -0.32466 * R + 1.57837 * G + -0.73191 * B;
-                    double Z = -0.68202 * R + 0.77073 * G + 0.56332 * B;
-
-                    double x = X / (X + Y + Z);
-                    double y = Y / (X + Y + Z);
-
-                    double n = (x - 0.3320) / (0.1858 - y);
-
-                    double CCT = 449.0 * Math.pow(n, 3) +
-                            3525.0 * Math.pow(n, 2) +
-                            6823.3 * n +
-                            5520.33;
-
+                    double Y = illuminance(R, G, B);
+                    double CCT = colorTemperature(R, G, B, myDrone.conversions);
 
                     // Set all of the values
                     myDrone.rgbcRedChannel = R;
@@ -238,6 +453,7 @@ public class RGBC_V1 extends DroneSensor {
                     myDrone.rgbcClearChannel = C;
                     myDrone.rgbcLux = (float) Y;
                     myDrone.rgbcColorTemperature = (float) CCT;
+                    myDrone.recordRawSample(CoreDrone.QS_TYPE_RGBC, raw);
 
                     // Notify the listener
                     myDrone.notifyDroneEventHandler(measured);
@@ -255,6 +471,87 @@ public class RGBC_V1 extends DroneSensor {
     }
 
 
+    // These are calibration factors measured for the absorbance loss
+    // due to the window material that the Sensordrone ships with.
+    /**
+     * Window correction for the red channel
+     */
+    public static final double RED_WINDOW = 0.2639626007;
+    /**
+     * Window correction for the green channel
+     */
+    public static final double GREEN_WINDOW = 0.2935368922;
+    /**
+     * Window correction for the blue channel
+     */
+    public static final double BLUE_WINDOW = 0.379682891;
+    /**
+     * Window correction for the clear channel
+     */
+    public static final double CLEAR_WINDOW = 0.2053011829;
+
+    /**
+     * Convert a raw channel count to the value the library reports for it
+     * @param raw The raw count
+     * @param integration The integration time setting it was measured with
+     * @param gain The gain setting it was measured with
+     * @param window The window correction for the channel (e.g. RED_WINDOW)
+     * @return
+     */
+    public static float correctedChannel(int raw, int integration, int gain, double window) {
+        // Scale everything to what it would be at 100ms and 1x gain;
+        // that's what all of the calibration below was done at.
+        float scale = (float) (100.0 / (INTEGRATION_MS[integration] * GAIN_MULTIPLIER[gain]));
+        float value = raw * scale;
+        value += value * window;
+        return value;
+    }
+
+    // These are calibration coefficients for three
+    // different intensity semi-full spectrum light sources.
+    // If you wanted to calibrate for a different color space,
+    // this is where the magic happens...
+    private static double tristimulusX(float R, float G, float B) {
+        return -0.14282 * R + 1.54924 * G + -0.95641 * B;
+    }
+    private static double tristimulusY(float R, float G, float B) {
+        return -0.32466 * R + 1.57837 * G + -0.73191 * B;
+    }
+    private static double tristimulusZ(float R, float G, float B) {
+        return -0.68202 * R + 0.77073 * G + 0.56332 * B;
+    }
+
+    /**
+     * Calculate the illuminance from corrected channel values
+     * @param R
+     * @param G
+     * @param B
+     * @return Illuminance in Lux
+     */
+    public static double illuminance(float R, float G, float B) {
+        return tristimulusY(R, G, B);
+    }
+
+    /**
+     * Calculate the color temperature from corrected channel values
+     * @param R
+     * @param G
+     * @param B
+     * @param conversions The conversion math to use
+     * @return Color temperature in Kelvin
+     */
+    public static double colorTemperature(float R, float G, float B, DroneConversions conversions) {
+        // Fancy math goes here
+        double X = tristimulusX(R, G, B);
+        double Y = tristimulusY(R, G, B);
+        double Z = tristimulusZ(R, G, B);
+
+        double x = X / (X + Y + Z);
+        double y = Y / (X + Y + Z);
+
+        return conversions.colorTemperature(x, y);
+    }
+
     /**
      * The default constructor
      * @param drone
@@ -0,0 +1,81 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.io.Serializable;
+
+/**
+ * The raw counts behind a measurement, along with the calibration it was measured with.
+ *
+ * Keep these around if you might want to recompute your data with a different calibration later
+ * (see RawSampleProcessor).
+ *
+ * The raw values, by quickSystem type:
+ * <ul>
+ *     <li>QS_TYPE_ALTITUDE, QS_TYPE_PRESSURE: {20 bit pressure}</li>
+ *     <li>QS_TYPE_CAPACITANCE: {ADC}</li>
+ *     <li>QS_TYPE_HUMIDITY, QS_TYPE_TEMPERATURE: {ADC}</li>
+ *     <li>QS_TYPE_IR_TEMPERATURE: {die temperature, object voltage}</li>
+ *     <li>QS_TYPE_OXIDIZING_GAS, QS_TYPE_REDUCING_GAS: {ADC}</li>
+ *     <li>QS_TYPE_PRECISION_GAS: {ADC, gain stage}</li>
+ *     <li>QS_TYPE_RGBC: {red, green, blue, clear, integration time setting, gain setting}</li>
+ *     <li>QS_TYPE_ADC: {ADC}</li>
+ * </ul>
+ */
+public class RawSample implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The quickSystem type of the measurement (e.g. CoreDrone.QS_TYPE_HUMIDITY)
+     */
+    public final int qsType;
+    /**
+     * When the measurement was made (System.currentTimeMillis())
+     */
+    public final long timestamp;
+    /**
+     * The raw values (see above). Don't modify this.
+     */
+    public final int[] raw;
+    /**
+     * The calibration in use when the measurement was made
+     */
+    public final DroneCalibration calibration;
+
+    /**
+     * Our default Constructor
+     * @param qsType
+     * @param timestamp
+     * @param raw
+     * @param calibration
+     */
+    public RawSample(int qsType, long timestamp, int[] raw, DroneCalibration calibration) {
+        this.qsType = qsType;
+        this.timestamp = timestamp;
+        this.raw = raw;
+        this.calibration = calibration;
+    }
+
+    /**
+     * The version of the calibration the measurement was made with
+     * @return
+     */
+    public int getCalibrationVersion() {
+        return calibration.version;
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Recomputes values from stored RawSamples, e.g. after finding out a calibration was off.
+ *
+ * Each sample becomes one value, in the units below:
+ * <ul>
+ *     <li>QS_TYPE_ALTITUDE: Meters</li>
+ *     <li>QS_TYPE_CAPACITANCE: femtoFarad</li>
+ *     <li>QS_TYPE_HUMIDITY: %</li>
+ *     <li>QS_TYPE_IR_TEMPERATURE: Celsius</li>
+ *     <li>QS_TYPE_OXIDIZING_GAS, QS_TYPE_REDUCING_GAS: Ohm</li>
+ *     <li>QS_TYPE_PRECISION_GAS: ppm</li>
+ *     <li>QS_TYPE_PRESSURE: Pascals</li>
+ *     <li>QS_TYPE_RGBC: Lux</li>
+ *     <li>QS_TYPE_TEMPERATURE: Celsius</li>
+ *     <li>QS_TYPE_ADC: Volts</li>
+ * </ul>
+ *
+ * Large batches are split into chunks and converted on several threads.
+ */
+public class RawSampleProcessor {
+
+    // Below this many samples, the thread hand-off costs more than it saves
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    private RawSampleProcessor() {
+    }
+
+    /**
+     * Convert one RawSample
+     * @param sample
+     * @param calibration The calibration to use, or null to use the one the sample was measured with
+     * @param conversions The conversion math to use
+     * @return The value (see above), or NaN if the sample's type is unknown
+     */
+    public static float convert(RawSample sample, DroneCalibration calibration, DroneConversions conversions) {
+        DroneCalibration cal = calibration != null ? calibration : sample.calibration;
+        int[] raw = sample.raw;
+        switch (sample.qsType) {
+            case CoreDrone.QS_TYPE_ALTITUDE:
+                return (float) conversions.altitudeMeters(Pressure_V1.pascals(raw[0]));
+            case CoreDrone.QS_TYPE_CAPACITANCE:
+                return Capacitance_V1.femtoFarad(raw[0]);
+            case CoreDrone.QS_TYPE_HUMIDITY:
+                return Humidity_V1.humidityPercent(raw[0]);
+            case CoreDrone.QS_TYPE_IR_TEMPERATURE:
+                return (float) (IRThermometer_V1.objectKelvin(raw[0], raw[1], cal.irCalibrationFactor, conversions) - 273.15);
+            case CoreDrone.QS_TYPE_OXIDIZING_GAS:
+                return GeneralGas_V1.oxidizingOhm(raw[0]);
+            case CoreDrone.QS_TYPE_PRECISION_GAS:
+                return PrecisionGas_V1.ppm(raw[0], raw[1], cal.precisionGasBaseline, cal.precisionGasSensitivity);
+            case CoreDrone.QS_TYPE_PRESSURE:
+                return Pressure_V1.pascals(raw[0]);
+            case CoreDrone.QS_TYPE_REDUCING_GAS:
+                return GeneralGas_V1.reducingOhm(raw[0]);
+            case CoreDrone.QS_TYPE_RGBC:
+                return (float) RGBC_V1.illuminance(
+                        RGBC_V1.correctedChannel(raw[0], raw[4], raw[5], RGBC_V1.RED_WINDOW),
+                        RGBC_V1.correctedChannel(raw[1], raw[4], raw[5], RGBC_V1.GREEN_WINDOW),
+                        RGBC_V1.correctedChannel(raw[2], raw[4], raw[5], RGBC_V1.BLUE_WINDOW));
+            case CoreDrone.QS_TYPE_TEMPERATURE:
+                return Humidity_V1.temperatureCelsius(raw[0]);
+            case CoreDrone.QS_TYPE_ADC:
+                return ADC_V1.volts(raw[0]);
+            default:
+                return Float.NaN;
+        }
+    }
+
+    /**
+     * Convert a range of samples into results
+     */
+    private static void convertRange(RawSample[] samples, int from, int to, float[] results,
+                                     DroneCalibration calibration, DroneConversions conversions) {
+        for (int i = from; i < to; i++) {
+            results[i] = convert(samples[i], calibration, conversions);
+        }
+    }
+
+    /**
+     * Recompute a batch of RawSamples, using one thread per processor for large batches.
+     * @param samples
+     * @param calibration The calibration to use, or null to use the one each sample was measured with
+     * @param conversions The conversion math to use
+     * @return One value per sample (see above)
+     */
+    public static float[] recompute(RawSample[] samples, DroneCalibration calibration, DroneConversions conversions) {
+        if (samples.length < PARALLEL_THRESHOLD) {
+            return recompute(samples, calibration, conversions, null);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return recompute(samples, calibration, conversions, executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Recompute a batch of RawSamples on the given ExecutorService.
+     * @param samples
+     * @param calibration The calibration to use, or null to use the one each sample was measured with
+     * @param conversions The conversion math to use
+     * @param executor Where to run the chunks, or null to do it all on the calling thread
+     * @return One value per sample (see above)
+     */
+    public static float[] recompute(final RawSample[] samples, final DroneCalibration calibration,
+                                    final DroneConversions conversions, ExecutorService executor) {
+        final float[] results = new float[samples.length];
+        if (executor == null || samples.length < PARALLEL_THRESHOLD) {
+            convertRange(samples, 0, samples.length, results, calibration, conversions);
+            return results;
+        }
+
+        // A few chunks per processor, so a slow thread doesn't hold everyone up
+        int chunks = Runtime.getRuntime().availableProcessors() * 4;
+        int chunkSize = (samples.length + chunks - 1) / chunks;
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int start = 0; start < samples.length; start += chunkSize) {
+            final int from = start;
+            final int to = Math.min(start + chunkSize, samples.length);
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    convertRange(samples, from, to, results, calibration, conversions);
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while recomputing samples", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Failed to recompute samples", e.getCause());
+            }
+        }
+        return results;
+    }
+
+}
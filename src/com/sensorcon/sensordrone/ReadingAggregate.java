@@ -0,0 +1,79 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+/**
+ * The count, minimum, maximum and sum of the readings in a window of time
+ */
+public class ReadingAggregate {
+
+    /**
+     * The start of the window (inclusive, ms since 1970)
+     */
+    public final long start;
+    /**
+     * The end of the window (exclusive)
+     */
+    public final long end;
+    /**
+     * How many readings were in the window
+     */
+    public final int count;
+    /**
+     * The smallest reading
+     */
+    public final float min;
+    /**
+     * The largest reading
+     */
+    public final float max;
+    /**
+     * All of the readings added up
+     */
+    public final double sum;
+
+    /**
+     * Our default Constructor
+     * @param start
+     * @param end
+     * @param count
+     * @param min
+     * @param max
+     * @param sum
+     */
+    public ReadingAggregate(long start, long end, int count, float min, float max, double sum) {
+        this.start = start;
+        this.end = end;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+    }
+
+    /**
+     * The average reading
+     * @return
+     */
+    public float getAverage() {
+        return count == 0 ? Float.NaN : (float) (sum / count);
+    }
+
+    @Override
+    public String toString() {
+        return start + " count=" + count + " min=" + min + " max=" + max + " avg=" + getAverage();
+    }
+
+}
@@ -0,0 +1,551 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds readings in a ReadingStore, e.g. the hourly CO ppm of one Sensordrone over the last month:
+ *
+ * <pre>
+ * Iterator&lt;ReadingAggregate&gt; hours = store.query()
+ *         .drone(MAC)
+ *         .sensor(CoreDrone.QS_TYPE_PRECISION_GAS)
+ *         .between(monthAgo, now)
+ *         .aggregate(60 * 60 * 1000);
+ * </pre>
+ *
+ * Only the segments (and blocks of records within them) whose time index overlaps the query are read,
+ * and segments that can't hold the Sensordrone's records are skipped. When all of a full segment's
+ * matching readings fall in one window, its saved summary is used instead of its records.
+ * Aggregates are worked out on several threads, a group of segments each.
+ *
+ * When the windows are a whole number of seconds, minutes or hours, and the time range starts and ends on
+ * one, aggregates come from the store's rollups instead, without reading any records.
+ *
+ * Results come back one at a time, as an Iterator; readings() reads the records as you go.
+ */
+public class ReadingQuery {
+
+    /**
+     * The most windows aggregate() will make (use bigger windows for long time ranges)
+     */
+    public static final int MAX_WINDOWS = 1 << 18;
+
+    private final ReadingStore store;
+    private String MAC = null;
+    private int qsType = -1;
+    private long from = Long.MIN_VALUE;
+    private long to = Long.MAX_VALUE;
+
+    /**
+     * Our default Constructor
+     * @param store
+     */
+    public ReadingQuery(ReadingStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Only readings from one Sensordrone (all of them by default)
+     * @param MAC
+     * @return this
+     */
+    public ReadingQuery drone(String MAC) {
+        this.MAC = MAC;
+        return this;
+    }
+
+    /**
+     * Only readings of one sensor (all of them by default; aggregate() needs one)
+     * @param qsType The quickSystem type (e.g. CoreDrone.QS_TYPE_PRECISION_GAS)
+     * @return this
+     */
+    public ReadingQuery sensor(int qsType) {
+        this.qsType = qsType;
+        return this;
+    }
+
+    /**
+     * Only readings made between two times (inclusive)
+     * @param from
+     * @param to
+     * @return this
+     */
+    public ReadingQuery between(long from, long to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    /**
+     * What the query is looking for, fixed when it's run
+     */
+    private static final class Match {
+        final long from;
+        final long to;
+        // The exact key, or -1 for any key of qsType (or any key at all if that's -1 too)
+        final int key;
+        final int qsType;
+        // Just the drone (any sensor), or -1
+        final int droneOnly;
+        // The Sensordrone has never been saved, so nothing matches
+        final boolean none;
+
+        Match(ReadingStore store, String MAC, int qsType, long from, long to) {
+            this.from = from;
+            this.to = to;
+            this.qsType = qsType;
+            int drone = MAC == null ? -1 : store.findDrone(MAC);
+            none = (MAC != null && drone < 0) || from > to;
+            key = drone >= 0 && qsType >= 0 ? drone << 8 | qsType : -1;
+            droneOnly = MAC != null && qsType < 0 ? drone : -1;
+        }
+
+        boolean matches(int candidate) {
+            if (key >= 0) {
+                return candidate == key;
+            }
+            if (droneOnly >= 0 && candidate >>> 8 != droneOnly) {
+                return false;
+            }
+            return qsType < 0 || (candidate & 0xff) == qsType;
+        }
+
+        /**
+         * Check if a segment might have matching records
+         */
+        boolean overlaps(StoreSegment segment, int count) {
+            return count > 0 && segment.maxTime() >= from && segment.minTime() <= to
+                    && (key < 0 || segment.mayContain(key));
+        }
+
+        boolean overlapsBlock(StoreSegment segment, int block) {
+            return segment.blockMax[block] >= from && segment.blockMin[block] <= to;
+        }
+    }
+
+    /**
+     * Go through the matching readings, oldest segment first (within a segment, in the order they were saved)
+     * @return
+     */
+    public Iterator<FleetReading> readings() {
+        return new ReadingIterator(new Match(store, MAC, qsType, from, to), store.segments());
+    }
+
+    private class ReadingIterator implements Iterator<FleetReading> {
+        private final Match match;
+        private final StoreSegment[] segments;
+        private int segmentIndex = -1;
+        private StoreSegment segment = null;
+        private int count;
+        private int block;
+        private int record;
+        private int end;
+        private FleetReading next;
+
+        ReadingIterator(Match match, StoreSegment[] segments) {
+            this.match = match;
+            this.segments = match.none ? new StoreSegment[0] : segments;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (segment != null && record < end) {
+                    int i = record++;
+                    int key = segment.key(i);
+                    if (match.matches(key)) {
+                        long time = segment.time(i);
+                        if (time >= match.from && time <= match.to) {
+                            next = new FleetReading(store.getMAC(key >>> 8), key & 0xff, time, segment.value(i));
+                        }
+                    }
+                } else if (segment != null && nextBlock()) {
+                    record = block * StoreSegment.INDEX_BLOCK;
+                    end = Math.min(count, record + StoreSegment.INDEX_BLOCK);
+                } else if (++segmentIndex < segments.length) {
+                    segment = segments[segmentIndex];
+                    count = segment.count();
+                    block = -1;
+                    end = 0;
+                    record = 0;
+                    if (!match.overlaps(segment, count)) {
+                        segment = null;
+                    }
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean nextBlock() {
+            do {
+                block++;
+            } while (block * StoreSegment.INDEX_BLOCK < count && !match.overlapsBlock(segment, block));
+            return block * StoreSegment.INDEX_BLOCK < count;
+        }
+
+        @Override
+        public FleetReading next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            FleetReading reading = next;
+            next = null;
+            return reading;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Work out the count, minimum, maximum and average of the matching readings in windows of time,
+     * from the store's rollups if they line up, or else using one thread per processor when there's
+     * more than one segment to read.
+     * @param windowMillis How long each window is; windows line up with multiples of this since 1970 (UTC)
+     * @return The windows with readings in them, oldest first
+     * @throws IllegalStateException If no sensor was chosen
+     * @throws IllegalArgumentException If there would be more than MAX_WINDOWS windows
+     */
+    public Iterator<ReadingAggregate> aggregate(long windowMillis) {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return aggregate(windowMillis, executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Like aggregate(windowMillis), on the given ExecutorService
+     * @param windowMillis
+     * @param executor Where to read the segments, or null to do it all on the calling thread
+     * @return
+     */
+    public Iterator<ReadingAggregate> aggregate(final long windowMillis, ExecutorService executor) {
+        if (qsType < 0) {
+            throw new IllegalStateException("Choose a sensor to aggregate");
+        }
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("windowMillis must be > 0");
+        }
+        final Match match = new Match(store, MAC, qsType, from, to);
+        // Taken before the segments' times are read, so every reading in it is inside the windows below
+        int rollup = match.none ? -1 : rollupFor(windowMillis, match);
+        StoreRollup.Snapshot snapshot = null;
+        if (rollup >= 0) {
+            try {
+                snapshot = store.rollupSnapshot(rollup);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read rollups", e);
+            }
+        }
+        final List<StoreSegment> relevant = new ArrayList<StoreSegment>();
+        // How many records each one had, so readings appended from here on aren't counted
+        final List<Integer> counts = new ArrayList<Integer>();
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        if (!match.none) {
+            for (StoreSegment segment : store.segments()) {
+                int count = segment.count();
+                if (match.overlaps(segment, count)) {
+                    relevant.add(segment);
+                    counts.add(count);
+                    first = Math.min(first, segment.minTime());
+                    last = Math.max(last, segment.maxTime());
+                }
+            }
+        }
+        if (relevant.isEmpty()) {
+            return new WindowIterator(null, 0, windowMillis);
+        }
+        // Only as many windows as there could be readings for
+        long firstWindow = floorDiv(Math.max(first, match.from), windowMillis);
+        long lastWindow = floorDiv(Math.min(last, match.to), windowMillis);
+        if (lastWindow - firstWindow >= MAX_WINDOWS) {
+            throw new IllegalArgumentException("Too many windows; use a bigger window or a shorter time range");
+        }
+        final long origin = firstWindow * windowMillis;
+        final int windows = (int) (lastWindow - firstWindow + 1);
+
+        if (snapshot != null) {
+            Windows result = new Windows(windows, origin, windowMillis);
+            try {
+                result.add(store.rollup(rollup), snapshot, match);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read rollups", e);
+            }
+            return new WindowIterator(result, windows, windowMillis);
+        }
+
+        int groups = executor == null ? 1 : Math.min(relevant.size(), Runtime.getRuntime().availableProcessors());
+        if (groups <= 1) {
+            Windows result = new Windows(windows, origin, windowMillis);
+            for (int i = 0; i < relevant.size(); i++) {
+                result.add(relevant.get(i), counts.get(i), match);
+            }
+            return new WindowIterator(result, windows, windowMillis);
+        }
+
+        List<Future<Windows>> futures = new ArrayList<Future<Windows>>();
+        for (int g = 0; g < groups; g++) {
+            final int firstOfGroup = g;
+            final int step = groups;
+            futures.add(executor.submit(new Callable<Windows>() {
+                @Override
+                public Windows call() {
+                    Windows partial = new Windows(windows, origin, windowMillis);
+                    for (int i = firstOfGroup; i < relevant.size(); i += step) {
+                        partial.add(relevant.get(i), counts.get(i), match);
+                    }
+                    return partial;
+                }
+            }));
+        }
+        Windows result = null;
+        for (Future<Windows> future : futures) {
+            try {
+                Windows partial = future.get();
+                if (result == null) {
+                    result = partial;
+                } else {
+                    result.merge(partial);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while reading segments", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Failed to read segments", e.getCause());
+            }
+        }
+        return new WindowIterator(result, windows, windowMillis);
+    }
+
+    /**
+     * The biggest rollup whose windows fit exactly in the query's windows and time range, or -1
+     */
+    private static int rollupFor(long windowMillis, Match match) {
+        for (int r = ReadingStore.ROLLUP_RESOLUTIONS.length - 1; r >= 0; r--) {
+            long resolution = ReadingStore.ROLLUP_RESOLUTIONS[r];
+            if (windowMillis % resolution == 0
+                    && (match.from == Long.MIN_VALUE || match.from - floorDiv(match.from, resolution) * resolution == 0)
+                    && (match.to == Long.MAX_VALUE || (match.to + 1) - floorDiv(match.to + 1, resolution) * resolution == 0)) {
+                return r;
+            }
+        }
+        return -1;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+
+    /**
+     * Running totals for every window, in plain arrays
+     */
+    private static final class Windows {
+        final long origin;
+        final long windowMillis;
+        final int[] count;
+        final float[] min;
+        final float[] max;
+        final double[] sum;
+
+        Windows(int windows, long origin, long windowMillis) {
+            this.origin = origin;
+            this.windowMillis = windowMillis;
+            count = new int[windows];
+            min = new float[windows];
+            max = new float[windows];
+            sum = new double[windows];
+        }
+
+        /**
+         * @return -1 if the time is outside the windows (e.g. it was saved after the query started)
+         */
+        int window(long time) {
+            if (time < origin) {
+                return -1;
+            }
+            long w = (time - origin) / windowMillis;
+            return w < count.length ? (int) w : -1;
+        }
+
+        void add(int w, int n, float low, float high, double total) {
+            if (w < 0) {
+                return;
+            }
+            if (count[w] == 0) {
+                min[w] = low;
+                max[w] = high;
+            } else {
+                if (low < min[w]) {
+                    min[w] = low;
+                }
+                if (high > max[w]) {
+                    max[w] = high;
+                }
+            }
+            count[w] += n;
+            sum[w] += total;
+        }
+
+        /**
+         * Add a segment's matching readings, out of the first records
+         */
+        void add(StoreSegment segment, int records, Match match) {
+            if (addSummary(segment.summary(), match)) {
+                return;
+            }
+            for (int block = 0; block * StoreSegment.INDEX_BLOCK < records; block++) {
+                if (!match.overlapsBlock(segment, block)) {
+                    continue;
+                }
+                int end = Math.min(records, (block + 1) * StoreSegment.INDEX_BLOCK);
+                for (int i = block * StoreSegment.INDEX_BLOCK; i < end; i++) {
+                    if (match.matches(segment.key(i))) {
+                        long time = segment.time(i);
+                        if (time >= match.from && time <= match.to) {
+                            float value = segment.value(i);
+                            add(window(time), 1, value, value, value);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Use a full segment's summary, if each matching key's readings are all in one window
+         * @return false if the records have to be read
+         */
+        private boolean addSummary(StoreSegment.Summary summary, Match match) {
+            if (summary == null) {
+                return false;
+            }
+            for (int pass = 0; pass < 2; pass++) {
+                for (int k = 0; k < summary.keys.length; k++) {
+                    if (!match.matches(summary.keys[k])) {
+                        continue;
+                    }
+                    if (pass == 0) {
+                        if (summary.first[k] < match.from || summary.last[k] > match.to
+                                || window(summary.first[k]) != window(summary.last[k])) {
+                            return false;
+                        }
+                    } else {
+                        add(window(summary.first[k]), summary.counts[k], summary.min[k], summary.max[k], summary.sum[k]);
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Add a rollup's matching windows (they're all inside the time range, or all outside it)
+         */
+        void add(StoreRollup rollup, StoreRollup.Snapshot snapshot, Match match) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(StoreRollup.INDEX_BLOCK * StoreRollup.RECORD_SIZE);
+            for (long first = 0; first < snapshot.records; first += StoreRollup.INDEX_BLOCK) {
+                int block = (int) (first / StoreRollup.INDEX_BLOCK);
+                if (snapshot.blockMax[block] < match.from || snapshot.blockMin[block] > match.to) {
+                    continue;
+                }
+                int n = (int) Math.min(StoreRollup.INDEX_BLOCK, snapshot.records - first);
+                rollup.read(first, n, buffer);
+                for (int i = 0; i < n; i++) {
+                    int p = i * StoreRollup.RECORD_SIZE;
+                    if (!match.matches(buffer.getInt(p))) {
+                        continue;
+                    }
+                    long start = buffer.getLong(p + 4);
+                    if (start >= match.from && start <= match.to) {
+                        add(window(start), buffer.getInt(p + 12), buffer.getFloat(p + 16), buffer.getFloat(p + 20),
+                                buffer.getDouble(p + 24));
+                    }
+                }
+            }
+            for (int i = 0; i < snapshot.openWindows; i++) {
+                long start = snapshot.start[i];
+                if (match.matches(snapshot.keys[i]) && start >= match.from && start <= match.to) {
+                    add(window(start), snapshot.count[i], snapshot.min[i], snapshot.max[i], snapshot.sum[i]);
+                }
+            }
+        }
+
+        void merge(Windows other) {
+            for (int w = 0; w < count.length; w++) {
+                if (other.count[w] > 0) {
+                    add(w, other.count[w], other.min[w], other.max[w], other.sum[w]);
+                }
+            }
+        }
+    }
+
+    private static final class WindowIterator implements Iterator<ReadingAggregate> {
+        private final Windows result;
+        private final int windows;
+        private final long windowMillis;
+        private int w = 0;
+
+        WindowIterator(Windows result, int windows, long windowMillis) {
+            this.result = result;
+            this.windows = windows;
+            this.windowMillis = windowMillis;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (w < windows && result.count[w] == 0) {
+                w++;
+            }
+            return w < windows;
+        }
+
+        @Override
+        public ReadingAggregate next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            long start = result.origin + w * windowMillis;
+            ReadingAggregate window = new ReadingAggregate(start, start + windowMillis,
+                    result.count[w], result.min[w], result.max[w], result.sum[w]);
+            w++;
+            return window;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
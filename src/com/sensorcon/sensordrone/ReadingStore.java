@@ -0,0 +1,506 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves measurements from any number of Sensordrones to a directory, as fixed-width binary records
+ * in memory-mapped segment files.
+ *
+ * <pre>
+ * ReadingStore store = new ReadingStore(new File("readings"));
+ * myDrone.setReadingStore(store);
+ * ...
+ * store.close();
+ * </pre>
+ *
+ * Records are only ever appended. Writing one is a few stores into mapped memory (no allocation,
+ * no system call), so it's done right on each Drone's communication thread. When a segment is full,
+ * writing goes on in the next one (made ahead of time), and the full one is flushed to disk with a small
+ * time index next to it on a background thread.
+ *
+ * If the app dies, everything written so far is in the files (the operating system writes the mapped
+ * memory out); call sync() if you also need to survive losing power. A record that was half written
+ * is found and dropped when the store is opened again.
+ *
+ * Values are in the units listed in RawSampleProcessor.
+ *
+ * The count, minimum, maximum and sum of each sensor's readings are also kept per second, minute and hour
+ * as readings are saved (see ROLLUP_RESOLUTIONS), so query().aggregate() can answer from those without
+ * reading the records. If the app dies they're worked out again from the records when the store is opened.
+ */
+public class ReadingStore {
+
+    /**
+     * How many records a segment holds, unless chosen in the constructor (about 5 MB)
+     */
+    public static final int DEFAULT_SEGMENT_RECORDS = 1 << 18;
+
+    /**
+     * The windows (in ms) that readings are rolled up into as they're saved: a second, a minute and an hour
+     */
+    public static final long ROLLUP_SECOND = 1000;
+    public static final long ROLLUP_MINUTE = 60 * 1000;
+    public static final long ROLLUP_HOUR = 60 * 60 * 1000;
+    // Smallest first
+    static final long[] ROLLUP_RESOLUTIONS = { ROLLUP_SECOND, ROLLUP_MINUTE, ROLLUP_HOUR };
+
+    // The MAC address of each drone number, one per line
+    private static final String DRONES_FILE = "drones.txt";
+    // Up to 2^23 drones; the low byte of a key is the quickSystem type, and keys stay positive
+    // (a negative key means "any" to a query, and indexes the rollups' arrays)
+    private static final int MAX_DRONES = 1 << 23;
+
+    /**
+     * Told about each reading by scan()
+     */
+    public interface Visitor {
+        void reading(String MAC, int qsType, long time, float value);
+    }
+
+    private final File directory;
+    private final int segmentRecords;
+    private final HashMap<String, Integer> droneIds = new HashMap<String, Integer>();
+    // Indexed by drone number; replaced (not changed) when one is added, so scans don't lock
+    private volatile String[] droneMACs = new String[0];
+    private final FileOutputStream dronesOut;
+    // Oldest first; the last one is written to. Replaced (not changed) when a segment is added.
+    private volatile StoreSegment[] segments;
+    // One per ROLLUP_RESOLUTIONS
+    private final StoreRollup[] rollups = new StoreRollup[ROLLUP_RESOLUTIONS.length];
+    private boolean closed = false;
+    // Seals full segments and makes the next one ahead of time, so append() doesn't wait for the disk
+    private final ExecutorService background = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "sensordrone-store");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    // The segment to write to once the last one is full (null if making it failed)
+    private Future<StoreSegment> spare;
+
+    /**
+     * Our default Constructor
+     * @param directory Where to keep the files (made if it isn't there)
+     * @throws IOException
+     */
+    public ReadingStore(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_RECORDS);
+    }
+
+    /**
+     * Open (or start) a store
+     * @param directory Where to keep the files (made if it isn't there)
+     * @param segmentRecords How many records new segments hold
+     * @throws IOException
+     */
+    public ReadingStore(File directory, int segmentRecords) throws IOException {
+        if (segmentRecords <= 0) {
+            throw new IllegalArgumentException("segmentRecords must be > 0");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Couldn't make " + directory);
+        }
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        loadDrones();
+        dronesOut = new FileOutputStream(new File(directory, DRONES_FILE), true);
+
+        String[] names = directory.list();
+        Arrays.sort(names);
+        List<StoreSegment> found = new ArrayList<StoreSegment>();
+        for (String name : names) {
+            if (name.endsWith(".sdts")) {
+                found.add(StoreSegment.open(new File(directory, name)));
+            } else if (name.endsWith(".sdts" + StoreSegment.TEMP_SUFFIX)) {
+                // Never finished being made, so it has nothing in it
+                new File(directory, name).delete();
+            }
+        }
+        if (found.isEmpty()) {
+            found.add(StoreSegment.create(directory, 0, segmentRecords));
+        }
+        // An empty segment after the others is the spare made last time
+        final StoreSegment unused = found.size() > 1 && found.get(found.size() - 1).count() == 0
+                ? found.remove(found.size() - 1) : null;
+        segments = found.toArray(new StoreSegment[found.size()]);
+        openRollups();
+        if (unused != null) {
+            spare = background.submit(new Callable<StoreSegment>() {
+                @Override
+                public StoreSegment call() {
+                    return unused;
+                }
+            });
+        } else {
+            prepareSpare(segments[segments.length - 1].sequence + 1);
+        }
+    }
+
+    /**
+     * Start making the next segment in the background
+     */
+    private void prepareSpare(final long sequence) {
+        spare = background.submit(new Callable<StoreSegment>() {
+            @Override
+            public StoreSegment call() throws IOException {
+                return StoreSegment.create(directory, sequence, segmentRecords);
+            }
+        });
+    }
+
+    /**
+     * The next segment to write to (only waits if it isn't made yet)
+     */
+    private StoreSegment takeSpare(long sequence) throws IOException {
+        Future<StoreSegment> next = spare;
+        spare = null;
+        if (next != null) {
+            try {
+                return next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while starting a segment");
+            } catch (ExecutionException e) {
+                // Try again below
+            }
+        }
+        return StoreSegment.create(directory, sequence, segmentRecords);
+    }
+
+    /**
+     * Flush a full segment and save its index, in the background
+     */
+    private void seal(final StoreSegment full) {
+        background.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    full.seal();
+                } catch (IOException e) {
+                    // Not fatal; its index is worked out again when the store is opened
+                }
+            }
+        });
+    }
+
+    /**
+     * Open the rollup files, and work out again any that are missing or weren't closed cleanly
+     */
+    private void openRollups() throws IOException {
+        boolean[] rebuild = new boolean[rollups.length];
+        boolean any = false;
+        boolean hasRecords = getRecordCount() > 0;
+        for (int r = 0; r < rollups.length; r++) {
+            File file = new File(directory, "rollup-" + ROLLUP_RESOLUTIONS[r] + ".sdtr");
+            boolean existed = file.exists();
+            rollups[r] = StoreRollup.open(file, ROLLUP_RESOLUTIONS[r]);
+            if (rollups[r] == null) {
+                rollups[r] = StoreRollup.open(file, ROLLUP_RESOLUTIONS[r]);
+                existed = false;
+            }
+            rebuild[r] = !existed && hasRecords;
+            any |= rebuild[r];
+        }
+        if (!any) {
+            return;
+        }
+        for (StoreSegment segment : segments) {
+            int count = segment.count();
+            for (int i = 0; i < count; i++) {
+                for (int r = 0; r < rollups.length; r++) {
+                    if (rebuild[r]) {
+                        rollups[r].add(segment.key(i), segment.time(i), segment.value(i));
+                    }
+                }
+            }
+        }
+    }
+
+    private void loadDrones() throws IOException {
+        File file = new File(directory, DRONES_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            int start = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == '\n') {
+                    addDrone(new String(bytes, start, i - start, "UTF-8"));
+                    start = i + 1;
+                }
+            }
+            // Drop a line that was cut short, so the next one starts cleanly
+            raf.setLength(start);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private int addDrone(String MAC) {
+        int id = droneMACs.length;
+        String[] bigger = new String[id + 1];
+        System.arraycopy(droneMACs, 0, bigger, 0, id);
+        bigger[id] = MAC;
+        droneMACs = bigger;
+        droneIds.put(MAC, id);
+        return id;
+    }
+
+    /**
+     * The number a drone's records are saved under, adding it if it's new
+     */
+    private int droneId(String MAC) throws IOException {
+        Integer id = droneIds.get(MAC);
+        if (id != null) {
+            return id;
+        }
+        if (droneMACs.length == MAX_DRONES) {
+            throw new IOException("Too many Sensordrones");
+        }
+        // Saved (in one write) before any record uses it; sync() makes sure it's on disk
+        dronesOut.write((MAC + "\n").getBytes("UTF-8"));
+        return addDrone(MAC);
+    }
+
+    /**
+     * Save a measurement
+     * @param MAC The MAC address of the Sensordrone
+     * @param qsType The quickSystem type (e.g. CoreDrone.QS_TYPE_HUMIDITY)
+     * @param time When it was measured (System.currentTimeMillis())
+     * @param value
+     * @throws IOException If a new segment couldn't be started, or the store is closed
+     */
+    public synchronized void append(String MAC, int qsType, long time, float value) throws IOException {
+        if (closed) {
+            throw new IOException("ReadingStore is closed");
+        }
+        int key = droneId(MAC == null ? "" : MAC) << 8 | (qsType & 0xff);
+        StoreSegment active = segments[segments.length - 1];
+        if (!active.append(time, key, value)) {
+            StoreSegment next = takeSpare(active.sequence + 1);
+            StoreSegment[] bigger = new StoreSegment[segments.length + 1];
+            System.arraycopy(segments, 0, bigger, 0, segments.length);
+            bigger[segments.length] = next;
+            segments = bigger;
+            next.append(time, key, value);
+            seal(active);
+            prepareSpare(next.sequence + 1);
+        }
+        for (StoreRollup rollup : rollups) {
+            rollup.add(key, time, value);
+        }
+    }
+
+    /**
+     * Make sure everything saved so far is on disk (not just handed to the operating system)
+     * @throws IOException
+     */
+    public synchronized void sync() throws IOException {
+        if (closed) {
+            return;
+        }
+        // The active segment, and any full ones not sealed yet
+        for (StoreSegment segment : segments) {
+            if (segment.summary() == null) {
+                segment.force();
+            }
+        }
+        dronesOut.getFD().sync();
+    }
+
+    /**
+     * Sync, and stop saving. The files can be opened again by a new ReadingStore.
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        sync();
+        closed = true;
+        // Let the last seal finish
+        background.shutdown();
+        try {
+            background.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dronesOut.close();
+        for (StoreRollup rollup : rollups) {
+            rollup.close();
+        }
+    }
+
+    /**
+     * How many records are saved
+     * @return
+     */
+    public long getRecordCount() {
+        long total = 0;
+        for (StoreSegment segment : segments) {
+            total += segment.count();
+        }
+        return total;
+    }
+
+    /**
+     * How many segment files there are
+     * @return
+     */
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * Go through the readings made between two times (inclusive), oldest segment first.
+     * Within a segment, readings are in the order they were saved.
+     * Only the parts of the segments whose index overlaps the times are read (see also query()).
+     * @param from
+     * @param to
+     * @param visitor
+     */
+    public void scan(long from, long to, Visitor visitor) {
+        StoreSegment[] all = segments;
+        for (StoreSegment segment : all) {
+            int count = segment.count();
+            if (count == 0 || segment.maxTime() < from || segment.minTime() > to) {
+                continue;
+            }
+            for (int block = 0; block * StoreSegment.INDEX_BLOCK < count; block++) {
+                if (segment.blockMax[block] < from || segment.blockMin[block] > to) {
+                    continue;
+                }
+                int end = Math.min(count, (block + 1) * StoreSegment.INDEX_BLOCK);
+                for (int i = block * StoreSegment.INDEX_BLOCK; i < end; i++) {
+                    long time = segment.time(i);
+                    if (time >= from && time <= to) {
+                        int key = segment.key(i);
+                        visitor.reading(getMAC(key >>> 8), key & 0xff, time, segment.value(i));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Compress the readings of one sensor of one Sensordrone made between two times (inclusive),
+     * in the order they were saved. Read them back with ColumnDecoder.readFrom().
+     * @param MAC
+     * @param qsType
+     * @param from
+     * @param to
+     * @param out
+     * @return How many readings were written
+     * @throws IOException
+     */
+    public int export(String MAC, int qsType, long from, long to, OutputStream out) throws IOException {
+        ColumnEncoder column = new ColumnEncoder(4096);
+        int id = findDrone(MAC);
+        if (id >= 0) {
+            int wanted = id << 8 | (qsType & 0xff);
+            for (StoreSegment segment : segments) {
+                int count = segment.count();
+                if (count == 0 || segment.maxTime() < from || segment.minTime() > to || !segment.mayContain(wanted)) {
+                    continue;
+                }
+                for (int block = 0; block * StoreSegment.INDEX_BLOCK < count; block++) {
+                    if (segment.blockMax[block] < from || segment.blockMin[block] > to) {
+                        continue;
+                    }
+                    int end = Math.min(count, (block + 1) * StoreSegment.INDEX_BLOCK);
+                    for (int i = block * StoreSegment.INDEX_BLOCK; i < end; i++) {
+                        if (segment.key(i) == wanted) {
+                            long time = segment.time(i);
+                            if (time >= from && time <= to) {
+                                column.add(time, segment.value(i));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        column.writeTo(out);
+        return column.getCount();
+    }
+
+    /**
+     * Start a query (see ReadingQuery)
+     * @return
+     */
+    public ReadingQuery query() {
+        return new ReadingQuery(this);
+    }
+
+    /**
+     * The number a drone's records are saved under, or -1 if there aren't any
+     */
+    synchronized int findDrone(String MAC) {
+        Integer id = droneIds.get(MAC);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * The MAC address records were saved under
+     */
+    String getMAC(int droneId) {
+        String[] macs = droneMACs;
+        return droneId < macs.length ? macs[droneId] : null;
+    }
+
+    /**
+     * The rollup for one of ROLLUP_RESOLUTIONS (for queries)
+     */
+    StoreRollup rollup(int index) {
+        return rollups[index];
+    }
+
+    /**
+     * What a query can read of a rollup, or null if the store is closed
+     */
+    synchronized StoreRollup.Snapshot rollupSnapshot(int index) throws IOException {
+        return closed ? null : rollups[index].snapshot();
+    }
+
+    /**
+     * The segments, oldest first (for queries)
+     */
+    StoreSegment[] segments() {
+        return segments;
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+
+/**
+ * Methods used by the sensor classes to unpack the register values in a Sensordrone response.
+ *
+ * Everything here works on primitives, and never allocates, so it is safe to use for every sample.
+ * (Two's complement is handled with plain sign extension; no need for a BigInteger.)
+ */
+public final class RegisterCodec {
+
+    private RegisterCodec() {
+        // Static methods only
+    }
+
+    /**
+     * An unsigned 8 bit value (0 - 255)
+     * @param b
+     * @return
+     */
+    public static int uint8(byte b) {
+        return b & 0xff;
+    }
+
+    /**
+     * A signed (two's complement) 8 bit value (-128 - 127)
+     * @param b
+     * @return
+     */
+    public static int int8(byte b) {
+        return b;
+    }
+
+    /**
+     * An unsigned 16 bit value from its two bytes
+     * @param MSB
+     * @param LSB
+     * @return
+     */
+    public static int uint16(byte MSB, byte LSB) {
+        return ((MSB & 0xff) << 8) | (LSB & 0xff);
+    }
+
+    /**
+     * A signed (two's complement) 16 bit value from its two bytes
+     * @param MSB
+     * @param LSB
+     * @return
+     */
+    public static int int16(byte MSB, byte LSB) {
+        return (short) uint16(MSB, LSB);
+    }
+
+    /**
+     * An unsigned 16 bit value, stored MSB first
+     * @param data
+     * @param offset Where the MSB is
+     * @return
+     */
+    public static int uint16BE(byte[] data, int offset) {
+        return uint16(data[offset], data[offset + 1]);
+    }
+
+    /**
+     * An unsigned 16 bit value, stored LSB first
+     * @param data
+     * @param offset Where the LSB is
+     * @return
+     */
+    public static int uint16LE(byte[] data, int offset) {
+        return uint16(data[offset + 1], data[offset]);
+    }
+
+    /**
+     * A signed (two's complement) 16 bit value, stored MSB first
+     * @param data
+     * @param offset Where the MSB is
+     * @return
+     */
+    public static int int16BE(byte[] data, int offset) {
+        return int16(data[offset], data[offset + 1]);
+    }
+
+    /**
+     * A signed (two's complement) 16 bit value, stored LSB first
+     * @param data
+     * @param offset Where the LSB is
+     * @return
+     */
+    public static int int16LE(byte[] data, int offset) {
+        return int16(data[offset + 1], data[offset]);
+    }
+
+    /**
+     * An unsigned 20 bit value that is left justified in three bytes, MSB first
+     * (the low 4 bits of the last byte are not part of it).
+     * @param data
+     * @param offset Where the MSB is
+     * @return
+     */
+    public static int uint20BE(byte[] data, int offset) {
+        return (((data[offset] & 0xff) << 16)
+                | ((data[offset + 1] & 0xff) << 8)
+                | (data[offset + 2] & 0xff)) >>> 4;
+    }
+
+    /**
+     * Interpret a raw value as a fixed point number
+     * @param raw
+     * @param fractionBits How many of the low bits are the fraction
+     * @return
+     */
+    public static double fixedPoint(int raw, int fractionBits) {
+        return raw / (double) (1 << fractionBits);
+    }
+
+}
@@ -0,0 +1,371 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * A Drone that plays back a session saved by a WireCapture, instead of talking to a Sensordrone.
+ *
+ * Each btConnect() plays the next session in the capture. Whatever the app writes is checked against
+ * what was written when the capture was made (see getMismatchCount()), and the Sensordrone's responses
+ * are read back exactly as they were received. When the session runs out, the connection is lost,
+ * just like when the real one ended.
+ *
+ * Responses are timed from the write before them: a response that came 40 ms after a command in the
+ * capture comes 40 ms (divided by the speed) after the app writes that command in the replay.
+ * With SPEED_UNLIMITED, responses are available as soon as they're read.
+ */
+public class ReplayDrone extends CoreDrone {
+
+    /**
+     * Don't wait at all
+     */
+    public static final double SPEED_UNLIMITED = 0;
+
+    // The hardware/firmware request sent on a cold connect
+    private static final byte[] READ_HWFW = {0x50, 0x02, 0x33, 0x00};
+
+    private final WireReplay replay;
+    private final double speed;
+    private int nextSession = 0;
+    private volatile int mismatches = 0;
+
+    /**
+     * Our default Constructor
+     * @param log
+     * @param replay
+     * @param speed 1.0 for the original timing, 2.0 for twice as fast, SPEED_UNLIMITED for no waiting
+     */
+    public ReplayDrone(Logger log, WireReplay replay, double speed) {
+        super(log);
+        if (speed < 0) {
+            throw new IllegalArgumentException("speed must be >= 0");
+        }
+        this.replay = replay;
+        this.speed = speed;
+    }
+
+    /**
+     * Play back the next session in the capture.
+     *
+     * @param MAC The MAC address to report (null for the one in the capture)
+     * @return Returns true if the session's handshake played back; false if there are no sessions left,
+     * or the handshake failed.
+     */
+    @Override
+    public boolean btConnect(String MAC) {
+        if (nextSession >= replay.getSessionCount()) {
+            return false;
+        }
+        int session = nextSession++;
+        if (MAC == null) {
+            MAC = replay.getMAC(session);
+        }
+        openStreams(MAC, new ReplayInputStream(session), new ReplayOutputStream(session));
+
+        lastMAC = MAC;
+        commService = newCommService();
+
+        // Do the handshake the same way the capture did, whatever our DroneStore remembers
+        boolean warm = !startsWithHandshake(session);
+        warmStarted = warm;
+        if (warm) {
+            // The version comes from the check made right after connecting
+            int[] HWFW = firstResponse(session);
+            if (HWFW == null) {
+                commService.shutdown();
+                return false;
+            }
+            hardwareVersion = HWFW[0];
+            firmwareVersion = HWFW[1];
+            firmwareRevision = HWFW[2];
+        } else {
+            byte[] HWFW = localComms.sdCallAndResponse(READ_HWFW);
+            if (HWFW == null || HWFW.length < 3) {
+                resetFirmwareVersion();
+                commService.shutdown();
+                return false;
+            }
+            hardwareVersion = (HWFW[0] & 0xff);
+            firmwareVersion = (HWFW[1] & 0xff);
+            firmwareRevision = (HWFW[2] & 0xff);
+        }
+
+        if (!initializeHardware(hardwareVersion)) {
+            commService.shutdown();
+            return false;
+        }
+
+        if (warm) {
+            validateRememberedHandshake();
+        }
+
+        // notify that we're ready
+        isConnected = true;
+        notifyDroneEventListener(deConnected);
+        notifyDroneEventHandler(deConnected);
+        return true;
+    }
+
+    /**
+     * Check if a session starts with a cold connect (asking for the hardware/firmware version)
+     */
+    private boolean startsWithHandshake(int session) {
+        for (int i = replay.sessionStart(session); i < replay.sessionEnd(session); i++) {
+            if (replay.type(i) == WireCapture.TYPE_TX) {
+                if (replay.length(i) != READ_HWFW.length) {
+                    return false;
+                }
+                byte[] data = replay.data();
+                int offset = replay.offset(i);
+                for (int j = 0; j < READ_HWFW.length; j++) {
+                    if (data[offset + j] != READ_HWFW[j]) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The hardware version, firmware version and revision in the first response of a session
+     * (skipping the 2 byte header and the command byte), or null if it's too short
+     */
+    private int[] firstResponse(int session) {
+        int[] values = new int[3];
+        int position = 0;
+        byte[] data = replay.data();
+        for (int i = replay.sessionStart(session); i < replay.sessionEnd(session); i++) {
+            if (replay.type(i) != WireCapture.TYPE_RX) {
+                continue;
+            }
+            for (int j = 0; j < replay.length(i); j++, position++) {
+                if (position >= 3) {
+                    values[position - 3] = data[replay.offset(i) + j] & 0xff;
+                    if (position == 5) {
+                        return values;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected void closeSocket() {
+        // No socket
+    }
+
+    /**
+     * Stop playing back the session.
+     * @return Returns true upon successful disconnection.
+     */
+    @Override
+    public boolean disconnect() {
+
+        if (!isConnected) {
+            return false;
+        }
+        if (commService.isShutdown()) {
+            return false;
+        }
+
+        Runnable shutDownRunnable = new Runnable() {
+            @Override
+            public void run() {
+                commService.shutdown();
+                try {
+                    iStream.close();
+                } catch (IOException e1) {
+                    //
+                }
+                try {
+                    oStream.close();
+                } catch (IOException e1) {
+                    //
+                }
+                isConnected = false;
+                resetFirmwareVersion();
+                notifyDroneEventHandler(deDisconnected);
+                notifyDroneEventListener(deDisconnected);
+            }
+        };
+
+        commService.submit(shutDownRunnable);
+
+        return true;
+    }
+
+    /**
+     * How many writes didn't match what was written in the capture (0 if the app behaved the same way)
+     * @return
+     */
+    public int getMismatchCount() {
+        return mismatches;
+    }
+
+    /**
+     * How many sessions haven't been played yet
+     * @return
+     */
+    public int getSessionsLeft() {
+        return replay.getSessionCount() - nextSession;
+    }
+
+    // What the streams of a session share: when the app last wrote, and which TX record that matched
+    private int anchorRecord;
+    private long anchorNanos;
+
+    /**
+     * Checks what's written against the TX records of a session
+     */
+    private class ReplayOutputStream extends OutputStream {
+        private final int end;
+        private int record;
+        private int position = 0;
+        private boolean closed = false;
+
+        ReplayOutputStream(int session) {
+            end = replay.sessionEnd(session);
+            record = replay.sessionStart(session);
+            synchronized (ReplayDrone.this) {
+                // Until something is written, responses are timed from the CONNECT
+                anchorRecord = replay.sessionStart(session) - 1;
+                anchorNanos = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Closed");
+            }
+            boolean matched = true;
+            byte[] data = replay.data();
+            for (int i = 0; i < len; i++) {
+                // Find the next TX byte
+                while (record < end && (replay.type(record) != WireCapture.TYPE_TX || position == replay.length(record))) {
+                    record++;
+                    position = 0;
+                }
+                if (record == end || data[replay.offset(record) + position] != b[off + i]) {
+                    matched = false;
+                }
+                if (record < end) {
+                    position++;
+                }
+            }
+            if (!matched) {
+                mismatches++;
+            }
+            synchronized (ReplayDrone.this) {
+                if (record < end) {
+                    anchorRecord = record;
+                }
+                anchorNanos = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /**
+     * Reads back the RX records of a session, in the same pieces and at the same pace
+     */
+    private class ReplayInputStream extends InputStream {
+        private final int end;
+        private int record;
+        private int position = 0;
+        private volatile boolean closed = false;
+
+        ReplayInputStream(int session) {
+            end = replay.sessionEnd(session);
+            record = replay.sessionStart(session);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (record < end && (replay.type(record) != WireCapture.TYPE_RX || position == replay.length(record))) {
+                record++;
+                position = 0;
+            }
+            if (record == end) {
+                throw new IOException("End of replay");
+            }
+            if (position == 0) {
+                waitFor(record);
+            }
+            if (closed) {
+                throw new IOException("Closed");
+            }
+            int n = Math.min(len, replay.length(record) - position);
+            System.arraycopy(replay.data(), replay.offset(record) + position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        /**
+         * Wait until a record would have been received
+         */
+        private void waitFor(int rx) throws IOException {
+            if (speed == SPEED_UNLIMITED) {
+                return;
+            }
+            long deadline;
+            synchronized (ReplayDrone.this) {
+                long since = replay.time(rx) - replay.time(anchorRecord);
+                deadline = anchorNanos + (long) (Math.max(since, 0) / speed);
+            }
+            long remaining;
+            while (!closed && (remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+}
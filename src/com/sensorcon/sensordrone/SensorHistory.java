@@ -0,0 +1,205 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+/**
+ * The recent measurements of one sensor (see CoreDrone.getHistory()), oldest first.
+ *
+ * Times and values are kept in a ring of plain long[] and float[] arrays, so adding a measurement
+ * doesn't allocate anything, and the oldest one is dropped when it's full. The queries copy into
+ * arrays you pass in (and can reuse), e.g. for a chart:
+ *
+ * <pre>
+ * long[] times = new long[300];
+ * float[] values = new float[300];
+ * int n = myDrone.getHistory(CoreDrone.QS_TYPE_HUMIDITY).getSince(System.currentTimeMillis() - 60000, times, values);
+ * </pre>
+ *
+ * Values are in the units listed in RawSampleProcessor.
+ */
+public class SensorHistory {
+
+    private final long[] times;
+    private final float[] values;
+    // Where the next measurement goes
+    private int next = 0;
+    private int count = 0;
+
+    /**
+     * Our default Constructor
+     * @param capacity How many measurements to keep
+     */
+    public SensorHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        times = new long[capacity];
+        values = new float[capacity];
+    }
+
+    /**
+     * Add a measurement. Times should not go backwards.
+     * @param time When it was measured (System.currentTimeMillis())
+     * @param value
+     */
+    public synchronized void add(long time, float value) {
+        times[next] = time;
+        values[next] = value;
+        next = next + 1 == times.length ? 0 : next + 1;
+        if (count < times.length) {
+            count++;
+        }
+    }
+
+    /**
+     * Where the i'th oldest measurement is in the arrays
+     */
+    private int slot(int i) {
+        int slot = next - count + i;
+        return slot < 0 ? slot + times.length : slot;
+    }
+
+    /**
+     * How many measurements are kept now
+     * @return
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * How many measurements can be kept
+     * @return
+     */
+    public int getCapacity() {
+        return times.length;
+    }
+
+    /**
+     * When the latest measurement was made
+     * @return The time, or 0 if there are none
+     */
+    public synchronized long getLatestTime() {
+        return count == 0 ? 0 : times[slot(count - 1)];
+    }
+
+    /**
+     * The latest measurement
+     * @return The value, or NaN if there are none
+     */
+    public synchronized float getLatestValue() {
+        return count == 0 ? Float.NaN : values[slot(count - 1)];
+    }
+
+    /**
+     * Copy the latest measurements, oldest first
+     * @param n How many (at most)
+     * @param times Filled with the times (can be null)
+     * @param values Filled with the values (can be null)
+     * @return How many were copied (no more than n, size(), or the length of the arrays)
+     */
+    public synchronized int getLast(int n, long[] times, float[] values) {
+        n = Math.min(n, count);
+        if (times != null) {
+            n = Math.min(n, times.length);
+        }
+        if (values != null) {
+            n = Math.min(n, values.length);
+        }
+        if (n <= 0) {
+            return 0;
+        }
+        copy(count - n, n, times, values);
+        return n;
+    }
+
+    /**
+     * Copy the measurements made at or after a time, oldest first.
+     * If there are more than fit in the arrays, the latest ones are copied.
+     * @param time
+     * @param times Filled with the times (can be null)
+     * @param values Filled with the values (can be null)
+     * @return How many were copied
+     */
+    public synchronized int getSince(long time, long[] times, float[] values) {
+        return getLast(count - indexOf(time), times, values);
+    }
+
+    /**
+     * How many measurements were made at or after a time (to size the arrays for getSince())
+     * @param time
+     * @return
+     */
+    public synchronized int countSince(long time) {
+        return count - indexOf(time);
+    }
+
+    /**
+     * Forget all of the measurements
+     */
+    public synchronized void clear() {
+        next = 0;
+        count = 0;
+    }
+
+    /**
+     * The first measurement at or after a time (count if there are none); the times are in order
+     */
+    private int indexOf(long time) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[slot(mid)] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Copy n measurements, starting from the i'th oldest, in (at most) two pieces
+     */
+    private void copy(int i, int n, long[] toTimes, float[] toValues) {
+        int start = slot(i);
+        int first = Math.min(n, this.times.length - start);
+        if (toTimes != null) {
+            System.arraycopy(this.times, start, toTimes, 0, first);
+            System.arraycopy(this.times, 0, toTimes, first, n - first);
+        }
+        if (toValues != null) {
+            System.arraycopy(this.values, start, toValues, 0, first);
+            System.arraycopy(this.values, 0, toValues, first, n - first);
+        }
+    }
+
+    /**
+     * A copy with a different capacity, keeping the latest measurements that fit
+     * @param capacity
+     * @return
+     */
+    synchronized SensorHistory resized(int capacity) {
+        SensorHistory copy = new SensorHistory(capacity);
+        int n = Math.min(count, capacity);
+        copy(count - n, n, copy.times, copy.values);
+        copy.count = n;
+        copy.next = n == capacity ? 0 : n;
+        return copy;
+    }
+
+}
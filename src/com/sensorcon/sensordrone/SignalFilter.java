@@ -0,0 +1,40 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+/**
+ * Smooths a sensor's measurements before the listeners are told about them (see CoreDrone.setFilter()).
+ *
+ * A filter keeps its own state, so use a separate one for each sensor of each Sensordrone.
+ * It's called on the Drone's communication thread, once per measurement, and shouldn't allocate.
+ * The built-in ones are EmaFilter, MedianFilter and KalmanFilter; FilterChain runs several in a row.
+ */
+public interface SignalFilter {
+
+    /**
+     * Filter the next measurement
+     * @param value In the units listed in RawSampleProcessor
+     * @param time When it was measured (System.currentTimeMillis())
+     * @return The filtered value
+     */
+    float apply(float value, long time);
+
+    /**
+     * Forget the measurements so far (e.g. when the filter is put on another sensor)
+     */
+    void reset();
+
+}
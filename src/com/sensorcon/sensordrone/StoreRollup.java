@@ -0,0 +1,368 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The windows of one resolution (e.g. 1 minute) of a ReadingStore: the count, minimum, maximum and sum
+ * of each key's readings in each window, worked out as readings are added.
+ *
+ * Each key has one open window (a few numbers, in arrays indexed by key). When a reading lands in a different
+ * window, the open one is closed and appended to the rollup file. A window can end up in the file more than
+ * once (e.g. a reading that came late, or after reopening the store); whoever reads them adds them together.
+ *
+ * Record (big endian, RECORD_SIZE bytes): key (4 bytes), window start (8 bytes), count (4 bytes), min (float),
+ * max (float), sum (double), check (4 bytes, written last).
+ *
+ * The file is marked clean when it's closed. If it wasn't (the app died with windows still open), the
+ * ReadingStore makes it again from the segments.
+ */
+final class StoreRollup {
+
+    static final int MAGIC = 0x53445452;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 36;
+    static final int INDEX_BLOCK = 256;
+    // Header: magic, version, resolution (8 bytes), created (8 bytes), 4 bytes spare, then the clean mark
+    private static final int CLEAN_POSITION = 28;
+
+    final long resolution;
+    final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    // Closed windows not written yet
+    private final ByteBuffer pending = ByteBuffer.allocate(INDEX_BLOCK * RECORD_SIZE);
+    // Records in the file, and in the file plus pending
+    private long written = 0;
+    private long total = 0;
+    // Earliest and latest window start of every INDEX_BLOCK records; replaced (not changed) when they grow
+    private volatile long[] blockMin = new long[64];
+    private volatile long[] blockMax = new long[64];
+
+    // The open window of each key
+    private long[] openStart = new long[256];
+    private int[] openCount = new int[256];
+    private float[] openMin = new float[256];
+    private float[] openMax = new float[256];
+    private double[] openSum = new double[256];
+
+    private StoreRollup(File file, long resolution, RandomAccessFile raf) {
+        this.file = file;
+        this.resolution = resolution;
+        this.raf = raf;
+        this.channel = raf.getChannel();
+    }
+
+    /**
+     * Open a rollup file, or start one
+     * @return null if the file was there but wasn't closed cleanly (it has been deleted, so open it again
+     * to start it over)
+     */
+    static StoreRollup open(File file, long resolution) throws IOException {
+        boolean exists = file.exists();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        StoreRollup rollup = new StoreRollup(file, resolution, raf);
+        try {
+            if (!exists) {
+                raf.writeInt(MAGIC);
+                raf.writeInt(VERSION);
+                raf.writeLong(resolution);
+                raf.writeLong(System.currentTimeMillis());
+                raf.writeInt(0);
+                raf.writeInt(0);
+                raf.getFD().sync();
+                return rollup;
+            }
+            if (raf.length() < HEADER_SIZE) {
+                // Its header never made it to the disk
+                rollup.delete();
+                return null;
+            }
+            raf.seek(0);
+            if (raf.readInt() != MAGIC || raf.readInt() != VERSION || raf.readLong() != resolution) {
+                throw new IOException("Not a rollup file: " + file);
+            }
+            raf.seek(CLEAN_POSITION);
+            if (raf.readInt() == 0) {
+                rollup.delete();
+                return null;
+            }
+            raf.seek(CLEAN_POSITION);
+            raf.writeInt(0);
+            raf.getFD().sync();
+            rollup.load();
+            return rollup;
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private static int check(int key, long start, int count, int min, int max, long sum) {
+        int h = key * 0x9e3779b1;
+        h ^= (int) (start ^ (start >>> 32)) * 0x85ebca6b;
+        h ^= count * 0xc2b2ae35;
+        h ^= min * 0x27d4eb2f;
+        h ^= max * 0x165667b1;
+        h ^= (int) (sum ^ (sum >>> 32)) * 0x9e3779b1;
+        h ^= h >>> 15;
+        return h ^ 0x5d5d5d5d;
+    }
+
+    /**
+     * Read the index back, dropping a record that was half written
+     */
+    private void load() throws IOException {
+        long length = (raf.length() - HEADER_SIZE) / RECORD_SIZE;
+        ByteBuffer block = ByteBuffer.allocate(INDEX_BLOCK * RECORD_SIZE);
+        long record = 0;
+        while (record < length) {
+            int n = (int) Math.min(INDEX_BLOCK, length - record);
+            read(record, n, block);
+            int good = 0;
+            while (good < n && valid(block, good)) {
+                index(record + good, block.getLong(good * RECORD_SIZE + 4));
+                good++;
+            }
+            record += good;
+            if (good < n) {
+                break;
+            }
+        }
+        written = record;
+        total = record;
+        raf.setLength(HEADER_SIZE + record * RECORD_SIZE);
+    }
+
+    private static boolean valid(ByteBuffer block, int i) {
+        int p = i * RECORD_SIZE;
+        return block.getInt(p + 32) == check(block.getInt(p), block.getLong(p + 4), block.getInt(p + 12),
+                block.getInt(p + 16), block.getInt(p + 20), block.getLong(p + 24));
+    }
+
+    private void index(long record, long start) {
+        int b = (int) (record / INDEX_BLOCK);
+        if (b == blockMin.length) {
+            long[] min = new long[b * 2];
+            long[] max = new long[b * 2];
+            System.arraycopy(blockMin, 0, min, 0, b);
+            System.arraycopy(blockMax, 0, max, 0, b);
+            blockMax = max;
+            blockMin = min;
+        }
+        if (record % INDEX_BLOCK == 0) {
+            blockMin[b] = start;
+            blockMax[b] = start;
+        } else if (start < blockMin[b]) {
+            blockMin[b] = start;
+        } else if (start > blockMax[b]) {
+            blockMax[b] = start;
+        }
+    }
+
+    private long windowStart(long time) {
+        long q = time / resolution;
+        if (time % resolution != 0 && time < 0) {
+            q--;
+        }
+        return q * resolution;
+    }
+
+    /**
+     * Add a reading (one thread at a time)
+     */
+    void add(int key, long time, float value) throws IOException {
+        if (key >= openStart.length) {
+            grow(key + 1);
+        }
+        long start = windowStart(time);
+        if (openCount[key] > 0 && openStart[key] != start) {
+            close(key);
+        }
+        if (openCount[key] == 0) {
+            openStart[key] = start;
+            openMin[key] = value;
+            openMax[key] = value;
+        } else {
+            if (value < openMin[key]) {
+                openMin[key] = value;
+            }
+            if (value > openMax[key]) {
+                openMax[key] = value;
+            }
+        }
+        openCount[key]++;
+        openSum[key] += value;
+    }
+
+    private void grow(int size) {
+        int length = Math.max(size, openStart.length * 2);
+        long[] start = new long[length];
+        int[] count = new int[length];
+        float[] min = new float[length];
+        float[] max = new float[length];
+        double[] sum = new double[length];
+        System.arraycopy(openStart, 0, start, 0, openStart.length);
+        System.arraycopy(openCount, 0, count, 0, openCount.length);
+        System.arraycopy(openMin, 0, min, 0, openMin.length);
+        System.arraycopy(openMax, 0, max, 0, openMax.length);
+        System.arraycopy(openSum, 0, sum, 0, openSum.length);
+        openStart = start;
+        openCount = count;
+        openMin = min;
+        openMax = max;
+        openSum = sum;
+    }
+
+    /**
+     * Move a key's open window to the file
+     */
+    private void close(int key) throws IOException {
+        int p = pending.position();
+        int min = Float.floatToRawIntBits(openMin[key]);
+        int max = Float.floatToRawIntBits(openMax[key]);
+        long sum = Double.doubleToRawLongBits(openSum[key]);
+        pending.putInt(p, key);
+        pending.putLong(p + 4, openStart[key]);
+        pending.putInt(p + 12, openCount[key]);
+        pending.putInt(p + 16, min);
+        pending.putInt(p + 20, max);
+        pending.putLong(p + 24, sum);
+        pending.putInt(p + 32, check(key, openStart[key], openCount[key], min, max, sum));
+        pending.position(p + RECORD_SIZE);
+        index(total++, openStart[key]);
+        openCount[key] = 0;
+        openSum[key] = 0;
+        if (!pending.hasRemaining()) {
+            flush();
+        }
+    }
+
+    /**
+     * Write the closed windows to the file
+     */
+    void flush() throws IOException {
+        pending.flip();
+        while (pending.hasRemaining()) {
+            channel.write(pending, HEADER_SIZE + written * RECORD_SIZE + pending.position());
+        }
+        pending.clear();
+        written = total;
+    }
+
+    /**
+     * Close every open window, write everything, and mark the file clean
+     */
+    void close() throws IOException {
+        try {
+            for (int key = 0; key < openCount.length; key++) {
+                if (openCount[key] > 0) {
+                    close(key);
+                }
+            }
+            flush();
+            channel.force(false);
+            raf.seek(CLEAN_POSITION);
+            raf.writeInt(1);
+            raf.getFD().sync();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Throw it away (to make it again)
+     */
+    void delete() throws IOException {
+        raf.close();
+        if (!file.delete()) {
+            throw new IOException("Couldn't delete " + file);
+        }
+    }
+
+    /**
+     * What a query can read without holding up the writer
+     */
+    static final class Snapshot {
+        long records;
+        long[] blockMin;
+        long[] blockMax;
+        // The open windows (of every key that has one)
+        int openWindows;
+        int[] keys;
+        long[] start;
+        int[] count;
+        float[] min;
+        float[] max;
+        double[] sum;
+    }
+
+    /**
+     * Write what's pending, and copy the open windows (one thread at a time, with add())
+     */
+    Snapshot snapshot() throws IOException {
+        flush();
+        Snapshot snapshot = new Snapshot();
+        snapshot.records = written;
+        snapshot.blockMin = blockMin;
+        snapshot.blockMax = blockMax;
+        int open = 0;
+        for (int key = 0; key < openCount.length; key++) {
+            if (openCount[key] > 0) {
+                open++;
+            }
+        }
+        snapshot.keys = new int[open];
+        snapshot.start = new long[open];
+        snapshot.count = new int[open];
+        snapshot.min = new float[open];
+        snapshot.max = new float[open];
+        snapshot.sum = new double[open];
+        for (int key = 0; key < openCount.length; key++) {
+            if (openCount[key] > 0) {
+                int i = snapshot.openWindows++;
+                snapshot.keys[i] = key;
+                snapshot.start[i] = openStart[key];
+                snapshot.count[i] = openCount[key];
+                snapshot.min[i] = openMin[key];
+                snapshot.max[i] = openMax[key];
+                snapshot.sum[i] = openSum[key];
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Read n records, starting from a record, into a buffer (any thread)
+     */
+    void read(long record, int n, ByteBuffer into) throws IOException {
+        into.clear();
+        into.limit(n * RECORD_SIZE);
+        long position = HEADER_SIZE + record * RECORD_SIZE;
+        while (into.hasRemaining()) {
+            if (channel.read(into, position + into.position()) < 0) {
+                throw new IOException("Rollup file is short: " + file);
+            }
+        }
+    }
+
+}
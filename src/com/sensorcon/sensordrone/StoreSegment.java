@@ -0,0 +1,475 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * One segment file of a ReadingStore: a header, then fixed-width records, memory-mapped.
+ *
+ * Record (big endian, RECORD_SIZE bytes): time (ms since 1970, 8 bytes), key (drone << 8 | qsType, 4 bytes),
+ * value (float, 4 bytes), check (4 bytes). The check is written last; a record whose check doesn't match
+ * (e.g. half written when the app died) marks the end of the segment.
+ *
+ * The sparse time index holds the earliest and latest time of every INDEX_BLOCK records, and a small filter
+ * of the keys in the segment. It's kept in memory, and saved next to the segment (as .sdti) once the segment
+ * is full, along with a Summary of each key's records (so queries can often skip reading them).
+ */
+final class StoreSegment {
+
+    static final int MAGIC = 0x53445453;
+    static final int INDEX_MAGIC = 0x53445449;
+    static final int VERSION = 1;
+    static final int INDEX_VERSION = 2;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 20;
+    static final int INDEX_BLOCK = 256;
+    // A segment still being made; left over only if the app died while making it
+    static final String TEMP_SUFFIX = ".tmp";
+
+    final File file;
+    final long sequence;
+    final int capacity;
+    private final MappedByteBuffer buffer;
+    // Records [0, count) are whole; written by one thread at a time, read by any
+    private volatile int count = 0;
+    final long[] blockMin;
+    final long[] blockMax;
+    // Written with the records, so they're seen by anyone who has read count
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+    // One bit per key hash; a clear bit means the key isn't in the segment
+    private final long[] keyFilter = new long[KEY_FILTER_LONGS];
+    // Set once the segment is full
+    private volatile Summary summary;
+
+    static final int KEY_FILTER_LONGS = 16;
+
+    /**
+     * The count, range and first and last time of each key's records in a full segment, sorted by key
+     */
+    static final class Summary {
+        final int[] keys;
+        final int[] counts;
+        final float[] min;
+        final float[] max;
+        final double[] sum;
+        final long[] first;
+        final long[] last;
+
+        Summary(int size) {
+            keys = new int[size];
+            counts = new int[size];
+            min = new float[size];
+            max = new float[size];
+            sum = new double[size];
+            first = new long[size];
+            last = new long[size];
+        }
+
+        /**
+         * Where a key is, or -1
+         */
+        int find(int key) {
+            int low = 0;
+            int high = keys.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] < key) {
+                    low = mid + 1;
+                } else if (keys[mid] > key) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private StoreSegment(File file, long sequence, int capacity, MappedByteBuffer buffer) {
+        this.file = file;
+        this.sequence = sequence;
+        this.capacity = capacity;
+        this.buffer = buffer;
+        int blocks = (capacity + INDEX_BLOCK - 1) / INDEX_BLOCK;
+        blockMin = new long[blocks];
+        blockMax = new long[blocks];
+    }
+
+    static String fileName(long sequence) {
+        String digits = Long.toString(sequence);
+        StringBuilder name = new StringBuilder(20);
+        for (int i = digits.length(); i < 12; i++) {
+            name.append('0');
+        }
+        return name.append(digits).append(".sdts").toString();
+    }
+
+    /**
+     * Make a new, empty segment.
+     *
+     * It's made under a temporary name (see TEMP_SUFFIX) and only renamed once the header is on the disk,
+     * so a crash part way through can't leave a segment that won't open.
+     */
+    static StoreSegment create(File directory, long sequence, int capacity) throws IOException {
+        File file = new File(directory, fileName(sequence));
+        File temp = new File(directory, fileName(sequence) + TEMP_SUFFIX);
+        RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+        try {
+            raf.setLength(0);
+            raf.writeInt(MAGIC);
+            raf.writeInt(VERSION);
+            raf.writeInt(RECORD_SIZE);
+            raf.writeInt(capacity);
+            raf.writeLong(sequence);
+            raf.writeLong(System.currentTimeMillis());
+            raf.setLength(HEADER_SIZE + (long) capacity * RECORD_SIZE);
+            raf.getFD().sync();
+        } finally {
+            raf.close();
+        }
+        // Not while it's mapped (Windows won't rename a mapped file)
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Couldn't rename " + temp + " to " + file);
+        }
+        raf = new RandomAccessFile(file, "rw");
+        try {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            return new StoreSegment(file, sequence, capacity, buffer);
+        } finally {
+            // The mapping stays valid
+            raf.close();
+        }
+    }
+
+    /**
+     * Open a segment that's already there, finding where its whole records end
+     */
+    static StoreSegment open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (raf.length() < HEADER_SIZE) {
+                throw new IOException("Not a ReadingStore segment: " + file);
+            }
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != RECORD_SIZE) {
+                throw new IOException("Not a ReadingStore segment: " + file);
+            }
+            int capacity = (int) Math.min(buffer.getInt(12), (raf.length() - HEADER_SIZE) / RECORD_SIZE);
+            StoreSegment segment = new StoreSegment(file, buffer.getLong(16), capacity, buffer);
+            if (!segment.loadIndex()) {
+                segment.recover();
+                if (segment.isFull()) {
+                    segment.summary = segment.summarize();
+                }
+            }
+            return segment;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static int check(long time, int key, int valueBits) {
+        int h = (int) (time ^ (time >>> 32)) * 0x9e3779b1;
+        h ^= key * 0x85ebca6b;
+        h ^= valueBits * 0xc2b2ae35;
+        h ^= h >>> 15;
+        // So an all-zero (never written) record doesn't check out
+        return h ^ 0x5d5d5d5d;
+    }
+
+    private static int position(int record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+
+    /**
+     * Add a record (one thread at a time)
+     * @return false if the segment is full
+     */
+    boolean append(long time, int key, float value) {
+        int record = count;
+        if (record == capacity) {
+            return false;
+        }
+        int position = position(record);
+        int valueBits = Float.floatToRawIntBits(value);
+        buffer.putLong(position, time);
+        buffer.putInt(position + 8, key);
+        buffer.putInt(position + 12, valueBits);
+        buffer.putInt(position + 16, check(time, key, valueBits));
+        index(record, time, key);
+        count = record + 1;
+        return true;
+    }
+
+    private void index(int record, long time, int key) {
+        if (time < minTime) {
+            minTime = time;
+        }
+        if (time > maxTime) {
+            maxTime = time;
+        }
+        int bit = keyBit(key);
+        keyFilter[bit >>> 6] |= 1L << bit;
+        int block = record / INDEX_BLOCK;
+        if (record % INDEX_BLOCK == 0) {
+            blockMin[block] = time;
+            blockMax[block] = time;
+        } else if (time < blockMin[block]) {
+            blockMin[block] = time;
+        } else if (time > blockMax[block]) {
+            blockMax[block] = time;
+        }
+    }
+
+    /**
+     * Find the whole records after a crash, and rebuild the index
+     */
+    private void recover() {
+        // Start from scratch, in case a bad saved index was partly loaded
+        minTime = Long.MAX_VALUE;
+        maxTime = Long.MIN_VALUE;
+        Arrays.fill(keyFilter, 0);
+        int record = 0;
+        while (record < capacity) {
+            int position = position(record);
+            long time = buffer.getLong(position);
+            int key = buffer.getInt(position + 8);
+            int valueBits = buffer.getInt(position + 12);
+            if (buffer.getInt(position + 16) != check(time, key, valueBits)) {
+                break;
+            }
+            index(record, time, key);
+            record++;
+        }
+        count = record;
+    }
+
+    int count() {
+        return count;
+    }
+
+    boolean isFull() {
+        return count == capacity;
+    }
+
+    long time(int record) {
+        return buffer.getLong(position(record));
+    }
+
+    int key(int record) {
+        return buffer.getInt(position(record) + 8);
+    }
+
+    float value(int record) {
+        return Float.intBitsToFloat(buffer.getInt(position(record) + 12));
+    }
+
+    /**
+     * The earliest time in the segment (Long.MAX_VALUE if it's empty); read count() first
+     */
+    long minTime() {
+        return minTime;
+    }
+
+    /**
+     * The latest time in the segment (Long.MIN_VALUE if it's empty); read count() first
+     */
+    long maxTime() {
+        return maxTime;
+    }
+
+    private static int keyBit(int key) {
+        return ((key * 0x9e3779b1) >>> 22) & (KEY_FILTER_LONGS * 64 - 1);
+    }
+
+    /**
+     * Check if a key might have records in the segment (false means it doesn't)
+     */
+    boolean mayContain(int key) {
+        int bit = keyBit(key);
+        return (keyFilter[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * The Summary of a full segment, or null
+     */
+    Summary summary() {
+        return summary;
+    }
+
+    /**
+     * Go through the records to make a Summary
+     */
+    private Summary summarize() {
+        int records = count;
+        int[] keys = new int[records];
+        for (int i = 0; i < records; i++) {
+            keys[i] = key(i);
+        }
+        Arrays.sort(keys);
+        int distinct = 0;
+        for (int i = 0; i < records; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                keys[distinct++] = keys[i];
+            }
+        }
+        Summary made = new Summary(distinct);
+        System.arraycopy(keys, 0, made.keys, 0, distinct);
+        for (int i = 0; i < records; i++) {
+            int k = made.find(key(i));
+            long time = time(i);
+            float value = value(i);
+            if (made.counts[k] == 0) {
+                made.min[k] = value;
+                made.max[k] = value;
+                made.first[k] = time;
+                made.last[k] = time;
+            } else {
+                made.min[k] = Math.min(made.min[k], value);
+                made.max[k] = Math.max(made.max[k], value);
+                made.first[k] = Math.min(made.first[k], time);
+                made.last[k] = Math.max(made.last[k], time);
+            }
+            made.counts[k]++;
+            made.sum[k] += value;
+        }
+        return made;
+    }
+
+    /**
+     * Write the records out to the file
+     */
+    void force() {
+        buffer.force();
+    }
+
+    private File indexFile() {
+        return new File(file.getParentFile(), file.getName().replace(".sdts", ".sdti"));
+    }
+
+    /**
+     * Once the segment is full: make sure it's on disk, and save its index
+     */
+    void seal() throws IOException {
+        buffer.force();
+        Summary made = summarize();
+        summary = made;
+        File index = indexFile();
+        File temp = new File(index.getPath() + ".tmp");
+        FileOutputStream file = new FileOutputStream(temp);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+        try {
+            int blocks = (count + INDEX_BLOCK - 1) / INDEX_BLOCK;
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(count);
+            out.writeInt(blocks);
+            for (int i = 0; i < blocks; i++) {
+                out.writeLong(blockMin[i]);
+                out.writeLong(blockMax[i]);
+            }
+            for (int i = 0; i < KEY_FILTER_LONGS; i++) {
+                out.writeLong(keyFilter[i]);
+            }
+            out.writeInt(made.keys.length);
+            for (int i = 0; i < made.keys.length; i++) {
+                out.writeInt(made.keys[i]);
+                out.writeInt(made.counts[i]);
+                out.writeFloat(made.min[i]);
+                out.writeFloat(made.max[i]);
+                out.writeDouble(made.sum[i]);
+                out.writeLong(made.first[i]);
+                out.writeLong(made.last[i]);
+            }
+            out.flush();
+            file.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(index)) {
+            throw new IOException("Couldn't save " + index);
+        }
+    }
+
+    /**
+     * Load the saved index of a full segment
+     * @return false if there isn't a good one
+     */
+    private boolean loadIndex() {
+        File index = indexFile();
+        if (!index.exists()) {
+            return false;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)));
+            try {
+                if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                    return false;
+                }
+                int records = in.readInt();
+                int blocks = in.readInt();
+                if (records < 0 || records > capacity || blocks != (records + INDEX_BLOCK - 1) / INDEX_BLOCK) {
+                    return false;
+                }
+                for (int i = 0; i < blocks; i++) {
+                    blockMin[i] = in.readLong();
+                    blockMax[i] = in.readLong();
+                    minTime = Math.min(minTime, blockMin[i]);
+                    maxTime = Math.max(maxTime, blockMax[i]);
+                }
+                for (int i = 0; i < KEY_FILTER_LONGS; i++) {
+                    keyFilter[i] = in.readLong();
+                }
+                int size = in.readInt();
+                if (size < 0 || size > records) {
+                    return false;
+                }
+                Summary loaded = new Summary(size);
+                for (int i = 0; i < size; i++) {
+                    loaded.keys[i] = in.readInt();
+                    loaded.counts[i] = in.readInt();
+                    loaded.min[i] = in.readFloat();
+                    loaded.max[i] = in.readFloat();
+                    loaded.sum[i] = in.readDouble();
+                    loaded.first[i] = in.readLong();
+                    loaded.last[i] = in.readLong();
+                }
+                summary = loaded;
+                count = records;
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+}
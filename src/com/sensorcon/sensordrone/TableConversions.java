@@ -0,0 +1,62 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+
+/**
+ * The FAST DroneConversions. See DroneConversions for the error bounds.
+ */
+class TableConversions extends DroneConversions {
+
+    /*
+     * Altitude is linearly interpolated from a table with one entry every 64 Pascals.
+     * The curve is smooth enough that the worst case error (at the low pressure end) is about 0.0064 meters.
+     * 20000 - 112000 Pascals covers from below sea level to well above Everest.
+     */
+    private static final double ALTITUDE_TABLE_MIN = 20000.0;
+    private static final double ALTITUDE_TABLE_MAX = 112000.0;
+    private static final double ALTITUDE_TABLE_STEP = 64.0;
+    private static final double[] ALTITUDE_TABLE;
+
+    static {
+        int entries = (int) Math.ceil((ALTITUDE_TABLE_MAX - ALTITUDE_TABLE_MIN) / ALTITUDE_TABLE_STEP) + 1;
+        ALTITUDE_TABLE = new double[entries];
+        for (int i = 0; i < entries; i++) {
+            ALTITUDE_TABLE[i] = EXACT.altitudeMeters(ALTITUDE_TABLE_MIN + i * ALTITUDE_TABLE_STEP);
+        }
+    }
+
+    @Override
+    public double altitudeMeters(double pascals) {
+        if (!(pascals >= ALTITUDE_TABLE_MIN && pascals < ALTITUDE_TABLE_MAX)) {
+            // Off the table (or NaN)
+            return super.altitudeMeters(pascals);
+        }
+        double position = (pascals - ALTITUDE_TABLE_MIN) / ALTITUDE_TABLE_STEP;
+        int index = (int) position;
+        double fraction = position - index;
+        double low = ALTITUDE_TABLE[index];
+        return low + (ALTITUDE_TABLE[index + 1] - low) * fraction;
+    }
+
+    @Override
+    public double colorTemperature(double x, double y) {
+        double n = (x - 0.3320) / (0.1858 - y);
+        // Horner's method instead of Math.pow
+        return ((449.0 * n + 3525.0) * n + 6823.3) * n + 5520.33;
+    }
+
+}
@@ -80,6 +80,11 @@ public class UART_V1 extends DroneSensor {
     private final byte BAUDRATE_115200 = 0x04;
 
 
+    /**
+     * The baud rate last set (0 if it hasn't been set)
+     */
+    private int baudRate = 0;
+
     /**
      * Used to notify listeners
      */
@@ -106,6 +111,7 @@ public class UART_V1 extends DroneSensor {
         } catch (RejectedExecutionException e) {
             return false;
         }
+        baudRate = 2400;
         return true;
     }
 
@@ -129,6 +135,7 @@ public class UART_V1 extends DroneSensor {
         } catch (RejectedExecutionException e) {
             return false;
         }
+        baudRate = 9600;
         return true;
     }
 
@@ -152,6 +159,7 @@ public class UART_V1 extends DroneSensor {
         } catch (RejectedExecutionException e) {
             return false;
         }
+        baudRate = 19200;
         return true;
     }
 
@@ -175,6 +183,7 @@ public class UART_V1 extends DroneSensor {
         } catch (RejectedExecutionException e) {
             return false;
         }
+        baudRate = 38400;
         return true;
     }
 
@@ -198,10 +207,19 @@ public class UART_V1 extends DroneSensor {
         } catch (RejectedExecutionException e) {
             return false;
         }
+        baudRate = 115200;
         return true;
     }
 
 
+    /**
+     * The baud rate last set
+     * @return The baud rate, or 0 if it hasn't been set
+     */
+    int getBaudRate() {
+        return baudRate;
+    }
+
     /**
      * Read a data packet from the Sensordrone external RX pin.
      * @return Returns false if the Sensordrone is disconnected or not taking jobs.
@@ -234,7 +252,7 @@ public class UART_V1 extends DroneSensor {
                             }
                             uartInputDummy.write(response);
                         } catch (IOException e) {
-                            logger.infoLogger(TAG, "Failed to add data to stream", CoreDrone.DEBUG);
+                            logger.info(TAG, "Failed to add data to stream");
                         }
                     }
 
@@ -419,7 +437,7 @@ public class UART_V1 extends DroneSensor {
         try {
             uartInputDummy = new PipedOutputStream(uartInputStream);
         } catch (IOException e) {
-            logger.infoLogger(TAG, "Failed to connect stream", CoreDrone.DEBUG);
+            logger.info(TAG, "Failed to connect stream");
         }
     }
 
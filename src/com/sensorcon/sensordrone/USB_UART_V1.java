@@ -68,7 +68,7 @@ public class USB_UART_V1 extends DroneSensor {
         try {
             usbUartInputDummy = new PipedOutputStream(usbUartInputStream);
         } catch (IOException e) {
-            logger.infoLogger(TAG, "Failed to connect stream", CoreDrone.DEBUG);
+            logger.info(TAG, "Failed to connect stream");
         }
     }
 
@@ -111,7 +111,7 @@ public class USB_UART_V1 extends DroneSensor {
                             // Load it in
                             usbUartInputDummy.write(response);
                         } catch (IOException e) {
-                            logger.infoLogger(TAG, "Failed to add data to stream", CoreDrone.DEBUG);
+                            logger.info(TAG, "Failed to add data to stream");
                         }
                     }
 
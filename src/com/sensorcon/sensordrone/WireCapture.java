@@ -0,0 +1,191 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Records the exact bytes written to and read from a Sensordrone, with timestamps, so the session
+ * can be played back later by a ReplayDrone (see WireReplay).
+ *
+ * <pre>
+ * WireCapture capture = new WireCapture(new FileOutputStream("session.sdwc"));
+ * myDrone.setWireCapture(capture);
+ * myDrone.btConnect(MAC);
+ * ...
+ * myDrone.setWireCapture(null);
+ * capture.close();
+ * </pre>
+ *
+ * Every read and write is saved as it happened (a read that returned 3 bytes is saved as 3 bytes).
+ * If writing the capture fails, capturing stops; the connection is never affected.
+ *
+ * File format (big endian): "SDWC", a version byte, the start time (ms since 1970), then records of
+ * type (1 byte: TX, RX, or CONNECT), time since the start (ns, 8 bytes), length (2 bytes), and the bytes.
+ * A CONNECT record holds the MAC address that was connected to.
+ */
+public class WireCapture {
+
+    static final int MAGIC = 0x53445743;
+    static final int VERSION = 1;
+
+    static final int TYPE_TX = 0;
+    static final int TYPE_RX = 1;
+    static final int TYPE_CONNECT = 2;
+
+    private final DataOutputStream out;
+    private final long startNanos = System.nanoTime();
+    private boolean failed = false;
+    private boolean closed = false;
+    private long recordCount = 0;
+
+    /**
+     * Start a capture
+     * @param out Where to save it (e.g. a FileOutputStream); it's buffered for you
+     * @throws IOException
+     */
+    public WireCapture(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 16384));
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+        this.out.writeLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Used when a connection is opened
+     * @param MAC
+     */
+    void connected(String MAC) {
+        byte[] mac = (MAC == null ? "" : MAC).getBytes();
+        record(TYPE_CONNECT, mac, 0, mac.length);
+    }
+
+    /**
+     * Wrap the stream we read from the Sensordrone
+     * @param in
+     * @return
+     */
+    InputStream wrap(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    record(TYPE_RX, new byte[]{(byte) b}, 0, 1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    record(TYPE_RX, b, off, n);
+                }
+                return n;
+            }
+        };
+    }
+
+    /**
+     * Wrap the stream we write to the Sensordrone
+     * @param out
+     * @return
+     */
+    OutputStream wrap(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                super.out.write(b);
+                record(TYPE_TX, new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                // Straight through (FilterOutputStream would write it a byte at a time)
+                super.out.write(b, off, len);
+                record(TYPE_TX, b, off, len);
+            }
+        };
+    }
+
+    private synchronized void record(int type, byte[] data, int off, int len) {
+        if (failed || closed) {
+            return;
+        }
+        long time = System.nanoTime() - startNanos;
+        try {
+            // Very long reads are split (the length field is 16 bits)
+            do {
+                int chunk = Math.min(len, 0xffff);
+                out.writeByte(type);
+                out.writeLong(time);
+                out.writeShort(chunk);
+                out.write(data, off, chunk);
+                off += chunk;
+                len -= chunk;
+                recordCount++;
+            } while (len > 0);
+        } catch (IOException e) {
+            failed = true;
+        }
+    }
+
+    /**
+     * How many records have been saved
+     * @return
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Check if saving the capture failed (and so stopped)
+     * @return
+     */
+    public synchronized boolean hasFailed() {
+        return failed;
+    }
+
+    /**
+     * Save anything buffered
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        if (!closed) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Stop capturing, and close the stream it was saved to
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        out.close();
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A session saved by a WireCapture, loaded into memory for a ReplayDrone.
+ *
+ * A capture can hold several connections; each one is a session (see getSessionCount()).
+ * A capture that was cut short (e.g. the app crashed) loads up to its last whole record.
+ */
+public class WireReplay {
+
+    private final long startMillis;
+    private int count = 0;
+    private int[] types = new int[1024];
+    private long[] times = new long[1024];
+    private int[] offsets = new int[1025];
+    private byte[] data = new byte[16384];
+    // Index of each CONNECT record
+    private int[] sessions = new int[4];
+    private int sessionCount = 0;
+
+    /**
+     * Load a capture
+     * @param in (e.g. a FileInputStream); it's buffered for you, and read to the end (but not closed)
+     * @throws IOException If it isn't a capture
+     */
+    public WireReplay(InputStream in) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(in, 16384));
+        if (dis.readInt() != WireCapture.MAGIC || dis.readUnsignedByte() != WireCapture.VERSION) {
+            throw new IOException("Not a WireCapture");
+        }
+        startMillis = dis.readLong();
+        byte[] chunk = new byte[0xffff];
+        while (true) {
+            int type;
+            long time;
+            int length;
+            try {
+                type = dis.readUnsignedByte();
+                time = dis.readLong();
+                length = dis.readUnsignedShort();
+                dis.readFully(chunk, 0, length);
+            } catch (EOFException e) {
+                break;
+            }
+            add(type, time, chunk, length);
+        }
+    }
+
+    private void add(int type, long time, byte[] bytes, int length) {
+        if (count == types.length) {
+            types = grow(types, count * 2);
+            long[] newTimes = new long[count * 2];
+            System.arraycopy(times, 0, newTimes, 0, count);
+            times = newTimes;
+            offsets = grow(offsets, count * 2 + 1);
+        }
+        int offset = offsets[count];
+        if (offset + length > data.length) {
+            byte[] newData = new byte[Math.max(data.length * 2, offset + length)];
+            System.arraycopy(data, 0, newData, 0, offset);
+            data = newData;
+        }
+        System.arraycopy(bytes, 0, data, offset, length);
+        types[count] = type;
+        times[count] = time;
+        offsets[count + 1] = offset + length;
+        if (type == WireCapture.TYPE_CONNECT) {
+            if (sessionCount == sessions.length) {
+                sessions = grow(sessions, sessionCount * 2);
+            }
+            sessions[sessionCount++] = count;
+        }
+        count++;
+    }
+
+    private static int[] grow(int[] array, int size) {
+        int[] bigger = new int[size];
+        System.arraycopy(array, 0, bigger, 0, array.length);
+        return bigger;
+    }
+
+    /**
+     * When the capture was started
+     * @return Milliseconds since 1970
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * How many connections are in the capture
+     * @return
+     */
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     * The MAC address a session was connected to
+     * @param session
+     * @return
+     */
+    public String getMAC(int session) {
+        int record = sessions[session];
+        return new String(data, offsets[record], offsets[record + 1] - offsets[record]);
+    }
+
+    /**
+     * How many reads and writes are in the capture
+     * @return
+     */
+    public int getRecordCount() {
+        return count;
+    }
+
+    // For ReplayDrone
+
+    /**
+     * The first record of a session (after its CONNECT)
+     */
+    int sessionStart(int session) {
+        return sessions[session] + 1;
+    }
+
+    /**
+     * One past the last record of a session
+     */
+    int sessionEnd(int session) {
+        return session + 1 < sessionCount ? sessions[session + 1] : count;
+    }
+
+    int type(int record) {
+        return types[record];
+    }
+
+    long time(int record) {
+        return times[record];
+    }
+
+    int offset(int record) {
+        return offsets[record];
+    }
+
+    int length(int record) {
+        return offsets[record + 1] - offsets[record];
+    }
+
+    byte[] data() {
+        return data;
+    }
+
+}
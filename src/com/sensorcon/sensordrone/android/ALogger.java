@@ -42,11 +42,9 @@ class ALogger extends com.sensorcon.sensordrone.Logger {
             return;
         }
         // Parse through the byte array
-        String dataString = "TX:";
-        for (int i = 0; i < data.length; i++) {
-            dataString += " " + Integer.toHexString(data[i] & 0x000000ff);
-        }
-        Log.d(TAG, dataString);
+        StringBuilder dataString = new StringBuilder("TX:");
+        appendHex(dataString, data, data.length);
+        Log.d(TAG, dataString.toString());
         return;
     }
 
@@ -62,11 +60,9 @@ class ALogger extends com.sensorcon.sensordrone.Logger {
             return;
         }
         // Parse through the byte array
-        String dataString = "RX:";
-        for (int i = 0; i < data.length; i++) {
-            dataString += " " + Integer.toHexString(data[i] & 0x000000ff);
-        }
-        Log.d(TAG, dataString);
+        StringBuilder dataString = new StringBuilder("RX:");
+        appendHex(dataString, data, data.length);
+        Log.d(TAG, dataString.toString());
         return;
     }
 
@@ -102,4 +98,19 @@ class ALogger extends com.sensorcon.sensordrone.Logger {
         Log.i(TAG, msg);
         return;
     }
+
+    /**
+     * Write a line from the LogAppender to logcat
+     * @param level
+     * @param TAG
+     * @param line
+     */
+    @Override
+    protected void write(int level, String TAG, String line) {
+        if (level == LEVEL_INFO) {
+            Log.i(TAG, line);
+        } else {
+            Log.d(TAG, line);
+        }
+    }
 }
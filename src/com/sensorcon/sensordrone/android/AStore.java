@@ -0,0 +1,72 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone.android;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.sensorcon.sensordrone.DroneStore;
+
+/**
+ * Our DroneStore class for Android. Keeps one SharedPreferences file per Sensordrone MAC address.
+ *
+ * Usage: myDrone.setDroneStore(new AStore(getApplicationContext()));
+ */
+public class AStore extends DroneStore {
+
+    private Context context;
+
+    /**
+     * Our default constructor
+     * @param appContext Your apps context
+     */
+    public AStore(Context appContext) {
+        context = appContext;
+    }
+
+    private SharedPreferences preferencesFor(String MAC) {
+        // No colons in file names
+        return context.getSharedPreferences("sensordrone_" + MAC.replaceAll(":", "").toUpperCase(),
+                Context.MODE_PRIVATE);
+    }
+
+    public String get(String MAC, String key) {
+        return preferencesFor(MAC).getString(key, null);
+    }
+
+    public void put(String MAC, String key, String value) {
+        // apply() writes to disk in the background (API 9+, which we build against)
+        preferencesFor(MAC).edit().putString(key, value).apply();
+    }
+
+    public void remove(String MAC, String key) {
+        preferencesFor(MAC).edit().remove(key).apply();
+    }
+
+    @Override
+    public void putAll(String MAC, String[] keys, String[] values) {
+        // One commit for all of them
+        SharedPreferences.Editor editor = preferencesFor(MAC).edit();
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] == null) {
+                editor.remove(keys[i]);
+            } else {
+                editor.putString(keys[i], values[i]);
+            }
+        }
+        editor.apply();
+    }
+}
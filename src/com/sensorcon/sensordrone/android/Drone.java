@@ -23,7 +23,6 @@ import com.sensorcon.sensordrone.DroneEventObject;
 
 import java.io.IOException;
 import java.util.UUID;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 
@@ -105,39 +104,45 @@ public class Drone extends CoreDrone {
         // Lets connect the socket
         try {
             btSocket.connect();
-            iStream = btSocket.getInputStream();
-            oStream = btSocket.getOutputStream();
+            openStreams(MAC, btSocket.getInputStream(), btSocket.getOutputStream());
 
 
             // We are connected: Set up an executor thread to handle communications.
             // All communications should be setup as a runnable executed on this thread.
-            commService = Executors.newSingleThreadExecutor();
+            commService = newCommService();
             // Store the MAC address
             lastMAC = MAC;
 
-            // Get Hardware / Firmware #
-            byte[] readHWFW = {0x50, 0x02, 0x33, 0x00};
-            byte[] HWFW = localComms.sdCallAndResponse(readHWFW);
-            // Cancel if we don't get a good response
-            if (HWFW == null) {
-                // If we get a null here, assume there was an error
-                resetFirmwareVersion();
-                oStream.close();
-                iStream.close();
-                btSocket.close();
-                return false;
-            } else {
-                try {
-                    hardwareVersion  = (HWFW[0] & 0xff);
-                    firmwareVersion  = (HWFW[1] & 0xff);
-                    firmwareRevision = (HWFW[2] & 0xff);
-                } catch (ArrayIndexOutOfBoundsException o) {
-                    //
+            // Use what we remember about this Sensordrone if we can (it gets checked once we're connected),
+            // otherwise ask it.
+            boolean warm = loadRememberedHandshake();
+            if (!warm) {
+                // Get Hardware / Firmware #
+                byte[] readHWFW = {0x50, 0x02, 0x33, 0x00};
+                byte[] HWFW = localComms.sdCallAndResponse(readHWFW);
+                // Cancel if we don't get a good response
+                if (HWFW == null) {
+                    // If we get a null here, assume there was an error
                     resetFirmwareVersion();
+                    commService.shutdown();
                     oStream.close();
                     iStream.close();
                     btSocket.close();
                     return false;
+                } else {
+                    try {
+                        hardwareVersion  = (HWFW[0] & 0xff);
+                        firmwareVersion  = (HWFW[1] & 0xff);
+                        firmwareRevision = (HWFW[2] & 0xff);
+                    } catch (ArrayIndexOutOfBoundsException o) {
+                        //
+                        resetFirmwareVersion();
+                        commService.shutdown();
+                        oStream.close();
+                        iStream.close();
+                        btSocket.close();
+                        return false;
+                    }
                 }
             }
 
@@ -146,6 +151,7 @@ public class Drone extends CoreDrone {
             boolean hwCheck = initializeHardware(hardwareVersion);
             // Calibration constants are read in initializeHardware()
             if (!hwCheck) {
+                commService.shutdown();
                 oStream.close();
                 iStream.close();
                 btSocket.close();
@@ -153,6 +159,12 @@ public class Drone extends CoreDrone {
             }
 
 
+            if (warm) {
+                validateRememberedHandshake();
+            } else {
+                rememberHandshake();
+            }
+
             // notify that we're ready
             isConnected = true;
             notifyDroneEventHandler(deConnected);
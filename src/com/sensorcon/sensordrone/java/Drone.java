@@ -22,7 +22,7 @@ import javax.microedition.io.StreamConnection;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -66,36 +66,42 @@ public class Drone extends CoreDrone {
         }
         // Lets connect the socket
         try {
-            iStream = btSocket.openDataInputStream();
-            oStream = btSocket.openDataOutputStream();
+            openStreams(MAC, btSocket.openDataInputStream(), btSocket.openDataOutputStream());
 
             // Store the MAC address
             lastMAC = MAC;
-            commService = Executors.newSingleThreadExecutor();
-
-            // Get Hardware / Firmware #
-            byte[] readHWFW = {0x50, 0x02, 0x33, 0x00};
-            byte[] HWFW = localComms.sdCallAndResponse(readHWFW);
-            // Cancel if we don't get a good response
-            if (HWFW == null) {
-                // If we get a null here, assume there was an error
-                resetFirmwareVersion();
-                oStream.close();
-                iStream.close();
-                btSocket.close();
-                return false;
-            } else {
-                try {
-                    hardwareVersion = (int)(HWFW[0]);
-                    firmwareVersion = (int)(HWFW[1]);
-                    firmwareRevision = (int)(HWFW[2]);
-                } catch (ArrayIndexOutOfBoundsException o) {
-                    //
+            commService = newCommService();
+
+            // Use what we remember about this Sensordrone if we can (it gets checked once we're connected),
+            // otherwise ask it.
+            boolean warm = loadRememberedHandshake();
+            if (!warm) {
+                // Get Hardware / Firmware #
+                byte[] readHWFW = {0x50, 0x02, 0x33, 0x00};
+                byte[] HWFW = localComms.sdCallAndResponse(readHWFW);
+                // Cancel if we don't get a good response
+                if (HWFW == null) {
+                    // If we get a null here, assume there was an error
                     resetFirmwareVersion();
+                    commService.shutdown();
                     oStream.close();
                     iStream.close();
                     btSocket.close();
                     return false;
+                } else {
+                    try {
+                        hardwareVersion = (int)(HWFW[0]);
+                        firmwareVersion = (int)(HWFW[1]);
+                        firmwareRevision = (int)(HWFW[2]);
+                    } catch (ArrayIndexOutOfBoundsException o) {
+                        //
+                        resetFirmwareVersion();
+                        commService.shutdown();
+                        oStream.close();
+                        iStream.close();
+                        btSocket.close();
+                        return false;
+                    }
                 }
             }
 
@@ -103,6 +109,7 @@ public class Drone extends CoreDrone {
             // Make sure the Controller objects are initialized correctly
             boolean hwCheck = initializeHardware(hardwareVersion);
             if (!hwCheck) {
+                commService.shutdown();
                 oStream.close();
                 iStream.close();
                 btSocket.close();
@@ -110,6 +117,12 @@ public class Drone extends CoreDrone {
             }
 
 
+            if (warm) {
+                validateRememberedHandshake();
+            } else {
+                rememberHandshake();
+            }
+
             // notify that we're ready
             isConnected = true;
             notifyDroneEventListener(deConnected);
@@ -234,6 +247,23 @@ public class Drone extends CoreDrone {
         }
     }
 
+    /**
+     * Run the Sensordrone's communications on a virtual thread, if this JVM has them (Java 21+).
+     * Set this before connecting. Uses a normal thread if virtual threads aren't available.
+     *
+     * @param enable
+     * @return true if virtual threads will be used
+     */
+    public boolean setVirtualThreads(boolean enable) {
+        if (!enable) {
+            setCommThreadFactory(null);
+            return false;
+        }
+        ThreadFactory factory = JThreads.virtualThreadFactory("sensordrone-comm-");
+        setCommThreadFactory(factory);
+        return factory != null;
+    }
+
     public Drone() {
         super(new JLogger());
     }
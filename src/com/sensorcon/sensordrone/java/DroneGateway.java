@@ -0,0 +1,329 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone.java;
+
+import com.sensorcon.sensordrone.CoreDrone;
+import com.sensorcon.sensordrone.DroneEventHandler;
+import com.sensorcon.sensordrone.DroneEventObject;
+import com.sensorcon.sensordrone.FleetReading;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares live readings from the Drones in this process with other local processes, so only one
+ * process has to own the Bluetooth links.
+ *
+ * Clients connect over TCP (see GatewayClient, and GatewayProtocol for the format). Each client gets
+ * the latest value of everything it subscribed to, then every new reading.
+ *
+ * Readings are handed to each client through a small "latest value" table: if a client falls behind,
+ * newer readings of the same sensor on the same Sensordrone replace the ones it hasn't been sent yet.
+ * A slow client only ever gets fewer (newer) readings; it never slows down the Drones or other clients.
+ */
+public class DroneGateway {
+
+    /**
+     * A connected client
+     */
+    private class Session implements Runnable {
+        private final Socket socket;
+        private volatile int typeMask = 0;
+        // Readings not yet sent, by sensor; newer ones replace older ones (conflation)
+        private final LinkedHashMap<String, FleetReading> pending = new LinkedHashMap<String, FleetReading>();
+        private final List<FleetReading> sending = new ArrayList<FleetReading>();
+        private boolean closed = false;
+
+        Session(Socket socket) {
+            this.socket = socket;
+        }
+
+        void publish(String key, FleetReading reading) {
+            if ((typeMask & (1 << reading.qsType)) == 0) {
+                return;
+            }
+            synchronized (pending) {
+                if (pending.put(key, reading) != null) {
+                    conflated.incrementAndGet();
+                }
+                pending.notify();
+            }
+        }
+
+        void close() {
+            synchronized (pending) {
+                closed = true;
+                pending.notify();
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(HELLO_TIMEOUT);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                GatewayProtocol.readHello(in);
+                typeMask = in.readUnsignedShort();
+                GatewayProtocol.writeHello(out);
+                out.flush();
+                socket.setSoTimeout(0);
+
+                // Start with the latest of everything
+                for (Map.Entry<String, FleetReading> entry : latest.entrySet()) {
+                    publish(entry.getKey(), entry.getValue());
+                }
+
+                while (true) {
+                    synchronized (pending) {
+                        while (pending.isEmpty() && !closed) {
+                            pending.wait();
+                        }
+                        if (closed) {
+                            return;
+                        }
+                        sending.addAll(pending.values());
+                        pending.clear();
+                    }
+                    for (int i = 0; i < sending.size(); i++) {
+                        GatewayProtocol.writeReading(out, sending.get(i));
+                    }
+                    sent.addAndGet(sending.size());
+                    sending.clear();
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // The client went away (or never said hello properly)
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                sessions.remove(this);
+                close();
+            }
+        }
+    }
+
+    /**
+     * Listens to one Drone
+     */
+    private class DroneHandler implements DroneEventHandler {
+        private final CoreDrone drone;
+
+        DroneHandler(CoreDrone drone) {
+            this.drone = drone;
+        }
+
+        @Override
+        public void parseEvent(DroneEventObject event) {
+            int qsType = CoreDrone.quickType(event);
+            if (qsType < 0) {
+                return;
+            }
+            FleetReading reading = drone.getReading(qsType);
+            if (reading == null) {
+                return;
+            }
+            String key = reading.MAC + "/" + qsType;
+            latest.put(key, reading);
+            for (Session session : sessions) {
+                session.publish(key, reading);
+            }
+        }
+    }
+
+    /**
+     * The port used if you don't pick one
+     */
+    public static final int DEFAULT_PORT = 7341;
+
+    // How long a new client has to say hello (ms)
+    private static final int HELLO_TIMEOUT = 5000;
+
+    private final InetSocketAddress address;
+    private final ThreadFactory threadFactory;
+    private ServerSocket serverSocket;
+    private Thread acceptThread;
+
+    private final Map<CoreDrone, DroneHandler> drones = new IdentityHashMap<CoreDrone, DroneHandler>();
+    private final ConcurrentHashMap<String, FleetReading> latest = new ConcurrentHashMap<String, FleetReading>();
+    private final CopyOnWriteArrayList<Session> sessions = new CopyOnWriteArrayList<Session>();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong conflated = new AtomicLong();
+
+    /**
+     * A gateway only reachable from this machine, on DEFAULT_PORT
+     */
+    public DroneGateway() {
+        this(DEFAULT_PORT);
+    }
+
+    /**
+     * A gateway only reachable from this machine
+     * @param port The TCP port to listen on (0 picks a free one; see getPort())
+     */
+    public DroneGateway(int port) {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * A gateway listening on a particular address
+     * @param address
+     */
+    public DroneGateway(InetSocketAddress address) {
+        this.address = address;
+        // Client threads mostly wait; use virtual threads if we have them
+        ThreadFactory factory = JThreads.virtualThreadFactory("sensordrone-gateway-");
+        if (factory == null) {
+            factory = new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "sensordrone-gateway");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+        }
+        threadFactory = factory;
+    }
+
+    /**
+     * Share a Drone's readings
+     * @param drone
+     */
+    public synchronized void addDrone(CoreDrone drone) {
+        if (drones.containsKey(drone)) {
+            return;
+        }
+        DroneHandler handler = new DroneHandler(drone);
+        drones.put(drone, handler);
+        drone.registerDroneListener(handler);
+    }
+
+    /**
+     * Stop sharing a Drone's readings
+     * @param drone
+     */
+    public synchronized void removeDrone(CoreDrone drone) {
+        DroneHandler handler = drones.remove(drone);
+        if (handler != null) {
+            drone.unregisterDroneListener(handler);
+        }
+    }
+
+    /**
+     * Start accepting clients
+     * @throws IOException If the port can't be opened
+     */
+    public synchronized void start() throws IOException {
+        if (serverSocket != null) {
+            return;
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address);
+        final ServerSocket listening = serverSocket;
+        acceptThread = threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                while (!listening.isClosed()) {
+                    try {
+                        Socket socket = listening.accept();
+                        Session session = new Session(socket);
+                        sessions.add(session);
+                        threadFactory.newThread(session).start();
+                    } catch (IOException e) {
+                        // Closed by stop(), or a bad accept; keep going until we're closed
+                    }
+                }
+            }
+        });
+        acceptThread.start();
+    }
+
+    /**
+     * Stop accepting clients, and disconnect the ones we have. The Drones are left alone.
+     */
+    public synchronized void stop() {
+        if (serverSocket == null) {
+            return;
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            //
+        }
+        serverSocket = null;
+        for (Session session : sessions) {
+            session.close();
+        }
+        sessions.clear();
+    }
+
+    /**
+     * The port we're listening on
+     * @return The port, or -1 if not started
+     */
+    public synchronized int getPort() {
+        return serverSocket == null ? -1 : serverSocket.getLocalPort();
+    }
+
+    /**
+     * How many clients are connected
+     * @return
+     */
+    public int getClientCount() {
+        return sessions.size();
+    }
+
+    /**
+     * How many readings have been sent to clients
+     * @return
+     */
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    /**
+     * How many readings were replaced by newer ones before a slow client got them
+     * @return
+     */
+    public long getConflatedCount() {
+        return conflated.get();
+    }
+
+}
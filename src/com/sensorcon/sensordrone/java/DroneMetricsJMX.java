@@ -0,0 +1,209 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone.java;
+
+import com.sensorcon.sensordrone.CoreDrone;
+import com.sensorcon.sensordrone.DroneMetrics;
+import com.sensorcon.sensordrone.LatencyHistogram;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Makes a Drone's DroneMetrics visible over JMX (e.g. in jconsole or VisualVM), as
+ * com.sensorcon.sensordrone:type=Drone,mac=...
+ *
+ * <pre>
+ * ObjectName name = DroneMetricsJMX.register(myDrone);
+ * ...
+ * DroneMetricsJMX.unregister(name);
+ * </pre>
+ */
+public class DroneMetricsJMX implements DroneMetricsMXBean {
+
+    private static final String[] ERROR_NAMES = {"generic", "command_not_recognized", "low_battery", "i2c_timeout"};
+
+    private final CoreDrone myDrone;
+
+    /**
+     * Our default Constructor
+     * @param drone
+     */
+    public DroneMetricsJMX(CoreDrone drone) {
+        myDrone = drone;
+    }
+
+    /**
+     * Register a Drone's metrics with the platform MBeanServer. Do it after connecting,
+     * so the name has the MAC address.
+     * @param drone
+     * @return The name it was registered under
+     * @throws JMException If it couldn't be registered (e.g. the name is already taken)
+     */
+    public static ObjectName register(CoreDrone drone) throws JMException {
+        ObjectName name = new ObjectName("com.sensorcon.sensordrone:type=Drone,mac="
+                + ObjectName.quote(drone.lastMAC == null ? "" : drone.lastMAC));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new DroneMetricsJMX(drone), name);
+        return name;
+    }
+
+    /**
+     * Take a Drone's metrics back out of the platform MBeanServer
+     * @param name What register() returned
+     */
+    public static void unregister(ObjectName name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            //
+        }
+    }
+
+    @Override
+    public String getMAC() {
+        return myDrone.lastMAC;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return myDrone.getMetrics().isConnected();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return myDrone.getMetrics().getQueueDepth();
+    }
+
+    @Override
+    public long getIOErrorCount() {
+        return myDrone.getMetrics().getIOErrorCount();
+    }
+
+    @Override
+    public long getConnectionLostCount() {
+        return myDrone.getMetrics().getConnectionLostCount();
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        DroneMetrics metrics = myDrone.getMetrics();
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        long other = 0;
+        for (int code = 0; code < 256; code++) {
+            if (code < ERROR_NAMES.length) {
+                counts.put(ERROR_NAMES[code], metrics.getErrorCount(code));
+            } else {
+                other += metrics.getErrorCount(code);
+            }
+        }
+        counts.put("other", other);
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        DroneMetrics metrics = myDrone.getMetrics();
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (int command = 0; command < 256; command++) {
+            if (metrics.getCommandLatency(command) != null) {
+                counts.put(MetricsServer.commandName(command), metrics.getCommandCount(command));
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getCommandP50Micros() {
+        return commandPercentiles(0.5);
+    }
+
+    @Override
+    public Map<String, Long> getCommandP99Micros() {
+        return commandPercentiles(0.99);
+    }
+
+    @Override
+    public Map<String, Long> getCommandP999Micros() {
+        return commandPercentiles(0.999);
+    }
+
+    @Override
+    public Map<String, Long> getQueueWaitP50Micros() {
+        return queueWaitPercentiles(0.5);
+    }
+
+    @Override
+    public Map<String, Long> getQueueWaitP99Micros() {
+        return queueWaitPercentiles(0.99);
+    }
+
+    @Override
+    public Map<String, Long> getQueueWaitP999Micros() {
+        return queueWaitPercentiles(0.999);
+    }
+
+    @Override
+    public Map<String, Long> getSensorCallCounts() {
+        DroneMetrics metrics = myDrone.getMetrics();
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (int sensor = 0; sensor < metrics.getSensorCount(); sensor++) {
+            counts.put(metrics.getSensorName(sensor), metrics.getSensorCallCount(sensor));
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getSensorP99Micros() {
+        DroneMetrics metrics = myDrone.getMetrics();
+        Map<String, Long> percentiles = new LinkedHashMap<String, Long>();
+        for (int sensor = 0; sensor < metrics.getSensorCount(); sensor++) {
+            percentiles.put(metrics.getSensorName(sensor), metrics.getSensorLatency(sensor).getPercentileMicros(0.99));
+        }
+        return percentiles;
+    }
+
+    private Map<String, Long> commandPercentiles(double fraction) {
+        DroneMetrics metrics = myDrone.getMetrics();
+        Map<String, Long> percentiles = new LinkedHashMap<String, Long>();
+        for (int command = 0; command < 256; command++) {
+            LatencyHistogram histogram = metrics.getCommandLatency(command);
+            if (histogram != null) {
+                percentiles.put(MetricsServer.commandName(command), histogram.getPercentileMicros(fraction));
+            }
+        }
+        return percentiles;
+    }
+
+    private Map<String, Long> queueWaitPercentiles(double fraction) {
+        DroneMetrics metrics = myDrone.getMetrics();
+        Map<String, Long> percentiles = new LinkedHashMap<String, Long>();
+        for (int command = 0; command < 256; command++) {
+            LatencyHistogram histogram = metrics.getCommandQueueWait(command);
+            if (histogram != null) {
+                percentiles.put(MetricsServer.commandName(command), histogram.getPercentileMicros(fraction));
+            }
+        }
+        return percentiles;
+    }
+
+}
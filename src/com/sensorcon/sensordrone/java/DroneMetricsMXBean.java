@@ -0,0 +1,96 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone.java;
+
+import java.util.Map;
+
+/**
+ * The JMX view of a Drone's DroneMetrics (see DroneMetricsJMX).
+ * Latencies are in microseconds.
+ */
+public interface DroneMetricsMXBean {
+
+    String getMAC();
+
+    boolean isConnected();
+
+    int getQueueDepth();
+
+    long getIOErrorCount();
+
+    long getConnectionLostCount();
+
+    /**
+     * Error responses, by error code name
+     * @return
+     */
+    Map<String, Long> getErrorCounts();
+
+    /**
+     * Calls sent, by command byte (e.g. "0x10")
+     * @return
+     */
+    Map<String, Long> getCommandCounts();
+
+    /**
+     * Median service time (write start to response read), by command byte
+     * @return
+     */
+    Map<String, Long> getCommandP50Micros();
+
+    /**
+     * 99th percentile service time, by command byte
+     * @return
+     */
+    Map<String, Long> getCommandP99Micros();
+
+    /**
+     * 99.9th percentile service time, by command byte
+     * @return
+     */
+    Map<String, Long> getCommandP999Micros();
+
+    /**
+     * Median time in the commService queue, by command byte
+     * @return
+     */
+    Map<String, Long> getQueueWaitP50Micros();
+
+    /**
+     * 99th percentile time in the commService queue, by command byte
+     * @return
+     */
+    Map<String, Long> getQueueWaitP99Micros();
+
+    /**
+     * 99.9th percentile time in the commService queue, by command byte
+     * @return
+     */
+    Map<String, Long> getQueueWaitP999Micros();
+
+    /**
+     * Calls sent, by sensor
+     * @return
+     */
+    Map<String, Long> getSensorCallCounts();
+
+    /**
+     * 99th percentile round trip time, by sensor
+     * @return
+     */
+    Map<String, Long> getSensorP99Micros();
+
+}
@@ -0,0 +1,127 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone.java;
+
+import com.sensorcon.sensordrone.FleetReading;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * A client for a DroneGateway.
+ *
+ * <pre>
+ * GatewayClient client = new GatewayClient(port, 1 &lt;&lt; CoreDrone.QS_TYPE_HUMIDITY);
+ * while (true) {
+ *     FleetReading reading = client.read();
+ *     ...
+ * }
+ * </pre>
+ *
+ * Running the main method prints every reading from a gateway on this machine:
+ * java com.sensorcon.sensordrone.java.GatewayClient [port]
+ */
+public class GatewayClient {
+
+    private final Socket socket;
+    private final DataInputStream in;
+
+    /**
+     * Connect to a gateway on this machine, and subscribe to everything
+     * @param port
+     * @throws IOException
+     */
+    public GatewayClient(int port) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port, GatewayProtocol.ALL_TYPES);
+    }
+
+    /**
+     * Connect to a gateway on this machine
+     * @param port
+     * @param typeMask Bit n subscribes to QS type n (e.g. 1 &lt;&lt; CoreDrone.QS_TYPE_HUMIDITY)
+     * @throws IOException
+     */
+    public GatewayClient(int port, int typeMask) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port, typeMask);
+    }
+
+    /**
+     * Connect to a gateway
+     * @param host
+     * @param port
+     * @param typeMask Bit n subscribes to QS type n (e.g. 1 &lt;&lt; CoreDrone.QS_TYPE_HUMIDITY)
+     * @throws IOException
+     */
+    public GatewayClient(InetAddress host, int port, int typeMask) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        GatewayProtocol.writeHello(out);
+        out.writeShort(typeMask);
+        out.flush();
+        try {
+            GatewayProtocol.readHello(in);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for the next reading
+     * @return
+     * @throws IOException If the gateway went away
+     */
+    public FleetReading read() throws IOException {
+        return GatewayProtocol.readReading(in);
+    }
+
+    /**
+     * Disconnect from the gateway
+     */
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //
+        }
+    }
+
+    /**
+     * Prints every reading from a gateway on this machine
+     * @param args [port] (defaults to DroneGateway.DEFAULT_PORT)
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DroneGateway.DEFAULT_PORT;
+        GatewayClient client = new GatewayClient(port);
+        try {
+            while (true) {
+                FleetReading reading = client.read();
+                System.out.println(reading.timestamp + " " + reading.MAC + " " + reading.qsType + " " + reading.value);
+            }
+        } finally {
+            client.close();
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone.java;
+
+import com.sensorcon.sensordrone.FleetReading;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The DroneGateway wire format. Everything is big endian.
+ *
+ * <pre>
+ * Client hello:  'S' 'D' 'G' version(u8) typeMask(u16)
+ *                (bit n of typeMask subscribes to QS type n)
+ * Server hello:  'S' 'D' 'G' version(u8)
+ * Reading:       0x01 macLength(u8) mac(ASCII) qsType(u8) timestamp(i64, ms) value(f32)
+ * </pre>
+ *
+ * After the hellos, the server sends the latest reading of everything subscribed to,
+ * then readings as they are measured.
+ */
+final class GatewayProtocol {
+
+    static final int VERSION = 1;
+    static final int FRAME_READING = 0x01;
+    static final int ALL_TYPES = 0xffff;
+
+    private GatewayProtocol() {
+    }
+
+    static void writeHello(DataOutputStream out) throws IOException {
+        out.writeByte('S');
+        out.writeByte('D');
+        out.writeByte('G');
+        out.writeByte(VERSION);
+    }
+
+    /**
+     * Reads a hello
+     * @param in
+     * @throws IOException if it isn't one we understand
+     */
+    static void readHello(DataInputStream in) throws IOException {
+        if (in.readUnsignedByte() != 'S' || in.readUnsignedByte() != 'D' || in.readUnsignedByte() != 'G') {
+            throw new IOException("Not a Sensordrone gateway");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported gateway protocol version " + version);
+        }
+    }
+
+    static void writeReading(DataOutputStream out, FleetReading reading) throws IOException {
+        out.writeByte(FRAME_READING);
+        String MAC = reading.MAC == null ? "" : reading.MAC;
+        out.writeByte(MAC.length());
+        out.writeBytes(MAC);
+        out.writeByte(reading.qsType);
+        out.writeLong(reading.timestamp);
+        out.writeFloat(reading.value);
+    }
+
+    static FleetReading readReading(DataInputStream in) throws IOException {
+        int frame = in.readUnsignedByte();
+        if (frame != FRAME_READING) {
+            throw new IOException("Unknown frame type " + frame);
+        }
+        byte[] MAC = new byte[in.readUnsignedByte()];
+        in.readFully(MAC);
+        int qsType = in.readUnsignedByte();
+        long timestamp = in.readLong();
+        float value = in.readFloat();
+        return new FleetReading(new String(MAC, "US-ASCII"), qsType, timestamp, value);
+    }
+
+}
@@ -35,11 +35,9 @@ class JLogger extends Logger {
             return;
         }
         // Parse through the byte array
-        String dataString = TAG + " TX:";
-        for (int i = 0; i < data.length; i++) {
-            dataString += " " + Integer.toHexString(data[i] & 0x000000ff);
-        }
-        System.out.println(dataString);
+        StringBuilder dataString = new StringBuilder(TAG + " TX:");
+        appendHex(dataString, data, data.length);
+        System.out.println(dataString.toString());
         return;
     }
 
@@ -55,11 +53,9 @@ class JLogger extends Logger {
             return;
         }
         // Parse through the byte array
-        String dataString = TAG + " RX:";
-        for (int i = 0; i < data.length; i++) {
-            dataString += " " + Integer.toHexString(data[i] & 0x000000ff);
-        }
-        System.out.println(dataString);
+        StringBuilder dataString = new StringBuilder(TAG + " RX:");
+        appendHex(dataString, data, data.length);
+        System.out.println(dataString.toString());
         return;
     }
 
@@ -94,4 +90,19 @@ class JLogger extends Logger {
         System.out.println(TAG + " : " + msg);
         return;
     }
+
+    /**
+     * Write a line from the LogAppender over System.out
+     * @param level
+     * @param TAG
+     * @param line
+     */
+    @Override
+    protected void write(int level, String TAG, String line) {
+        if (level == LEVEL_TRACE) {
+            System.out.println(TAG + " " + line);
+        } else {
+            System.out.println(TAG + " : " + line);
+        }
+    }
 }
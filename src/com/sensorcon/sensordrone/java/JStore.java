@@ -0,0 +1,155 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone.java;
+
+import com.sensorcon.sensordrone.DroneStore;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Properties;
+
+/**
+ * Our DroneStore class for Java. Keeps one properties file per Sensordrone MAC address.
+ *
+ * Usage: myDrone.setDroneStore(new JStore());
+ */
+public class JStore extends DroneStore {
+
+    private File directory;
+    // Properties we've already loaded, by MAC
+    private HashMap<String, Properties> loaded = new HashMap<String, Properties>();
+
+    /**
+     * Stores files in ~/.sensordrone
+     */
+    public JStore() {
+        this(new File(System.getProperty("user.home"), ".sensordrone"));
+    }
+
+    /**
+     * Stores files in the designated directory
+     * @param storeDirectory
+     */
+    public JStore(File storeDirectory) {
+        directory = storeDirectory;
+    }
+
+    public synchronized String get(String MAC, String key) {
+        return load(MAC).getProperty(key);
+    }
+
+    public synchronized void put(String MAC, String key, String value) {
+        Properties properties = load(MAC);
+        properties.setProperty(key, value);
+        save(MAC, properties);
+    }
+
+    public synchronized void remove(String MAC, String key) {
+        Properties properties = load(MAC);
+        if (properties.remove(key) != null) {
+            save(MAC, properties);
+        }
+    }
+
+    /**
+     * Saves the file once, and only if something changed
+     */
+    @Override
+    public synchronized void putAll(String MAC, String[] keys, String[] values) {
+        Properties properties = load(MAC);
+        boolean changed = false;
+        for (int i = 0; i < keys.length; i++) {
+            Object old;
+            if (values[i] == null) {
+                old = properties.remove(keys[i]);
+                changed |= old != null;
+            } else {
+                old = properties.setProperty(keys[i], values[i]);
+                changed |= !values[i].equals(old);
+            }
+        }
+        if (changed) {
+            save(MAC, properties);
+        }
+    }
+
+    private File fileFor(String MAC) {
+        // No colons in file names
+        return new File(directory, MAC.replaceAll(":", "").toUpperCase() + ".properties");
+    }
+
+    private Properties load(String MAC) {
+        Properties properties = loaded.get(MAC);
+        if (properties != null) {
+            return properties;
+        }
+        properties = new Properties();
+        File file = fileFor(MAC);
+        if (file.exists()) {
+            FileInputStream in = null;
+            try {
+                in = new FileInputStream(file);
+                properties.load(in);
+            } catch (IOException e) {
+                // Start fresh if we can't read it
+                properties.clear();
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        //
+                    }
+                }
+            }
+        }
+        loaded.put(MAC, properties);
+        return properties;
+    }
+
+    private void save(String MAC, Properties properties) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            return;
+        }
+        // Write to a temporary file first, so a crash can't leave a half written file behind
+        File file = fileFor(MAC);
+        File temp = new File(directory, file.getName() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            properties.store(out, "Sensordrone " + MAC);
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                file.delete();
+                temp.renameTo(file);
+            }
+        } catch (IOException e) {
+            // Not fatal; we just won't remember it next time
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    //
+                }
+            }
+        }
+    }
+}
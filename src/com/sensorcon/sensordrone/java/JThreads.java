@@ -0,0 +1,63 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone.java;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads for Java 21 and later.
+ *
+ * A Drone spends nearly all of its time blocked reading from its Bluetooth stream. On a virtual thread
+ * that costs a few hundred bytes of heap instead of a whole platform thread, which adds up when
+ * running a large DroneFleet.
+ *
+ * The library is built for older Javas (and Android), so the virtual thread API is looked up at runtime.
+ * On a JVM without it, virtualThreadFactory() returns null, and you get normal threads.
+ */
+public class JThreads {
+
+    private JThreads() {
+    }
+
+    /**
+     * Check if this JVM has virtual threads
+     * @return
+     */
+    public static boolean isVirtualThreadSupported() {
+        return virtualThreadFactory("sensordrone-probe-") != null;
+    }
+
+    /**
+     * Make a ThreadFactory for virtual threads
+     * @param namePrefix Threads are named namePrefix0, namePrefix1, ...
+     * @return The ThreadFactory, or null if this JVM doesn't have virtual threads
+     */
+    public static ThreadFactory virtualThreadFactory(String namePrefix) {
+        try {
+            // Thread.ofVirtual().name(namePrefix, 0).factory()
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Method name = builderClass.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            // NoSuchMethod before Java 21, or UnsupportedOperation if they're turned off
+            return null;
+        }
+    }
+
+}
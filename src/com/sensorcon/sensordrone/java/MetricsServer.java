@@ -0,0 +1,348 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone.java;
+
+import com.sensorcon.sensordrone.CoreDrone;
+import com.sensorcon.sensordrone.DroneMetrics;
+import com.sensorcon.sensordrone.LatencyHistogram;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Serves the DroneMetrics of some Drones over HTTP, in the Prometheus text format
+ * (http://localhost:PORT/metrics).
+ *
+ * Nothing is kept or worked out between scrapes; each scrape just reads the counters,
+ * so having a MetricsServer running costs nothing while nobody is scraping it.
+ *
+ * Every metric has a "mac" label (the Sensordrone it's from). Latencies are in seconds.
+ */
+public class MetricsServer {
+
+    /**
+     * The port used if you don't pick one
+     */
+    public static final int DEFAULT_PORT = 9341;
+
+    // The le="..." buckets for the latency histograms (seconds)
+    private static final double[] BUCKET_SECONDS = {
+            0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    private static final String[] ERROR_NAMES = {"generic", "command_not_recognized", "low_battery", "i2c_timeout"};
+    private static final String[] TYPE_NAMES = {
+            // In QS_TYPE order
+            "altitude", "capacitance", "humidity", "ir_temperature", "oxidizing_gas", "precision_gas",
+            "pressure", "reducing_gas", "rgbc", "temperature", "adc"
+    };
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final InetSocketAddress address;
+    private final CopyOnWriteArrayList<CoreDrone> drones = new CopyOnWriteArrayList<CoreDrone>();
+    private HttpServer server;
+
+    /**
+     * A server only reachable from this machine, on DEFAULT_PORT
+     */
+    public MetricsServer() {
+        this(DEFAULT_PORT);
+    }
+
+    /**
+     * A server only reachable from this machine
+     * @param port The TCP port to listen on (0 picks a free one; see getPort())
+     */
+    public MetricsServer(int port) {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * A server listening on a particular address
+     * @param address
+     */
+    public MetricsServer(InetSocketAddress address) {
+        this.address = address;
+    }
+
+    /**
+     * Serve a Drone's metrics
+     * @param drone
+     */
+    public void addDrone(CoreDrone drone) {
+        drones.addIfAbsent(drone);
+    }
+
+    /**
+     * Stop serving a Drone's metrics
+     * @param drone
+     */
+    public void removeDrone(CoreDrone drone) {
+        drones.remove(drone);
+    }
+
+    /**
+     * Start serving
+     * @throws IOException If the port can't be opened
+     */
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        server = HttpServer.create(address, 0);
+        server.createContext("/metrics", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    byte[] body = scrape().getBytes(UTF8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        // Scrapes are answered on the server's own (single) thread
+        server.setExecutor(null);
+        server.start();
+    }
+
+    /**
+     * Stop serving
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    /**
+     * The port we're listening on
+     * @return The port, or -1 if not started
+     */
+    public synchronized int getPort() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    /**
+     * The metrics of every Drone, in the Prometheus text format (what a scrape gets)
+     * @return
+     */
+    public String scrape() {
+        List<CoreDrone> snapshot = new ArrayList<CoreDrone>(drones);
+        StringBuilder out = new StringBuilder(4096);
+
+        header(out, "sensordrone_connected", "gauge", "1 if the Drone is connected");
+        for (CoreDrone drone : snapshot) {
+            sample(out, "sensordrone_connected", drone, null, null, drone.getMetrics().isConnected() ? 1 : 0);
+        }
+        header(out, "sensordrone_queue_depth", "gauge", "Commands waiting to be sent");
+        for (CoreDrone drone : snapshot) {
+            sample(out, "sensordrone_queue_depth", drone, null, null, drone.getMetrics().getQueueDepth());
+        }
+        header(out, "sensordrone_io_errors_total", "counter", "Reads or writes that failed with an IOException");
+        for (CoreDrone drone : snapshot) {
+            sample(out, "sensordrone_io_errors_total", drone, null, null, drone.getMetrics().getIOErrorCount());
+        }
+        header(out, "sensordrone_connections_lost_total", "counter", "Times the connection was lost");
+        for (CoreDrone drone : snapshot) {
+            sample(out, "sensordrone_connections_lost_total", drone, null, null,
+                    drone.getMetrics().getConnectionLostCount());
+        }
+
+        header(out, "sensordrone_errors_total", "counter", "Error responses from the Sensordrone, by error code");
+        for (CoreDrone drone : snapshot) {
+            DroneMetrics metrics = drone.getMetrics();
+            for (int code = 0; code < ERROR_NAMES.length; code++) {
+                sample(out, "sensordrone_errors_total", drone, "code", ERROR_NAMES[code], metrics.getErrorCount(code));
+            }
+            long other = 0;
+            for (int code = ERROR_NAMES.length; code < 256; code++) {
+                other += metrics.getErrorCount(code);
+            }
+            sample(out, "sensordrone_errors_total", drone, "code", "other", other);
+        }
+
+        header(out, "sensordrone_measurements_total", "counter", "Measurements, by quickSystem type");
+        for (CoreDrone drone : snapshot) {
+            for (int type = 0; type < TYPE_NAMES.length; type++) {
+                sample(out, "sensordrone_measurements_total", drone, "type", TYPE_NAMES[type],
+                        drone.getMetrics().getMeasurementCount(type));
+            }
+        }
+
+        header(out, "sensordrone_measurements_suppressed_total", "counter",
+                "Measurements the listeners weren't told about (deadband), by quickSystem type");
+        for (CoreDrone drone : snapshot) {
+            for (int type = 0; type < TYPE_NAMES.length; type++) {
+                sample(out, "sensordrone_measurements_suppressed_total", drone, "type", TYPE_NAMES[type],
+                        drone.getMetrics().getSuppressedCount(type));
+            }
+        }
+
+        header(out, "sensordrone_commands_total", "counter", "Calls sent, by command byte");
+        for (CoreDrone drone : snapshot) {
+            DroneMetrics metrics = drone.getMetrics();
+            for (int command = 0; command < 256; command++) {
+                if (metrics.getCommandLatency(command) != null) {
+                    sample(out, "sensordrone_commands_total", drone, "command", commandName(command),
+                            metrics.getCommandCount(command));
+                }
+            }
+        }
+        header(out, "sensordrone_command_failures_total", "counter", "Calls with an error (or no) response, by command byte");
+        for (CoreDrone drone : snapshot) {
+            DroneMetrics metrics = drone.getMetrics();
+            for (int command = 0; command < 256; command++) {
+                if (metrics.getCommandLatency(command) != null) {
+                    sample(out, "sensordrone_command_failures_total", drone, "command", commandName(command),
+                            metrics.getCommandFailureCount(command));
+                }
+            }
+        }
+        header(out, "sensordrone_command_queue_wait_seconds", "histogram",
+                "Time spent in the commService queue before a task's first call, by command byte");
+        for (CoreDrone drone : snapshot) {
+            DroneMetrics metrics = drone.getMetrics();
+            for (int command = 0; command < 256; command++) {
+                LatencyHistogram histogram = metrics.getCommandQueueWait(command);
+                if (histogram != null) {
+                    histogram(out, "sensordrone_command_queue_wait_seconds", drone, "command", commandName(command), histogram);
+                }
+            }
+        }
+        header(out, "sensordrone_command_latency_seconds", "histogram",
+                "Call service time (write start to response read), by command byte");
+        for (CoreDrone drone : snapshot) {
+            DroneMetrics metrics = drone.getMetrics();
+            for (int command = 0; command < 256; command++) {
+                LatencyHistogram histogram = metrics.getCommandLatency(command);
+                if (histogram != null) {
+                    histogram(out, "sensordrone_command_latency_seconds", drone, "command", commandName(command), histogram);
+                }
+            }
+        }
+
+        header(out, "sensordrone_sensor_calls_total", "counter", "Calls sent, by sensor");
+        for (CoreDrone drone : snapshot) {
+            DroneMetrics metrics = drone.getMetrics();
+            for (int sensor = 0; sensor < metrics.getSensorCount(); sensor++) {
+                sample(out, "sensordrone_sensor_calls_total", drone, "sensor", metrics.getSensorName(sensor),
+                        metrics.getSensorCallCount(sensor));
+            }
+        }
+        header(out, "sensordrone_sensor_failures_total", "counter", "Calls with an error (or no) response, by sensor");
+        for (CoreDrone drone : snapshot) {
+            DroneMetrics metrics = drone.getMetrics();
+            for (int sensor = 0; sensor < metrics.getSensorCount(); sensor++) {
+                sample(out, "sensordrone_sensor_failures_total", drone, "sensor", metrics.getSensorName(sensor),
+                        metrics.getSensorFailureCount(sensor));
+            }
+        }
+        header(out, "sensordrone_sensor_latency_seconds", "histogram", "Call round trip time, by sensor");
+        for (CoreDrone drone : snapshot) {
+            DroneMetrics metrics = drone.getMetrics();
+            for (int sensor = 0; sensor < metrics.getSensorCount(); sensor++) {
+                histogram(out, "sensordrone_sensor_latency_seconds", drone, "sensor", metrics.getSensorName(sensor),
+                        metrics.getSensorLatency(sensor));
+            }
+        }
+        return out.toString();
+    }
+
+    static String commandName(int command) {
+        String hex = Integer.toHexString(command);
+        return hex.length() == 1 ? "0x0" + hex : "0x" + hex;
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void labels(StringBuilder out, CoreDrone drone, String label, String value, String le) {
+        out.append("{mac=\"");
+        escape(out, drone.lastMAC);
+        out.append('"');
+        if (label != null) {
+            out.append(',').append(label).append("=\"");
+            escape(out, value);
+            out.append('"');
+        }
+        if (le != null) {
+            out.append(",le=\"").append(le).append('"');
+        }
+        out.append('}');
+    }
+
+    private static void sample(StringBuilder out, String name, CoreDrone drone, String label, String value, long count) {
+        out.append(name);
+        labels(out, drone, label, value, null);
+        out.append(' ').append(count).append('\n');
+    }
+
+    private static void histogram(StringBuilder out, String name, CoreDrone drone, String label, String value,
+                                  LatencyHistogram histogram) {
+        // Read the total first, so the buckets are never more than +Inf
+        long count = histogram.getCount();
+        for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+            out.append(name).append("_bucket");
+            labels(out, drone, label, value, Double.toString(BUCKET_SECONDS[i]));
+            long below = histogram.getCountAtOrBelow((long) (BUCKET_SECONDS[i] * 1000000));
+            out.append(' ').append(Math.min(below, count)).append('\n');
+        }
+        out.append(name).append("_bucket");
+        labels(out, drone, label, value, "+Inf");
+        out.append(' ').append(count).append('\n');
+        out.append(name).append("_sum");
+        labels(out, drone, label, value, null);
+        out.append(' ').append(histogram.getSumMicros() / 1e6).append('\n');
+        out.append(name).append("_count");
+        labels(out, drone, label, value, null);
+        out.append(' ').append(count).append('\n');
+    }
+
+    private static void escape(StringBuilder out, String value) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone.java.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A call to a Sensordrone and its response
+ */
+@Name("com.sensorcon.sensordrone.Command")
+@Label("Sensordrone Command")
+@Category("Sensordrone")
+@Description("A call to a Sensordrone and its response")
+@StackTrace(false)
+class CommandEvent extends Event {
+
+    @Label("MAC")
+    String mac;
+
+    @Label("Command")
+    @Description("The command byte")
+    int command;
+
+    @Label("Sensor")
+    String sensor;
+
+    @Label("Bytes Sent")
+    int bytesSent;
+
+    @Label("Bytes Received")
+    int bytesReceived;
+
+    @Label("Latency")
+    @Description("Write start to response read")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+
+    @Label("OK")
+    @Description("false if there was no (good) response")
+    boolean ok;
+
+}
@@ -0,0 +1,44 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone.java.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Sensordrone connected, disconnected, or lost its connection
+ */
+@Name("com.sensorcon.sensordrone.Connection")
+@Label("Sensordrone Connection")
+@Category("Sensordrone")
+@Description("A Sensordrone connected, disconnected, or lost its connection")
+class ConnectionEvent extends Event {
+
+    @Label("MAC")
+    String mac;
+
+    @Label("State")
+    @Description("CONNECTED, DISCONNECTED or CONNECTION_LOST")
+    String state;
+
+    @Label("Warm Start")
+    @Description("The connection was set up from the remembered handshake")
+    boolean warmStart;
+
+}
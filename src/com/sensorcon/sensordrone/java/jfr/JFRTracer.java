@@ -0,0 +1,102 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone.java.jfr;
+
+import com.sensorcon.sensordrone.CoreDrone;
+import com.sensorcon.sensordrone.DroneEventObject;
+import com.sensorcon.sensordrone.DroneTracer;
+import jdk.jfr.EventType;
+
+/**
+ * Sends what the Drones do to Java Flight Recorder (needs Java 11 or newer):
+ * <ul>
+ *     <li>com.sensorcon.sensordrone.Command: every call (command byte, sensor, bytes, latency)</li>
+ *     <li>com.sensorcon.sensordrone.Connection: connects, disconnects and lost connections</li>
+ *     <li>com.sensorcon.sensordrone.ListenerDispatch: how long each listener call took</li>
+ * </ul>
+ *
+ * <pre>
+ * JFRTracer.install();
+ * </pre>
+ *
+ * The events are in the "Sensordrone" category, and can be turned on and off like any other
+ * JFR event (e.g. in a .jfc file). When an event isn't being recorded, nothing is made or timed for it.
+ */
+public class JFRTracer implements DroneTracer {
+
+    private static final EventType COMMAND = EventType.getEventType(CommandEvent.class);
+    private static final EventType CONNECTION = EventType.getEventType(ConnectionEvent.class);
+    private static final EventType LISTENER_DISPATCH = EventType.getEventType(ListenerDispatchEvent.class);
+
+    /**
+     * Start sending events to JFR (for every Drone in this process)
+     */
+    public static void install() {
+        CoreDrone.setTracer(new JFRTracer());
+    }
+
+    /**
+     * Stop sending events to JFR (if we were the installed tracer)
+     */
+    public static void uninstall() {
+        if (CoreDrone.getTracer() instanceof JFRTracer) {
+            CoreDrone.setTracer(null);
+        }
+    }
+
+    @Override
+    public void commandCompleted(CoreDrone drone, int command, String sensor, int bytesSent, int bytesReceived,
+                                 long writeStart, long responded, boolean ok) {
+        if (!COMMAND.isEnabled()) {
+            return;
+        }
+        CommandEvent event = new CommandEvent();
+        event.mac = drone.lastMAC;
+        event.command = command;
+        event.sensor = sensor;
+        event.bytesSent = bytesSent;
+        event.bytesReceived = bytesReceived;
+        event.latency = responded - writeStart;
+        event.ok = ok;
+        event.commit();
+    }
+
+    @Override
+    public void connectionChanged(CoreDrone drone, DroneEventObject.droneEventType state) {
+        if (!CONNECTION.isEnabled()) {
+            return;
+        }
+        ConnectionEvent event = new ConnectionEvent();
+        event.mac = drone.lastMAC;
+        event.state = state.toString();
+        event.warmStart = drone.isWarmStarted();
+        event.commit();
+    }
+
+    @Override
+    public void listenerDispatched(CoreDrone drone, Object listener, DroneEventObject droneEvent, long start, long end) {
+        if (!LISTENER_DISPATCH.isEnabled()) {
+            return;
+        }
+        ListenerDispatchEvent event = new ListenerDispatchEvent();
+        event.mac = drone.lastMAC;
+        event.listenerClass = listener.getClass();
+        event.eventType = droneEvent.getSource().toString();
+        event.dispatchTime = end - start;
+        event.commit();
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone.java.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A Drone called one of its listeners
+ */
+@Name("com.sensorcon.sensordrone.ListenerDispatch")
+@Label("Sensordrone Listener Dispatch")
+@Category("Sensordrone")
+@Description("A Drone called one of its listeners")
+@StackTrace(false)
+class ListenerDispatchEvent extends Event {
+
+    @Label("MAC")
+    String mac;
+
+    @Label("Listener Class")
+    Class<?> listenerClass;
+
+    @Label("Event Type")
+    String eventType;
+
+    @Label("Dispatch Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long dispatchTime;
+
+}
@@ -0,0 +1,92 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * A small harness for the microbenchmarks next to it (the classes named *Benchmark). Run one with
+ *
+ * <pre>
+ * gradle benchmark -Pbench=com.sensorcon.sensordrone.RegisterCodecBenchmark
+ * </pre>
+ *
+ * Each body is run a few times to warm up, then timed; it prints the time and the bytes allocated
+ * per operation (the bytes only on JVMs that count them, e.g. HotSpot).
+ */
+final class Bench {
+
+    /**
+     * The code being measured
+     */
+    interface Body {
+        /**
+         * Do the operation a number of times
+         * @param operations
+         * @return Something worked out from every result, so the JIT can't drop the work
+         */
+        long run(int operations);
+    }
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+
+    // Sinks the results
+    static volatile long sink;
+
+    private Bench() {
+    }
+
+    /**
+     * Time a body, and print how it did
+     * @param name
+     * @param operations How many operations a round does
+     * @param body
+     * @return The best ns per operation
+     */
+    static double run(String name, int operations, Body body) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += body.run(operations);
+        }
+        double best = Double.MAX_VALUE;
+        long allocated = allocatedBytes();
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += body.run(operations);
+            best = Math.min(best, (double) (System.nanoTime() - start) / operations);
+        }
+        allocated = allocatedBytes() - allocated;
+        String bytes = allocated < 0 ? "?" : String.format("%.2f", (double) allocated / ROUNDS / operations);
+        System.out.println(String.format("%-40s %10.2f ns/op %8s B/op", name, best, bytes));
+        return best;
+    }
+
+    /**
+     * The bytes this thread has allocated so far, or a negative number if the JVM can't tell
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean counting = (com.sun.management.ThreadMXBean) threads;
+            if (counting.isThreadAllocatedMemorySupported() && counting.isThreadAllocatedMemoryEnabled()) {
+                return counting.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+}
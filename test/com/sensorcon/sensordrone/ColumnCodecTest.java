@@ -0,0 +1,120 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measurements come back out of a ColumnEncoder and ColumnDecoder exactly as they went in
+ */
+public class ColumnCodecTest {
+
+    /**
+     * Encode, save, read back and check every time and value (values bit for bit)
+     */
+    private static void roundTrip(long[] times, float[] values) throws IOException {
+        ColumnEncoder encoder = new ColumnEncoder(16);
+        for (int i = 0; i < times.length; i++) {
+            encoder.add(times[i], values[i]);
+        }
+        assertEquals(times.length, encoder.getCount());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.writeTo(out);
+
+        ColumnDecoder[] decoders = {
+                encoder.decoder(),
+                ColumnDecoder.readFrom(new ByteArrayInputStream(out.toByteArray()))};
+        for (ColumnDecoder decoder : decoders) {
+            assertEquals(times.length, decoder.getCount());
+            for (int i = 0; i < times.length; i++) {
+                assertTrue("Ran out at " + i, decoder.next());
+                assertEquals("Time " + i, times[i], decoder.getTime());
+                assertEquals("Value " + i, Float.floatToRawIntBits(values[i]),
+                        Float.floatToRawIntBits(decoder.getValue()));
+            }
+            assertFalse(decoder.next());
+        }
+    }
+
+    @Test
+    public void specialValues() throws IOException {
+        float[] values = {
+                Float.NaN, 0f, -0f, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, -0f, Float.NaN,
+                // A NaN with a different payload
+                Float.intBitsToFloat(0x7fc00001),
+                Float.MIN_VALUE, -Float.MIN_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, 1, 1, -1e30f};
+        long[] times = new long[values.length];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = 1000L * i;
+        }
+        roundTrip(times, values);
+    }
+
+    @Test
+    public void timeJumps() throws IOException {
+        // Every delta-of-delta bucket, at its edges, and jumps that need all 64 bits
+        long[] times = {
+                0, 0, 64, 64 + 128, 64 + 128 + 127, 1000, 1000 + 256, 2000, 2000 + 2048, 2000 + 2048 - 2047,
+                -5, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE / 2, -Long.MAX_VALUE / 3, 0, 1700000000000L,
+                1700000000000L};
+        float[] values = new float[times.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        roundTrip(times, values);
+    }
+
+    @Test
+    public void randomSeries() throws IOException {
+        Random random = new Random(7);
+        long[] times = new long[100000];
+        float[] values = new float[times.length];
+        long time = 1700000000000L;
+        for (int i = 0; i < times.length; i++) {
+            // Mostly steady, sometimes jittered, sometimes a long gap or back in time
+            int kind = random.nextInt(20);
+            time += kind == 0 ? random.nextLong() >> random.nextInt(64) : kind < 5 ? 1000 + random.nextInt(9) - 4 : 1000;
+            times[i] = time;
+            values[i] = kind == 1 ? Float.intBitsToFloat(random.nextInt()) : 20 + random.nextInt(4) / 4f;
+        }
+        roundTrip(times, values);
+    }
+
+    @Test
+    public void emptyAndReset() throws IOException {
+        roundTrip(new long[0], new float[0]);
+        ColumnEncoder encoder = new ColumnEncoder();
+        encoder.add(5, 1);
+        encoder.add(6, 2);
+        encoder.reset();
+        encoder.add(7, Float.NaN);
+        ColumnDecoder decoder = encoder.decoder();
+        assertTrue(decoder.next());
+        assertEquals(7, decoder.getTime());
+        assertTrue(Float.isNaN(decoder.getValue()));
+        assertFalse(decoder.next());
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.util.Random;
+
+/**
+ * How long each SignalFilter takes per sample, whether it allocates, and how close it gets
+ * to the real value (see Bench for how to run it)
+ */
+public class FilterBenchmark {
+
+    private static final int SAMPLES = 1000000;
+
+    private static final float[] real = new float[SAMPLES];
+    private static final float[] measured = new float[SAMPLES];
+
+    public static void main(String[] args) {
+        // Something like a GeneralGas reading: about 50 kOhm drifting slowly,
+        // with noise of sigma 800 and a spike on 0.5% of samples
+        Random random = new Random(1);
+        for (int i = 0; i < SAMPLES; i++) {
+            real[i] = (float) (50000 + 5000 * Math.sin(i / 20000.0));
+            measured[i] = real[i] + (float) (800 * random.nextGaussian());
+            if (random.nextInt(200) == 0) {
+                measured[i] += random.nextBoolean() ? 20000 : -20000;
+            }
+        }
+        System.out.println(String.format("%-40s RMS error %.0f", "raw", error(null)));
+
+        run("EMA 0.1", new EmaFilter(0.1f));
+        run("Kalman", new KalmanFilter(1f, 800f * 800f));
+        run("median of 5", new MedianFilter(5));
+        run("median of 31", new MedianFilter(31));
+        run("median of 5, then EMA 0.2", new FilterChain(new MedianFilter(5), new EmaFilter(0.2f)));
+    }
+
+    private static void run(String name, final SignalFilter filter) {
+        Bench.run(name, SAMPLES, new Bench.Body() {
+            @Override
+            public long run(int operations) {
+                filter.reset();
+                float total = 0;
+                for (int i = 0; i < operations; i++) {
+                    total += filter.apply(measured[i], i * 100L);
+                }
+                return Float.floatToRawIntBits(total);
+            }
+        });
+        System.out.println(String.format("%-40s RMS error %.0f", "", error(filter)));
+    }
+
+    /**
+     * The root mean square distance from the real value, once the filter has settled
+     */
+    private static double error(SignalFilter filter) {
+        if (filter != null) {
+            filter.reset();
+        }
+        double sum = 0;
+        int counted = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            float value = filter == null ? measured[i] : filter.apply(measured[i], i * 100L);
+            if (i >= 1000) {
+                sum += (value - real[i]) * (value - real[i]);
+                counted++;
+            }
+        }
+        return Math.sqrt(sum / counted);
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Queries on a ReadingStore that's being written to at the same time
+ */
+public class ReadingQueryTest {
+
+    private File directory;
+    private ReadingStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("readings", "");
+        assertTrue(directory.delete());
+        // Small segments, so the writer rolls over while the queries run
+        store = new ReadingStore(directory, 5000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * From the store's rollups (the windows are whole minutes)
+     */
+    @Test
+    public void aggregateFromRollupsWhileAppending() throws Exception {
+        aggregateWhileAppending(60000);
+    }
+
+    /**
+     * From the segments (the windows don't line up with a rollup)
+     */
+    @Test
+    public void aggregateFromSegmentsWhileAppending() throws Exception {
+        aggregateWhileAppending(7001);
+    }
+
+    private void aggregateWhileAppending(long windowMillis) throws Exception {
+        final long start = 1700000000000L;
+        for (int i = 0; i < 2000; i++) {
+            store.append("00:11", CoreDrone.QS_TYPE_PRECISION_GAS, start + i * 50L, 1);
+        }
+        final AtomicLong appended = new AtomicLong(2000);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final long stopAt = System.currentTimeMillis() + 1000;
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (System.currentTimeMillis() < stopAt) {
+                        store.append("00:11", CoreDrone.QS_TYPE_PRECISION_GAS, start + appended.get() * 50L, 1);
+                        appended.incrementAndGet();
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        };
+        writer.start();
+        int queries = 0;
+        try {
+            while (System.currentTimeMillis() < stopAt) {
+                long before = appended.get();
+                Iterator<ReadingAggregate> windows = store.query()
+                        .drone("00:11")
+                        .sensor(CoreDrone.QS_TYPE_PRECISION_GAS)
+                        .aggregate(windowMillis, null);
+                long counted = 0;
+                while (windows.hasNext()) {
+                    counted += windows.next().count;
+                }
+                assertTrue("counted " + counted + ", appended " + before, counted >= before);
+                // (plus the one the writer may be saving right now)
+                assertTrue("counted " + counted + ", appended " + appended.get(), counted <= appended.get() + 1);
+                queries++;
+            }
+        } finally {
+            writer.join();
+        }
+        assertNull(failure.get());
+        assertTrue(queries > 0);
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+   Copyright 2013 Sensorcon, Inc.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.sensorcon.sensordrone;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * How long RegisterCodec takes to decode the fields in a sensor's response, next to the
+ * BigInteger decoding the parsers used to do (see Bench for how to run it)
+ */
+public class RegisterCodecBenchmark {
+
+    private static final int OPERATIONS = 10000000;
+
+    public static void main(String[] args) {
+        // Random responses, so nothing is constant folded
+        final byte[] data = new byte[4096];
+        new Random(42).nextBytes(data);
+        final int mask = data.length - 4;
+
+        Bench.run("int16BE, BigInteger", OPERATIONS, new Bench.Body() {
+            @Override
+            public long run(int operations) {
+                long total = 0;
+                for (int i = 0; i < operations; i++) {
+                    int offset = i & mask;
+                    byte[] field = {data[offset], data[offset + 1]};
+                    total += new BigInteger(field).intValue();
+                }
+                return total;
+            }
+        });
+        Bench.run("int16BE, RegisterCodec", OPERATIONS, new Bench.Body() {
+            @Override
+            public long run(int operations) {
+                long total = 0;
+                for (int i = 0; i < operations; i++) {
+                    total += RegisterCodec.int16BE(data, i & mask);
+                }
+                return total;
+            }
+        });
+        Bench.run("pressure (20 bit), BigInteger", OPERATIONS, new Bench.Body() {
+            @Override
+            public long run(int operations) {
+                long total = 0;
+                for (int i = 0; i < operations; i++) {
+                    int offset = i & mask;
+                    byte[] field = {data[offset], data[offset + 1]};
+                    int intBits = data[offset + 2] & 0x0c;
+                    int decBits = data[offset + 2] & 0x03;
+                    total += (long) ((new BigInteger(field).intValue() << 2) + intBits + decBits / 4.0);
+                }
+                return total;
+            }
+        });
+        Bench.run("pressure (20 bit), RegisterCodec", OPERATIONS, new Bench.Body() {
+            @Override
+            public long run(int operations) {
+                long total = 0;
+                for (int i = 0; i < operations; i++) {
+                    total += (long) RegisterCodec.fixedPoint(RegisterCodec.uint20BE(data, i & mask), 2);
+                }
+                return total;
+            }
+        });
+    }
+
+}